@@ -9,7 +9,9 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import lombok.*;
+import lombok.extern.java.Log;
 import okhttp3.*;
 import oshi.SystemInfo;
 import oshi.hardware.CentralProcessor;
@@ -18,20 +20,34 @@ import oshi.hardware.HardwareAbstractionLayer;
 import oshi.software.os.OperatingSystem;
 
 import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.security.KeyFactory;
+import java.security.MessageDigest;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
 import java.security.spec.X509EncodedKeySpec;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Base64;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 /**
  * An example of how to interact
@@ -39,12 +55,42 @@ import java.util.Map;
  * can be conveniently used in
  * any project by simply copying
  * the class into your project.
+ * <p>
+ * Checks can be made without blocking with {@link #checkAsync(String)},
+ * so the license can be checked while the application starts. The
+ * hardware id is only looked up once, connections are reused across
+ * checks (over HTTP/2 when the server is behind TLS), failed requests
+ * are retried with a jittered backoff, and valid responses are cached
+ * for a while, so checking again doesn't go over the network.
+ * </p>
+ * <p>
+ * Errors are returned in the {@link LicenseResponse}, and
+ * their causes are logged with {@link java.util.logging}.
+ * </p>
  *
  * @author Braydon
  * @see <a href="https://git.rainnny.club/Rainnny/LicenseServer">License Server</a>
  */
+@Log
 public final class LicenseClient {
     private static final String ALGORITHM = "RSA"; // The crypto algorithm to use
+    private static final String SESSION_ALGORITHM = "AES"; // The algorithm for session keys
+    private static final String SESSION_TRANSFORMATION = "AES/GCM/NoPadding"; // The transformation for session payloads
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA"; // The algorithm offline tokens are signed with
+    
+    /**
+     * The version of the check protocol to use.
+     * <p>
+     * Version 2 wraps the key and hwid in a single AES-GCM
+     * payload, so only the session key is RSA encrypted.
+     * </p>
+     */
+    private static final int PROTOCOL_VERSION = 2;
+    
+    /**
+     * The {@link SecureRandom} to use for session keys, IVs and nonces.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
     
     /**
      * The endpoint to use for downloading the {@link PublicKey}.
@@ -61,6 +107,61 @@ public final class LicenseClient {
      */
     private static final Gson GSON = new GsonBuilder().serializeNulls().create();
     
+    /**
+     * The {@link MediaType} of request bodies.
+     */
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json");
+    
+    /**
+     * The maximum amount of attempts to make for a check.
+     */
+    private static final int MAX_ATTEMPTS = 4;
+    
+    /**
+     * The delay before the first retry, doubled
+     * for every retry after it, in milliseconds.
+     */
+    private static final long BASE_BACKOFF = 250L;
+    
+    /**
+     * The maximum delay before a retry, in milliseconds.
+     * <p>
+     * If the server asks us to wait longer than
+     * this, the check isn't retried.
+     * </p>
+     */
+    private static final long MAX_BACKOFF = 5000L;
+    
+    /**
+     * How long a valid response is cached for, in milliseconds.
+     */
+    private static final long RESPONSE_CACHE_TTL = TimeUnit.MINUTES.toMillis(5L);
+    
+    /**
+     * The shared {@link OkHttpClient}.
+     * <p>
+     * Every client shares its connection pool, so checks
+     * reuse the connection to the server instead of
+     * opening a new one each time. Its threads don't
+     * keep the application running.
+     * </p>
+     */
+    private static final OkHttpClient SHARED_HTTP_CLIENT = new OkHttpClient.Builder()
+                                                               .dispatcher(new Dispatcher(Executors.newCachedThreadPool(runnable -> {
+                                                                   Thread thread = new Thread(runnable, "License Client");
+                                                                   thread.setDaemon(true);
+                                                                   return thread;
+                                                               })))
+                                                               .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                                                               .connectTimeout(5L, TimeUnit.SECONDS)
+                                                               .readTimeout(10L, TimeUnit.SECONDS)
+                                                               .build();
+    
+    /**
+     * The hardware id of this machine, null until looked up.
+     */
+    private static String hardwareId;
+    
     /**
      * The URL of the license server to make requests to.
      */
@@ -77,15 +178,46 @@ public final class LicenseClient {
     @NonNull private final OkHttpClient httpClient;
     
     /**
-     * The {@link PublicKey} to use for encryption.
+     * The file the public key is stored in.
+     */
+    @NonNull private final File publicKeyFile;
+    
+    /**
+     * The {@link PublicKey} to use for encryption,
+     * null until fetched or if fetching it failed.
      */
-    @NonNull private final PublicKey publicKey;
+    private CompletableFuture<PublicKey> publicKey;
+    
+    /**
+     * The file to cache the offline token in, null to only cache it in memory.
+     */
+    private final File tokenFile;
+    
+    /**
+     * The cached offline token, null if none.
+     */
+    private String token;
+    
+    /**
+     * The cached valid responses, keyed by license key.
+     */
+    @NonNull private final Map<String, CachedResponse> responses = new ConcurrentHashMap<>();
     
     public LicenseClient(@NonNull String appUrl, @NonNull String product, @NonNull File publicKeyFile) {
+        this(appUrl, product, publicKeyFile, null);
+    }
+    
+    public LicenseClient(@NonNull String appUrl, @NonNull String product, @NonNull File publicKeyFile, File tokenFile) {
+        this(appUrl, product, publicKeyFile, tokenFile, SHARED_HTTP_CLIENT);
+    }
+    
+    public LicenseClient(@NonNull String appUrl, @NonNull String product, @NonNull File publicKeyFile, File tokenFile,
+                         @NonNull OkHttpClient httpClient) {
         this.appUrl = appUrl;
         this.product = product;
-        httpClient = new OkHttpClient(); // Create a new http client
-        publicKey = fetchPublicKey(publicKeyFile); // Fetch our public key
+        this.publicKeyFile = publicKeyFile;
+        this.tokenFile = tokenFile;
+        this.httpClient = httpClient;
     }
     
     /**
@@ -103,6 +235,10 @@ public final class LicenseClient {
     /**
      * Check the license with the given
      * key for the given product.
+     * <p>
+     * This blocks until the check is done, see
+     * {@link #checkAsync(String)} to check without blocking.
+     * </p>
      *
      * @param key the key to check
      * @return the license response
@@ -110,125 +246,455 @@ public final class LicenseClient {
      */
     @NonNull
     public LicenseResponse check(@NonNull String key) {
-        String hardwareId = getHardwareId(); // Get the hardware id of the machine
-        
-        // Build the json body
-        Map<String, Object> body = new HashMap<>();
-        body.put("key", encrypt(key));
-        body.put("product", product);
-        body.put("hwid", encrypt(hardwareId));
-        String bodyJson = GSON.toJson(body); // The json body
-        
-        MediaType mediaType = MediaType.parse("application/json"); // Ensure the media type is json
-        RequestBody requestBody = RequestBody.create(mediaType, bodyJson); // Build the request body
+        return checkAsync(key).join();
+    }
+    
+    /**
+     * Check the license with the given key for
+     * the given product, without blocking.
+     * <p>
+     * A cached valid response, or our offline token, is used
+     * if possible. Otherwise, the server is asked, retrying
+     * if it can't be reached or is temporarily unavailable.
+     * The returned future never completes exceptionally.
+     * </p>
+     *
+     * @param key the key to check
+     * @return the future license response
+     * @see LicenseResponse for response
+     */
+    @NonNull
+    public CompletableFuture<LicenseResponse> checkAsync(@NonNull String key) {
+        CachedResponse cached = responses.get(key);
+        if (cached != null && cached.isFresh()) { // Still cached
+            return CompletableFuture.completedFuture(cached.response());
+        }
+        return getPublicKey().thenCompose(publicKey -> {
+            // Looking up the hardware id may block, so do it off the calling thread
+            return CompletableFuture.supplyAsync(() -> checkToken(key, getHardwareId(), publicKey), httpClient.dispatcher().executorService())
+                       .thenCompose(offlineResponse -> offlineResponse != null ? CompletableFuture.completedFuture(offlineResponse)
+                                                           : request(key, publicKey, 1));
+        }).thenApply(response -> {
+            if (response.isValid()) { // Cache the valid response
+                responses.put(key, new CachedResponse(response, System.currentTimeMillis() + RESPONSE_CACHE_TTL));
+            }
+            return response;
+        }).exceptionally(ex -> {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            log.log(Level.WARNING, "Failed to check the license", cause);
+            return new LicenseResponse(-1, "An unknown error occurred: " + cause.getMessage());
+        });
+    }
+    
+    /**
+     * Ask the server to check the license with the given key.
+     * <p>
+     * If the request fails, or the server is temporarily
+     * unavailable, it's retried after a jittered delay that
+     * doubles with each attempt. Every attempt is encrypted
+     * with a new session key and nonce, as the server rejects
+     * nonces it has already seen.
+     * </p>
+     *
+     * @param key       the key to check
+     * @param publicKey the public key of the server
+     * @param attempt   the number of this attempt, starting at 1
+     * @return the future license response
+     */
+    @NonNull
+    private CompletableFuture<LicenseResponse> request(@NonNull String key, @NonNull PublicKey publicKey, int attempt) {
         Request request = new Request.Builder()
                               .url(appUrl + CHECK_ENDPOINT)
-                              .post(requestBody)
+                              .post(RequestBody.create(buildBody(key, publicKey), JSON_MEDIA_TYPE))
                               .build(); // Build the POST request
-        
-        Response response = null; // The response of the request
-        int responseCode = -1; // The response code of the request
-        try { // Attempt to execute the request
-            response = httpClient.newCall(request).execute();
-            responseCode = response.code();
+        CompletableFuture<LicenseResponse> future = new CompletableFuture<>();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try (response) { // Always close the response, so the connection can be reused
+                    long retryDelay = retryDelay(response, attempt);
+                    if (retryDelay >= 0L) {
+                        retry(retryDelay);
+                        return;
+                    }
+                    future.complete(parseResponse(response));
+                } catch (Exception ex) {
+                    future.completeExceptionally(ex);
+                }
+            }
             
-            // If the response is successful, we can parse the response
-            if (response.isSuccessful()) {
-                ResponseBody responseBody = response.body();
-                assert responseBody != null; // We don't want the response body being null
-                
-                JsonObject json = GSON.fromJson(responseBody.string(), JsonObject.class); // Parse the json
-                JsonElement description = json.get("description");
-                JsonElement ownerSnowflake = json.get("ownerSnowflake");
-                JsonElement ownerName = json.get("ownerName");
-                JsonElement plan = json.get("plan");
-                JsonElement latestVersion = json.get("latestVersion");
-                
-                // Parsing the expiration date if we have one
-                JsonElement expires = json.get("expires");
-                Date expiresDate = null;
-                if (!expires.isJsonNull()) {
-                    OffsetDateTime offsetDateTime = OffsetDateTime.parse(expires.getAsString(), DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-                    expiresDate = Date.from(offsetDateTime.toInstant());
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException ex) {
+                if (attempt < MAX_ATTEMPTS) { // Retry if we can
+                    retry(backoff(attempt));
+                    return;
                 }
-                
-                // Return the license response
-                return new LicenseResponse(200, null,
-                    description.isJsonNull() ? null : description.getAsString(),
-                    ownerSnowflake.isJsonNull() ? -1 : ownerSnowflake.getAsLong(),
-                    ownerName.isJsonNull() ? null : ownerName.getAsString(),
-                    plan.getAsString(),
-                    latestVersion.getAsString(),
-                    expires.isJsonNull() ? null : expiresDate
-                );
-            } else {
-                ResponseBody errorBody = response.body(); // Get the error body
-                if (errorBody != null) { // If we have an error body, we can parse it
-                    String errorResponse = errorBody.string();
-                    JsonObject jsonError = GSON.fromJson(errorResponse, JsonObject.class);
-                    JsonElement errorMessage = jsonError.get("error");
-                    if (!errorMessage.isJsonNull()) { // We have an error message, return it
-                        return new LicenseResponse(responseCode, errorMessage.getAsString());
+                log.log(Level.WARNING, "Failed to reach the license server", ex);
+                future.complete(new LicenseResponse(-1, "Failed to reach the license server: " + ex.getMessage()));
+            }
+            
+            /**
+             * Make the next attempt after the given delay.
+             *
+             * @param delay the delay in milliseconds
+             */
+            private void retry(long delay) {
+                CompletableFuture.supplyAsync(() -> request(key, publicKey, attempt + 1),
+                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, httpClient.dispatcher().executorService())
+                ).thenCompose(next -> next).whenComplete((response, ex) -> {
+                    if (ex != null) {
+                        future.completeExceptionally(ex);
+                    } else {
+                        future.complete(response);
                     }
-                }
+                });
             }
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        } finally {
-            // Close the response if it's open
-            if (response != null) {
-                response.close();
+        });
+        return future;
+    }
+    
+    /**
+     * Build the encrypted json body of a
+     * check for the license with the given key.
+     *
+     * @param key       the key to check
+     * @param publicKey the public key of the server
+     * @return the json body
+     */
+    @NonNull
+    private String buildBody(@NonNull String key, @NonNull PublicKey publicKey) {
+        // Build the encrypted payload
+        JsonObject payload = new JsonObject();
+        payload.addProperty("key", key);
+        payload.addProperty("hwid", getHardwareId());
+        payload.addProperty("nonce", randomBase64(16));
+        payload.addProperty("timestamp", System.currentTimeMillis());
+        
+        // Build the json body
+        byte[] sessionKey = generateSessionKey();
+        JsonObject body = new JsonObject();
+        body.addProperty("version", PROTOCOL_VERSION);
+        body.addProperty("product", product);
+        body.addProperty("sessionKey", encrypt(sessionKey, publicKey));
+        body.addProperty("payload", encryptPayload(sessionKey, GSON.toJson(payload)));
+        return GSON.toJson(body);
+    }
+    
+    /**
+     * Get how long to wait before retrying the
+     * request that got the given response.
+     * <p>
+     * Only responses for which the server is temporarily
+     * unable to check the license are retried. If the
+     * server asks us to wait, we wait at least that long.
+     * </p>
+     *
+     * @param response the response
+     * @param attempt  the number of the attempt that got the response
+     * @return the delay in milliseconds, -1 to not retry
+     */
+    private static long retryDelay(@NonNull Response response, int attempt) {
+        int code = response.code();
+        if (attempt >= MAX_ATTEMPTS || (code != 429 && code != 502 && code != 503 && code != 504)) { // Don't retry
+            return -1L;
+        }
+        long delay = backoff(attempt);
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null) {
+            try {
+                delay = Math.max(delay, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+            } catch (NumberFormatException ignored) {
+                // Not in seconds, use our own delay
+            }
+        }
+        return delay <= MAX_BACKOFF ? delay : -1L;
+    }
+    
+    /**
+     * Get a random delay before retrying after the given attempt.
+     * <p>
+     * The delay is picked between half of, and the full, exponential
+     * backoff, so clients that failed together don't retry together.
+     * </p>
+     *
+     * @param attempt the number of the attempt that failed
+     * @return the delay in milliseconds
+     */
+    private static long backoff(int attempt) {
+        long backoff = Math.min(MAX_BACKOFF, BASE_BACKOFF << (attempt - 1));
+        return backoff / 2L + ThreadLocalRandom.current().nextLong(backoff / 2L + 1L);
+    }
+    
+    /**
+     * Parse the given response of the server.
+     *
+     * @param response the response to parse
+     * @return the license response
+     * @throws IOException if the body couldn't be read
+     */
+    @NonNull
+    private LicenseResponse parseResponse(@NonNull Response response) throws IOException {
+        int responseCode = response.code();
+        ResponseBody responseBody = response.body();
+        JsonObject json = null;
+        if (responseBody != null) { // Parse the json body, if it's json
+            try {
+                json = GSON.fromJson(responseBody.string(), JsonObject.class);
+            } catch (JsonParseException ignored) {
+                // Not json, such as an error page of a proxy
+            }
+        }
+        // If the response is successful, we can parse the license
+        if (response.isSuccessful() && json != null) {
+            JsonElement description = json.get("description");
+            JsonElement ownerSnowflake = json.get("ownerSnowflake");
+            JsonElement ownerName = json.get("ownerName");
+            JsonElement plan = json.get("plan");
+            JsonElement latestVersion = json.get("latestVersion");
+            
+            // Parsing the expiration date if we have one
+            JsonElement expires = json.get("expires");
+            Date expiresDate = null;
+            if (!expires.isJsonNull()) {
+                OffsetDateTime offsetDateTime = OffsetDateTime.parse(expires.getAsString(), DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+                expiresDate = Date.from(offsetDateTime.toInstant());
             }
+            
+            // Cache the offline token, if we got one
+            JsonElement token = json.get("token");
+            if (token != null && !token.isJsonNull()) {
+                storeToken(token.getAsString());
+            }
+            
+            // Return the license response
+            return new LicenseResponse(200, null,
+                description.isJsonNull() ? null : description.getAsString(),
+                ownerSnowflake.isJsonNull() ? -1 : ownerSnowflake.getAsLong(),
+                ownerName.isJsonNull() ? null : ownerName.getAsString(),
+                plan.getAsString(),
+                latestVersion.getAsString(),
+                expires.isJsonNull() ? null : expiresDate
+            );
+        }
+        JsonElement errorMessage = json == null ? null : json.get("error");
+        if (errorMessage != null && !errorMessage.isJsonNull()) { // We have an error message, return it
+            return new LicenseResponse(responseCode, errorMessage.getAsString());
         }
         // Return an unknown error
         return new LicenseResponse(responseCode, "An unknown error occurred");
     }
     
     /**
-     * Fetch the public key.
+     * Check the license with the given key
+     * using our cached offline token.
+     * <p>
+     * The token must be signed by the server, be for the
+     * given key, our product and the given hardware id, and
+     * not have expired. Invalid tokens are discarded.
+     * </p>
+     *
+     * @param key        the key to check
+     * @param hardwareId the hardware id of the machine
+     * @param publicKey  the public key of the server
+     * @return the license response, null if there's no valid token
+     */
+    private LicenseResponse checkToken(@NonNull String key, @NonNull String hardwareId, @NonNull PublicKey publicKey) {
+        String token = loadToken();
+        if (token == null) { // No token to check
+            return null;
+        }
+        try {
+            int separator = token.indexOf('.');
+            if (separator == -1) { // Malformed token
+                throw new IllegalArgumentException("Malformed token");
+            }
+            String encodedClaims = token.substring(0, separator);
+            
+            // Verify the signature of the claims
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initVerify(publicKey);
+            signature.update(encodedClaims.getBytes(StandardCharsets.US_ASCII));
+            if (!signature.verify(Base64.getUrlDecoder().decode(token.substring(separator + 1)))) {
+                throw new IllegalArgumentException("Invalid token signature");
+            }
+            JsonObject claims = GSON.fromJson(new String(Base64.getUrlDecoder().decode(encodedClaims), StandardCharsets.UTF_8), JsonObject.class);
+            
+            // Ensure the token is for this license and machine, and is still valid
+            long now = System.currentTimeMillis();
+            JsonElement expires = claims.get("expires");
+            if (!claims.get("product").getAsString().equals(product)
+                    || !claims.get("hwid").getAsString().equals(hardwareId)
+                    || !claims.get("keyHash").getAsString().equals(hashKey(key))
+                    || claims.get("validUntil").getAsLong() <= now
+                    || (!expires.isJsonNull() && expires.getAsLong() <= now)) {
+                throw new IllegalArgumentException("Token is no longer valid");
+            }
+            JsonElement description = claims.get("description");
+            JsonElement ownerName = claims.get("ownerName");
+            return new LicenseResponse(200, null,
+                description.isJsonNull() ? null : description.getAsString(),
+                claims.get("ownerSnowflake").getAsLong(),
+                ownerName.isJsonNull() ? null : ownerName.getAsString(),
+                claims.get("plan").getAsString(),
+                claims.get("latestVersion").getAsString(),
+                expires.isJsonNull() ? null : new Date(expires.getAsLong())
+            );
+        } catch (Exception ex) { // The token is invalid, discard it
+            storeToken(null);
+            return null;
+        }
+    }
+    
+    /**
+     * Load our cached offline token.
+     *
+     * @return the token, null if none
+     */
+    private synchronized String loadToken() {
+        if (token == null && tokenFile != null && tokenFile.exists()) {
+            try {
+                token = Files.readString(tokenFile.toPath(), StandardCharsets.UTF_8).trim();
+            } catch (IOException ex) {
+                log.log(Level.WARNING, "Failed to read the offline token", ex);
+            }
+        }
+        return token;
+    }
+    
+    /**
+     * Cache the given offline token.
+     *
+     * @param token the token, null to discard it
+     */
+    private synchronized void storeToken(String token) {
+        this.token = token;
+        if (tokenFile == null) { // Only cached in memory
+            return;
+        }
+        try {
+            if (token == null) {
+                Files.deleteIfExists(tokenFile.toPath());
+            } else {
+                Files.writeString(tokenFile.toPath(), token, StandardCharsets.UTF_8);
+            }
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "Failed to store the offline token", ex);
+        }
+    }
+    
+    /**
+     * Hash the given license key
+     * the way the server does for tokens.
+     *
+     * @param key the key to hash
+     * @return the Base64 encoded SHA-256 hash
+     */
+    @SneakyThrows @NonNull
+    private static String hashKey(@NonNull String key) {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * Get the public key, fetching it the first time.
      * <p>
      * If the public key is not already present, we
-     * fetch it from the server. Otherwise, the public
-     * key is loaded from the file.
+     * fetch it from the server without blocking. Otherwise,
+     * the public key is loaded from the file. If getting
+     * it fails, it's tried again on the next check.
      * </p>
      *
-     * @param publicKeyFile the public key file
-     * @return the public key
+     * @return the future public key
      * @see PublicKey for public key
      */
-    @SneakyThrows
-    private PublicKey fetchPublicKey(@NonNull File publicKeyFile) {
-        byte[] publicKey;
+    @NonNull
+    private synchronized CompletableFuture<PublicKey> getPublicKey() {
+        if (publicKey != null) { // Already fetched, or being fetched
+            return publicKey;
+        }
+        CompletableFuture<PublicKey> future;
         if (publicKeyFile.exists()) { // Public key exists, use it
-            publicKey = Files.readAllBytes(publicKeyFile.toPath());
+            future = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return readPublicKey(Files.readAllBytes(publicKeyFile.toPath()));
+                } catch (IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, httpClient.dispatcher().executorService());
         } else {
-            Request request = new Request.Builder()
-                                  .url(appUrl + PUBLIC_KEY_ENDPOINT)
-                                  .build(); // Build the GET request
-            @Cleanup Response response = httpClient.newCall(request).execute(); // Make the request
-            if (!response.isSuccessful()) { // Response wasn't successful
-                throw new IOException("Failed to download the public key, got response " + response.code());
+            future = downloadPublicKey();
+        }
+        publicKey = future;
+        future.whenComplete((key, ex) -> {
+            if (ex != null) { // Try again next time
+                synchronized (this) {
+                    if (publicKey == future) {
+                        publicKey = null;
+                    }
+                }
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * Download the public key from the server,
+     * and write it to the public key file.
+     *
+     * @return the future public key
+     */
+    @NonNull
+    private CompletableFuture<PublicKey> downloadPublicKey() {
+        Request request = new Request.Builder()
+                              .url(appUrl + PUBLIC_KEY_ENDPOINT)
+                              .build(); // Build the GET request
+        CompletableFuture<PublicKey> future = new CompletableFuture<>();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try (response) {
+                    if (!response.isSuccessful()) { // Response wasn't successful
+                        throw new IOException("Failed to download the public key, got response " + response.code());
+                    }
+                    ResponseBody body = response.body(); // Get the response body
+                    if (body == null) { // We need a response body
+                        throw new IOException("Failed to download the public key, got no body");
+                    }
+                    byte[] publicKey = body.bytes(); // Read our public key
+                    PublicKey key = readPublicKey(publicKey);
+                    
+                    // Write the response to the public key file
+                    try (FileOutputStream outputStream = new FileOutputStream(publicKeyFile)) {
+                        outputStream.write(publicKey);
+                    }
+                    future.complete(key);
+                } catch (Exception ex) {
+                    future.completeExceptionally(ex);
+                }
             }
-            ResponseBody body = response.body(); // Get the response body
-            assert body != null; // We need a response body
-            publicKey = body.bytes(); // Read our public key
             
-            // Write the response to the public key file
-            try (FileOutputStream outputStream = new FileOutputStream(publicKeyFile)) {
-                outputStream.write(publicKey);
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException ex) {
+                future.completeExceptionally(ex);
             }
-        }
-        return readPublicKey(publicKey);
+        });
+        return future;
     }
     
     /**
      * Get the unique hardware
      * identifier of this machine.
+     * <p>
+     * Looking up the hardware is slow,
+     * so this is only done once.
+     * </p>
      *
      * @return the hardware id
      */
     @NonNull
-    private String getHardwareId() {
+    private static synchronized String getHardwareId() {
+        if (hardwareId != null) { // Already looked up
+            return hardwareId;
+        }
         SystemInfo systemInfo = new SystemInfo();
         OperatingSystem operatingSystem = systemInfo.getOperatingSystem();
         HardwareAbstractionLayer hardwareAbstractionLayer = systemInfo.getHardware();
@@ -243,23 +709,99 @@ public final class LicenseClient {
         int processors = centralProcessor.getLogicalProcessorCount();
         
         // Generate a unique hardware id using the retrieved information
-        return String.format("%08x", vendor.hashCode()) + "-"
+        return hardwareId = String.format("%08x", vendor.hashCode()) + "-"
                    + String.format("%08x", processorSerialNumber.hashCode()) + "-"
                    + String.format("%08x", uuid.hashCode()) + "-"
                    + String.format("%08x", processorIdentifier.hashCode()) + "-" + processors;
     }
     
     /**
-     * Encrypt the given input.
+     * Encrypt the given input with the public key.
      *
-     * @param input the encrypted input
+     * @param input     the input to encrypt
+     * @param publicKey the public key of the server
      * @return the encrypted result
      */
     @SneakyThrows @NonNull
-    private String encrypt(@NonNull String input) {
+    private static String encrypt(byte[] input, @NonNull PublicKey publicKey) {
         Cipher cipher = Cipher.getInstance(ALGORITHM); // Create our cipher
         cipher.init(Cipher.ENCRYPT_MODE, publicKey); // Set our mode and public key
-        return Base64.getEncoder().encodeToString(cipher.doFinal(input.getBytes())); // Return our encrypted result
+        return Base64.getEncoder().encodeToString(cipher.doFinal(input)); // Return our encrypted result
+    }
+    
+    /**
+     * Encrypt the given payload with the session key.
+     * <p>
+     * The product is authenticated along with the
+     * payload, and the IV is prepended to the result.
+     * </p>
+     *
+     * @param sessionKey the session key
+     * @param payload    the payload to encrypt
+     * @return the encrypted result
+     */
+    @SneakyThrows @NonNull
+    private String encryptPayload(byte[] sessionKey, @NonNull String payload) {
+        byte[] iv = new byte[12];
+        RANDOM.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(SESSION_TRANSFORMATION); // Create our cipher
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(sessionKey, SESSION_ALGORITHM), new GCMParameterSpec(128, iv));
+        cipher.updateAAD(product.getBytes(StandardCharsets.UTF_8)); // Bind the payload to our product
+        byte[] encrypted = cipher.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        
+        // Prepend the IV to the encrypted payload
+        byte[] result = new byte[iv.length + encrypted.length];
+        System.arraycopy(iv, 0, result, 0, iv.length);
+        System.arraycopy(encrypted, 0, result, iv.length, encrypted.length);
+        return Base64.getEncoder().encodeToString(result); // Return our encrypted result
+    }
+    
+    /**
+     * Generate a new random session key.
+     *
+     * @return the session key
+     */
+    @SneakyThrows
+    private static byte[] generateSessionKey() {
+        KeyGenerator generator = KeyGenerator.getInstance(SESSION_ALGORITHM);
+        generator.init(256);
+        return generator.generateKey().getEncoded();
+    }
+    
+    /**
+     * Generate random bytes encoded as Base64.
+     *
+     * @param length the amount of bytes
+     * @return the encoded bytes
+     */
+    @NonNull
+    private static String randomBase64(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+    
+    /**
+     * A cached valid response.
+     *
+     * @param response  the response
+     * @param expiresAt the unix time to stop using the response at
+     */
+    private record CachedResponse(@NonNull LicenseResponse response, long expiresAt) {
+        /**
+         * Check if the response can still be used.
+         * <p>
+         * It can't be used past the expiration of
+         * the license, even if still cached.
+         * </p>
+         *
+         * @return true if fresh, otherwise false
+         */
+        public boolean isFresh() {
+            long now = System.currentTimeMillis();
+            Date expires = response.getExpires();
+            return now < expiresAt && (expires == null || now < expires.getTime());
+        }
     }
     
     /**
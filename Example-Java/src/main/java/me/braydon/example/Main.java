@@ -6,14 +6,19 @@
 package me.braydon.example;
 
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Braydon
  */
 public final class Main {
     public static void main(String[] args) {
-        LicenseClient client = new LicenseClient("http://localhost:7500", "Example", new File("public.key")); // Create the client
-        LicenseClient.LicenseResponse response = client.check("XXXX-XXXX-XXXX-XXXX"); // Check our license
+        LicenseClient client = new LicenseClient("http://localhost:7500", "Example", new File("public.key"), new File("license.token")); // Create the client
+        CompletableFuture<LicenseClient.LicenseResponse> check = client.checkAsync("XXXX-XXXX-XXXX-XXXX"); // Check our license in the background
+        
+        // The rest of the application can start here, while the license is being checked
+        
+        LicenseClient.LicenseResponse response = check.join(); // Wait for the check
         if (!response.isValid()) { // License isn't valid
             System.err.println("Invalid license: " + response.getError());
             return;
@@ -0,0 +1,7 @@
+-- Posts the same version 1 check body with every request.
+-- The body is written by compare.sh, which passes its path in CHECK_BODY.
+local file = assert(io.open(os.getenv("CHECK_BODY"), "r"))
+wrk.method = "POST"
+wrk.headers["Content-Type"] = "application/json"
+wrk.body = file:read("*a")
+file:close()
@@ -0,0 +1,97 @@
+#!/usr/bin/env bash
+#
+# Compares the threads and memory of the servlet stack (with platform and
+# virtual threads) against the reactive profile, with 5000 open connections
+# hammering the check route.
+#
+# Requires java, wrk, openssl and curl, the server jar (mvn package in the root
+# project) and a running MongoDB. Run it from a directory with an application.yml
+# pointing at that MongoDB, the same as running the server. Rate limits and
+# Discord use logs are turned off for the runs, and a license is printed by the
+# server on first start if none exist yet.
+#
+# Usage: compare.sh <license key> <product> [connections] [duration]
+set -euo pipefail
+
+KEY="${1:?license key required}"
+PRODUCT="${2:?product required}"
+CONNECTIONS="${3:-5000}"
+DURATION="${4:-60s}"
+HWID="1a2b3c4d-5e6f7a8b-9c0d1e2f-3a4b5c6d-16"
+PORT=7500
+URL="http://127.0.0.1:$PORT"
+
+SCRIPT_DIR="$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)"
+JAR="$SCRIPT_DIR/../../target/LicenseServer.jar"
+WORK_DIR="$(mktemp -d)"
+trap 'rm -rf "$WORK_DIR"' EXIT
+
+ulimit -n 65536 # Every connection is a file descriptor on both ends
+
+# Wait until the server with the given pid is up
+wait_for_server() {
+    for _ in $(seq 1 120); do
+        if curl -sf "$URL/actuator/health" > /dev/null; then
+            return 0
+        fi
+        kill -0 "$1" 2> /dev/null || return 1
+        sleep 1
+    done
+    return 1
+}
+
+# Write the check body, encrypted with the public key of the running server
+write_body() {
+    curl -sf "$URL/crypto/pub" -o "$WORK_DIR/public.key"
+    encrypt() {
+        printf '%s' "$1" | openssl pkeyutl -encrypt -pubin -keyform DER -inkey "$WORK_DIR/public.key" | base64 -w0
+    }
+    printf '{"key":"%s","product":"%s","hwid":"%s"}' "$(encrypt "$KEY")" "$PRODUCT" "$(encrypt "$HWID")" > "$WORK_DIR/body.json"
+}
+
+# Run the load against a server started with the given name and arguments,
+# sampling its thread count and resident memory every second
+run() {
+    local name="$1"; shift
+    java -jar "$JAR" --rate-limits.ip.rate=0 --rate-limits.key.rate=0 --discord.logs.uses=false "$@" \
+        > "$WORK_DIR/$name.log" 2>&1 &
+    local pid=$!
+    if ! wait_for_server "$pid"; then
+        echo "$name: the server didn't start, see the log below" >&2
+        cat "$WORK_DIR/$name.log" >&2
+        exit 1
+    fi
+    write_body
+
+    local idle_threads
+    idle_threads=$(awk '/^Threads:/ { print $2 }' "/proc/$pid/status")
+    CHECK_BODY="$WORK_DIR/body.json" wrk -t4 -c"$CONNECTIONS" -d"$DURATION" --latency -s "$SCRIPT_DIR/check.lua" \
+        "$URL/check" > "$WORK_DIR/$name.wrk" &
+    local wrk_pid=$!
+    local peak_threads=0 peak_rss=0
+    while kill -0 "$wrk_pid" 2> /dev/null; do
+        local threads rss
+        threads=$(awk '/^Threads:/ { print $2 }' "/proc/$pid/status")
+        rss=$(awk '/^VmRSS:/ { print $2 }' "/proc/$pid/status")
+        (( threads > peak_threads )) && peak_threads=$threads
+        (( rss > peak_rss )) && peak_rss=$rss
+        sleep 1
+    done
+    wait "$wrk_pid"
+    kill "$pid" && wait "$pid" || true
+
+    local rps p99 errors
+    rps=$(awk '/^Requests\/sec:/ { print $2 }' "$WORK_DIR/$name.wrk")
+    p99=$(awk '$1 == "99%" { print $2 }' "$WORK_DIR/$name.wrk")
+    errors=$(awk '/Non-2xx|Socket errors/ { $1 = $1; printf "%s; ", $0 }' "$WORK_DIR/$name.wrk")
+    printf '| %-15s | %12s | %12s | %14s | %10s | %8s | %s\n' "$name" "$idle_threads" "$peak_threads" \
+        "$((peak_rss / 1024)) MiB" "$rps" "$p99" "${errors:-none}"
+}
+
+echo "Checking with $CONNECTIONS connections for $DURATION per stack"
+echo
+printf '| %-15s | %12s | %12s | %14s | %10s | %8s | %s\n' "Stack" "Idle threads" "Peak threads" "Peak RSS" "Req/sec" "p99" "Errors"
+printf '|-----------------|--------------|--------------|----------------|------------|----------|-------\n'
+run servlet --spring.threads.virtual.enabled=false
+run servlet-virtual --spring.threads.virtual.enabled=true
+run reactive --spring.profiles.active=reactive
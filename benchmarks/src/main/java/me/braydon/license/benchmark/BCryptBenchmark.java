@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.benchmark;
+
+import org.mindrot.jbcrypt.BCrypt;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for hashing with BCrypt at several cost
+ * factors, as used for IP hashes and key verifiers.
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class BCryptBenchmark {
+    @Param({ "4", "8", "10", "12" })
+    private int cost;
+    
+    private String salt;
+    
+    @Setup
+    public void setup() {
+        salt = BCrypt.gensalt(cost);
+    }
+    
+    @Benchmark
+    public String hashpw() {
+        return BCrypt.hashpw("203.0.113.7", salt);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.benchmark;
+
+import me.braydon.license.common.CryptographyUtils;
+import me.braydon.license.common.RSADecryptor;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for decrypting the RSA encrypted key and
+ * HWID, or the session envelope, sent with license checks.
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CryptographyBenchmark {
+    private KeyPair keyPair;
+    private RSADecryptor decryptor;
+    private String encryptedKey;
+    private String encryptedSessionKey;
+    private String encryptedPayload;
+    private byte[] product;
+    
+    @Setup
+    public void setup() throws Exception {
+        keyPair = CryptographyUtils.generateKeyPair();
+        decryptor = new RSADecryptor(keyPair.getPrivate(), 64);
+        
+        Cipher cipher = Cipher.getInstance("RSA");
+        cipher.init(Cipher.ENCRYPT_MODE, keyPair.getPublic());
+        encryptedKey = Base64.getEncoder().encodeToString(cipher.doFinal("ABCD-1234-EF56-7890".getBytes()));
+        
+        // Build a version 2 envelope, the same way the client does
+        SecureRandom random = new SecureRandom();
+        byte[] sessionKey = new byte[32];
+        random.nextBytes(sessionKey);
+        encryptedSessionKey = Base64.getEncoder().encodeToString(cipher.doFinal(sessionKey));
+        
+        product = "Example".getBytes(StandardCharsets.UTF_8);
+        byte[] iv = new byte[12];
+        random.nextBytes(iv);
+        Cipher aes = Cipher.getInstance("AES/GCM/NoPadding");
+        aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(sessionKey, "AES"), new GCMParameterSpec(128, iv));
+        aes.updateAAD(product);
+        byte[] encrypted = aes.doFinal(("{\"key\":\"ABCD-1234-EF56-7890\",\"hwid\":\"1a2b3c4d-5e6f7a8b-9c0d1e2f-3a4b5c6d-16\","
+                                            + "\"nonce\":\"bm9uY2Vub25jZW5vbmNl\",\"timestamp\":1700000000000}").getBytes(StandardCharsets.UTF_8));
+        byte[] payload = Arrays.copyOf(iv, iv.length + encrypted.length);
+        System.arraycopy(encrypted, 0, payload, iv.length, encrypted.length);
+        encryptedPayload = Base64.getEncoder().encodeToString(payload);
+    }
+    
+    /**
+     * A new {@link Cipher} is created and initialized per call.
+     */
+    @Benchmark
+    @Threads(4)
+    public String decryptMessage() {
+        return CryptographyUtils.decryptMessage(encryptedKey, keyPair.getPrivate());
+    }
+    
+    /**
+     * Initialized ciphers and buffers are reused from a pool.
+     */
+    @Benchmark
+    @Threads(4)
+    public String decryptPooled() {
+        return decryptor.decrypt(encryptedKey);
+    }
+    
+    /**
+     * A version 2 envelope, a pooled RSA decrypt of the
+     * session key followed by an AES-GCM decrypt of the payload.
+     */
+    @Benchmark
+    @Threads(4)
+    public byte[] openEnvelope() {
+        byte[] sessionKey = decryptor.decryptBytes(encryptedSessionKey);
+        return CryptographyUtils.decryptSessionPayload(sessionKey, Base64.getDecoder().decode(encryptedPayload), product);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.benchmark;
+
+import me.braydon.license.common.MiscUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for validating the format of
+ * the hardware id sent with license checks.
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HwidBenchmark {
+    @Param({ "1a2b3c4d-5e6f7a8b-9c0d1e2f-3a4b5c6d-16", "not-a-hardware-id" })
+    private String hwid;
+    
+    @Benchmark
+    public boolean isValidHwid() {
+        return MiscUtils.isValidHwid(hwid);
+    }
+}
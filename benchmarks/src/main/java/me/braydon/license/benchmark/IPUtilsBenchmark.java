@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.benchmark;
+
+import me.braydon.license.common.IPUtils;
+import me.braydon.license.common.TrustedProxies;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for resolving and validating
+ * the IP address of license check requests.
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IPUtilsBenchmark {
+    /**
+     * The regex IPv4 validation that was used before the hand-written parser.
+     */
+    private static final String IPV4_REGEX = "^(?:[0-9]{1,3}\\.){3}[0-9]{1,3}$";
+    
+    /**
+     * The regex IPv6 validation that was used before the hand-written parser.
+     */
+    private static final String IPV6_REGEX = "^([0-9a-fA-F]{1,4}:){7}[0-9a-fA-F]{1,4}$|^(([0-9a-fA-F]{1,4}:){0,6}[0-9a-fA-F]{1,4})?::(([0-9a-fA-F]{1,4}:){0,6}[0-9a-fA-F]{1,4})?$";
+    
+    /**
+     * A realistic mix of client IPs, mostly IPv4.
+     */
+    private static final String[] IPS = {
+        "203.0.113.7", "198.51.100.23", "192.0.2.146", "10.24.3.201",
+        "2001:db8:85a3::8a2e:370:7334", "fe80::1ff:fe23:4567:890a",
+        "172.16.254.1", "not-an-ip"
+    };
+    
+    /**
+     * The requests to resolve the IP of, covering
+     * direct, Cloudflare and proxied requests.
+     */
+    private MockHttpServletRequest[] requests;
+    
+    /**
+     * The proxies the requests came through.
+     */
+    private final TrustedProxies proxies = TrustedProxies.parse("172.64.0.0/13, 10.0.0.0/8");
+    
+    @Setup
+    public void setup() {
+        MockHttpServletRequest direct = new MockHttpServletRequest();
+        direct.setRemoteAddr("203.0.113.7");
+        
+        MockHttpServletRequest cloudflare = new MockHttpServletRequest();
+        cloudflare.setRemoteAddr("172.68.1.1");
+        cloudflare.addHeader("CF-Connecting-IP", "198.51.100.23");
+        
+        MockHttpServletRequest proxied = new MockHttpServletRequest();
+        proxied.setRemoteAddr("10.0.0.1");
+        proxied.addHeader("X-Forwarded-For", "192.0.2.146, 10.24.3.201, 10.0.0.2");
+        
+        MockHttpServletRequest proxiedV6 = new MockHttpServletRequest();
+        proxiedV6.setRemoteAddr("10.0.0.1");
+        proxiedV6.addHeader("X-Forwarded-For", "2001:db8:85a3::8a2e:370:7334, 10.0.0.2");
+        requests = new MockHttpServletRequest[] { direct, cloudflare, proxied, proxiedV6 };
+    }
+    
+    @Benchmark
+    public void getIpTypeRegex(Blackhole blackhole) {
+        for (String ip : IPS) {
+            blackhole.consume(ip.matches(IPV4_REGEX) ? 4 : ip.matches(IPV6_REGEX) ? 6 : -1);
+        }
+    }
+    
+    @Benchmark
+    public void getIpType(Blackhole blackhole) {
+        for (String ip : IPS) {
+            blackhole.consume(IPUtils.getIpType(ip));
+        }
+    }
+    
+    @Benchmark
+    public void getRealIp(Blackhole blackhole) {
+        for (MockHttpServletRequest request : requests) {
+            blackhole.consume(IPUtils.getRealIp(request, proxies));
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.benchmark;
+
+import lombok.NonNull;
+import me.braydon.license.exception.LicenseNotFoundException;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseBinding;
+import me.braydon.license.model.LicenseUse;
+import me.braydon.license.repository.LicenseRepository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory {@link LicenseRepository}, so the
+ * check path can be benchmarked without Mongo.
+ * <p>
+ * Only the methods used by the license services are
+ * supported, anything else throws an exception.
+ * </p>
+ *
+ * @author Braydon
+ */
+public final class InMemoryLicenseRepository implements InvocationHandler {
+    /**
+     * The stored licenses, keyed by their id.
+     */
+    @NonNull private final Map<String, License> licenses = new ConcurrentHashMap<>();
+    
+    /**
+     * The stored bindings, keyed by the license key.
+     */
+    @NonNull private final Map<String, Set<Binding>> bindings = new ConcurrentHashMap<>();
+    
+    /**
+     * Create a new in-memory repository.
+     *
+     * @return the repository
+     */
+    @NonNull
+    public static LicenseRepository create() {
+        return (LicenseRepository) Proxy.newProxyInstance(LicenseRepository.class.getClassLoader(),
+            new Class<?>[] { LicenseRepository.class }, new InMemoryLicenseRepository()
+        );
+    }
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "getLicense", "getCheckLicense" -> {
+                License license = licenses.get((String) args[0]);
+                return Optional.ofNullable(license != null && license.getProduct().equals(args[1]) ? license : null);
+            }
+            case "findById" -> {
+                return Optional.ofNullable(licenses.get((String) args[0]));
+            }
+            case "findAllById", "getCheckLicenses" -> {
+                List<License> found = new ArrayList<>();
+                for (Object key : (Iterable<?>) args[0]) {
+                    License license = licenses.get((String) key);
+                    if (license != null) {
+                        found.add(license);
+                    }
+                }
+                return found;
+            }
+            case "existsById" -> {
+                return licenses.containsKey((String) args[0]);
+            }
+            case "insert", "save" -> {
+                License license = (License) args[0];
+                licenses.put(license.getKey(), license);
+                return license;
+            }
+            case "findBindings" -> {
+                if (args[0] instanceof String key) {
+                    return findBindings(key, (String) args[1], (String) args[2]);
+                }
+                Map<String, Set<LicenseBinding.Type>> found = new HashMap<>();
+                for (Object key : (Collection<?>) args[0]) {
+                    Set<LicenseBinding.Type> types = findBindings((String) key, (String) args[1], (String) args[2]);
+                    if (!types.isEmpty()) {
+                        found.put((String) key, types);
+                    }
+                }
+                return found;
+            }
+            case "bind" -> {
+                bind((String) args[0], (String) args[1], (String) args[2], (boolean) args[3], (boolean) args[4]);
+                return null;
+            }
+            case "use" -> {
+                License license = licenses.get((String) args[0]);
+                if (license == null || !license.getProduct().equals(args[1])) {
+                    return Optional.empty();
+                }
+                synchronized (license) {
+                    license.use(false, false);
+                }
+                return Optional.of(license);
+            }
+            case "addUses" -> {
+                for (LicenseUse use : (List<LicenseUse>) args[0]) {
+                    License license = licenses.get(use.key());
+                    if (license != null) {
+                        synchronized (license) {
+                            license.setUses(license.getUses() + (int) use.uses());
+                            license.setLastUsed(use.lastUsed());
+                        }
+                    }
+                }
+                return null;
+            }
+            case "useAll" -> {
+                Map<String, License> used = new HashMap<>();
+                for (Object key : (Collection<?>) args[0]) {
+                    License license = licenses.get((String) key);
+                    if (license != null) {
+                        synchronized (license) {
+                            license.use(false, false);
+                        }
+                        used.put(license.getKey(), license);
+                    }
+                }
+                return used;
+            }
+            case "clearBindings" -> {
+                License license = licenses.get((String) args[0]);
+                if (license != null) {
+                    synchronized (license) {
+                        Set<Binding> bound = bindings.getOrDefault(license.getKey(), Set.of());
+                        if ((boolean) args[1]) {
+                            bound.removeIf(binding -> binding.type() == LicenseBinding.Type.IP);
+                            license.setIpCount(0);
+                        }
+                        if ((boolean) args[2]) {
+                            bound.removeIf(binding -> binding.type() == LicenseBinding.Type.HWID);
+                            license.setHwidCount(0);
+                        }
+                    }
+                }
+                return null;
+            }
+            case "deleteById" -> {
+                licenses.remove((String) args[0]);
+                bindings.remove((String) args[0]);
+                return null;
+            }
+            case "findAll" -> {
+                return new ArrayList<>(licenses.values());
+            }
+            case "count" -> {
+                return (long) licenses.size();
+            }
+            case "hasLegacyKeys" -> {
+                return false;
+            }
+            case "streamKeys" -> {
+                return new ArrayList<>(licenses.keySet()).stream();
+            }
+            case "migrateBindings" -> {
+                return 0L;
+            }
+            case "hashCode" -> {
+                return System.identityHashCode(proxy);
+            }
+            case "equals" -> {
+                return proxy == args[0];
+            }
+            case "toString" -> {
+                return "InMemoryLicenseRepository[" + licenses.size() + " licenses]";
+            }
+        }
+        throw new UnsupportedOperationException(method.getName() + " is not supported by the in-memory repository");
+    }
+    
+    /**
+     * Find out which of the given IP and hardware id
+     * are bound to the license with the given key.
+     *
+     * @param key      the key of the license
+     * @param hashedIp the hashed ip used
+     * @param hwid     the hardware id used
+     * @return the types of the bindings that exist
+     */
+    @NonNull
+    private Set<LicenseBinding.Type> findBindings(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid) {
+        Set<LicenseBinding.Type> types = EnumSet.noneOf(LicenseBinding.Type.class);
+        Set<Binding> bound = bindings.getOrDefault(key, Set.of());
+        if (bound.contains(new Binding(LicenseBinding.Type.IP, hashedIp))) {
+            types.add(LicenseBinding.Type.IP);
+        }
+        if (bound.contains(new Binding(LicenseBinding.Type.HWID, hwid))) {
+            types.add(LicenseBinding.Type.HWID);
+        }
+        return types;
+    }
+    
+    /**
+     * Bind the given IP and hardware id to the license
+     * with the given key, the same way the Mongo repository does.
+     *
+     * @param key      the key of the license
+     * @param hashedIp the hashed ip used
+     * @param hwid     the hardware id used
+     * @param newIp    whether the IP is new to the license
+     * @param newHwid  whether the HWID is new to the license
+     */
+    private void bind(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid, boolean newIp, boolean newHwid) {
+        License license = licenses.get(key);
+        if (license == null) {
+            throw new LicenseNotFoundException();
+        }
+        synchronized (license) {
+            license.checkLimits(newIp, newHwid);
+            Set<Binding> bound = bindings.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+            if (newIp && bound.add(new Binding(LicenseBinding.Type.IP, hashedIp))) {
+                license.setIpCount(license.getIpCount() + 1);
+            }
+            if (newHwid && bound.add(new Binding(LicenseBinding.Type.HWID, hwid))) {
+                license.setHwidCount(license.getHwidCount() + 1);
+            }
+        }
+    }
+    
+    /**
+     * A binding of a license.
+     *
+     * @param type  the type of the binding
+     * @param value the value of the binding
+     */
+    private record Binding(@NonNull LicenseBinding.Type type, @NonNull String value) { }
+}
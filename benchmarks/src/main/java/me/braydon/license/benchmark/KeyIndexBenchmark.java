@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.benchmark;
+
+import me.braydon.license.service.ComputeService;
+import me.braydon.license.service.HashingService;
+import org.mindrot.jbcrypt.BCrypt;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for turning a raw license
+ * key into the id it's looked up by.
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class KeyIndexBenchmark {
+    private static final String KEY = "ABCD-1234-EF56-7890";
+    private static final String LEGACY_SALT = "$2a$10$/nQyzQDMkCf97ZlJLLWa3O";
+    
+    private HashingService hashingService;
+    
+    @Setup
+    public void setup() {
+        hashingService = new HashingService(new ComputeService(1, 1000), 1000L, 30L);
+        hashingService.setIndexSecret("benchmark-secret");
+    }
+    
+    /**
+     * The legacy lookup id, a BCrypt hash with a fixed salt.
+     */
+    @Benchmark
+    public String legacyBCrypt() {
+        return BCrypt.hashpw(KEY, LEGACY_SALT);
+    }
+    
+    /**
+     * The HMAC-SHA256 key index.
+     */
+    @Benchmark
+    public String hmacIndex() {
+        return hashingService.indexKey(KEY);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.braydon.license.dto.LicenseBatchEntryDTO;
+import me.braydon.license.exception.APIException;
+import me.braydon.license.exception.LicenseNotFoundException;
+import me.braydon.license.model.License;
+import me.braydon.license.repository.LicenseStore;
+import me.braydon.license.repository.MongoLicenseStore;
+import me.braydon.license.service.DiscordService;
+import me.braydon.license.service.ComputeService;
+import me.braydon.license.service.HashingService;
+import me.braydon.license.service.LicenseCacheService;
+import me.braydon.license.service.LicenseService;
+import me.braydon.license.service.MetricsService;
+import me.braydon.license.service.RateLimitService;
+import me.braydon.license.service.UsageService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link LicenseService#check(String, String, String, String)},
+ * backed by the {@link InMemoryLicenseRepository} instead of Mongo.
+ * <p>
+ * Discord isn't connected, so no logs are sent.
+ * </p>
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LicenseCheckBenchmark {
+    private static final String KEY = "ABCD-1234-EF56-7890";
+    private static final String UNKNOWN_KEY = "ZZZZ-0000-ZZZZ-0000";
+    private static final String PRODUCT = "Example";
+    private static final String IP = "203.0.113.7";
+    private static final String HWID = "1a2b3c4d-5e6f7a8b-9c0d1e2f-3a4b5c6d-16";
+    
+    private static final int BATCH_SIZE = 5;
+    
+    private LicenseService licenseService;
+    private List<LicenseBatchEntryDTO> batch;
+    
+    @Setup
+    public void setup() {
+        LicenseStore store = new MongoLicenseStore(InMemoryLicenseRepository.create());
+        LicenseCacheService licenseCache = new LicenseCacheService(store, 10000L, 300L, 10000L, 60L, 100000L, 0.01D);
+        HashingService hashingService = new HashingService(new ComputeService(1, 1000), 10000L, 30L);
+        hashingService.setIndexSecret("benchmark-secret");
+        hashingService.setIpsSalt("$2a$10$Mr6fkPq0uu6lDYbCfeCCnu");
+        MetricsService metricsService = new MetricsService(new SimpleMeterRegistry());
+        DiscordService discordService = new DiscordService(store,
+            new DefaultListableBeanFactory().getBeanProvider(LicenseService.class), licenseCache, metricsService,
+            new SimpleAsyncTaskExecutor(), 1000
+        );
+        RateLimitService rateLimitService = new RateLimitService(0D, 0, 0D, 0, 1L, 1L); // Disabled, checks repeat the same key
+        licenseService = new LicenseService(store, discordService, hashingService, licenseCache, metricsService,
+            rateLimitService, new UsageService(store, true, 1000)
+        );
+        licenseCache.onInitialize();
+        licenseService.onInitialize();
+        licenseService.create(KEY, PRODUCT, "Benchmark", -1L, null, 1, 1, null);
+        
+        batch = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            String key = KEY + "-" + i;
+            licenseService.create(key, PRODUCT + i, "Benchmark", -1L, null, 1, 1, null);
+            batch.add(new LicenseBatchEntryDTO(key, PRODUCT + i));
+        }
+    }
+    
+    /**
+     * A check from an IP and HWID the license already knows,
+     * with the key, IP hash and license snapshot all cached.
+     */
+    @Benchmark
+    @Threads(4)
+    public License check() throws APIException {
+        return licenseService.check(KEY, PRODUCT, IP, HWID);
+    }
+    
+    /**
+     * A check of a key that doesn't exist, which is
+     * ruled out by the key filter before any lookup.
+     */
+    @Benchmark
+    @Threads(4)
+    public License checkUnknown() {
+        try {
+            return licenseService.check(UNKNOWN_KEY, PRODUCT, IP, HWID);
+        } catch (LicenseNotFoundException ex) {
+            return null;
+        }
+    }
+    
+    /**
+     * Checking several licenses one by one.
+     */
+    @Benchmark
+    @Threads(4)
+    public void checkSequential(Blackhole blackhole) throws APIException {
+        for (LicenseBatchEntryDTO entry : batch) {
+            blackhole.consume(licenseService.check(entry.getKey(), entry.getProduct(), IP, HWID));
+        }
+    }
+    
+    /**
+     * Checking several licenses in a single batch.
+     */
+    @Benchmark
+    @Threads(4)
+    public List<LicenseService.BatchResult> checkBatch() throws APIException {
+        return licenseService.checkBatch(batch, IP, HWID);
+    }
+}
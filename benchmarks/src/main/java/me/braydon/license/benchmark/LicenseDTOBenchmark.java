@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.braydon.license.LicenseServer;
+import me.braydon.license.dto.LicenseDTO;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for serializing the {@link LicenseDTO}
+ * returned by successful license checks.
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LicenseDTOBenchmark {
+    private ObjectMapper objectMapper;
+    private LicenseDTO license;
+    
+    @Setup
+    public void setup() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build(); // Configured like Spring MVC's
+        license = new LicenseDTO("Example license", 123456789012345678L, "Braydon",
+            "Basic", "1.0", new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(30L)), null
+        );
+    }
+    
+    /**
+     * Jackson, which Spring uses to write responses.
+     */
+    @Benchmark
+    public String jackson() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(license);
+    }
+    
+    /**
+     * Gson, which the server uses to read request bodies.
+     */
+    @Benchmark
+    public String gson() {
+        return LicenseServer.GSON.toJson(license);
+    }
+}
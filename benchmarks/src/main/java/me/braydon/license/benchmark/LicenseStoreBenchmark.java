@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.benchmark;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import me.braydon.license.dto.LicenseQueryDTO;
+import me.braydon.license.model.License;
+import me.braydon.license.repository.EmbeddedLicenseStore;
+import me.braydon.license.repository.LicenseRepository;
+import me.braydon.license.repository.LicenseRepositoryImpl;
+import me.braydon.license.repository.LicenseStore;
+import me.braydon.license.repository.MongoLicenseStore;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks for the {@link LicenseStore}s, doing
+ * the same lookups, uses, creates and lists on each.
+ * <p>
+ * Only the embedded store runs by default. To compare it with
+ * MongoDB, run with {@code -p store=embedded,mongo -jvmArgsAppend
+ * -Dmongo.uri=mongodb://127.0.0.1:27017}. The licenseBenchmark
+ * database is dropped before and after each run.
+ * </p>
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LicenseStoreBenchmark {
+    private static final String PRODUCT = "Example";
+    private static final String DATABASE = "licenseBenchmark";
+    
+    @Param({ "embedded" })
+    private String store;
+    
+    @Param({ "10000" })
+    private int licenses;
+    
+    private LicenseStore licenseStore;
+    private MongoClient mongoClient;
+    private Path directory;
+    private List<String> keys;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong next = new AtomicLong();
+    
+    @Setup
+    public void setup() throws IOException {
+        switch (store) {
+            case "embedded" -> {
+                directory = Files.createTempDirectory("license-store");
+                licenseStore = new EmbeddedLicenseStore(directory.resolve("licenses.log").toString(), 1_000_000L);
+            }
+            case "mongo" -> {
+                mongoClient = MongoClients.create(System.getProperty("mongo.uri", "mongodb://127.0.0.1:27017"));
+                mongoClient.getDatabase(DATABASE).drop();
+                MongoTemplate mongoTemplate = new MongoTemplate(mongoClient, DATABASE);
+                licenseStore = new MongoLicenseStore(new MongoRepositoryFactory(mongoTemplate).getRepository(LicenseRepository.class,
+                    RepositoryComposition.RepositoryFragments.just(new LicenseRepositoryImpl(mongoTemplate))
+                ));
+            }
+            default -> throw new IllegalArgumentException("Unknown store: " + store);
+        }
+        licenseStore.initialize();
+        keys = new ArrayList<>(licenses);
+        List<License> batch = new ArrayList<>(licenses);
+        for (int i = 0; i < licenses; i++) {
+            License license = license("%064x".formatted(i));
+            keys.add(license.getKey());
+            batch.add(license);
+        }
+        licenseStore.insertAll(batch);
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        if (licenseStore instanceof EmbeddedLicenseStore embeddedStore) {
+            embeddedStore.onShutdown();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+        if (mongoClient != null) {
+            mongoClient.getDatabase(DATABASE).drop();
+            mongoClient.close();
+        }
+    }
+    
+    /**
+     * Look up the fields a check needs of a license.
+     */
+    @Benchmark
+    public License lookup() {
+        return licenseStore.getCheckLicense(nextKey(), PRODUCT).orElseThrow();
+    }
+    
+    /**
+     * Record a use of a license, as a check that
+     * doesn't write uses in the background does.
+     */
+    @Benchmark
+    public License use() {
+        return licenseStore.use(nextKey(), PRODUCT).orElseThrow();
+    }
+    
+    /**
+     * Create a new license.
+     */
+    @Benchmark
+    public License create() {
+        return licenseStore.insert(license("new-%060d".formatted(created.getAndIncrement())));
+    }
+    
+    /**
+     * List a page of 100 licenses of the product.
+     */
+    @Benchmark
+    public long list() {
+        LicenseQueryDTO query = new LicenseQueryDTO(PRODUCT, null, null, null, null, null, null, nextKey(), 100);
+        try (Stream<License> page = licenseStore.streamQuery(query, 100, 100)) {
+            return page.count();
+        }
+    }
+    
+    /**
+     * Get the key of the next license to use.
+     *
+     * @return the key
+     */
+    private String nextKey() {
+        return keys.get((int) (next.getAndIncrement() % keys.size()));
+    }
+    
+    /**
+     * Create a license with the given key.
+     *
+     * @param key the key of the license
+     * @return the license
+     */
+    private static License license(String key) {
+        License license = new License();
+        license.setKey(key);
+        license.setProduct(PRODUCT);
+        license.setPlan("Basic");
+        license.setLatestVersion("1.0");
+        license.setIpLimit(1);
+        license.setHwidLimit(1);
+        license.setCreated(new Date());
+        return license;
+    }
+}
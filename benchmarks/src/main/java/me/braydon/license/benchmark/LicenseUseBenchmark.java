@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.benchmark;
+
+import me.braydon.license.model.License;
+import org.bson.Document;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.BsonBinaryWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for encoding the {@link License} document that is
+ * read and written on every use, with varying amounts of bindings.
+ * <p>
+ * The arrays variant is how licenses stored their IPs and
+ * HWIDs before they moved to the binding collection, the
+ * counts variant is how they're stored now.
+ * </p>
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LicenseUseBenchmark {
+    @Param({ "1", "10", "100", "1000", "10000" })
+    private int bindings;
+    
+    private final DocumentCodec codec = new DocumentCodec();
+    private Document arrays;
+    private Document counts;
+    
+    @Setup
+    public void setup() {
+        License license = new License();
+        license.setKey("4f6c2b1f0d3e5a79c8b1e2d3f4a5b6c7d8e9f0a1b2c3d4e5f6a7b8c9d0e1f2a3");
+        license.setProduct("Example");
+        license.setPlan("Basic");
+        license.setLatestVersion("1.0");
+        license.setIpCount(bindings);
+        license.setHwidCount(bindings);
+        license.setIpLimit(bindings + 1);
+        license.setHwidLimit(bindings + 1);
+        license.setLastUsed(new Date());
+        license.setCreated(new Date());
+        
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        counts = new Document();
+        converter.write(license, counts);
+        
+        List<String> ips = new ArrayList<>(bindings);
+        List<String> hwids = new ArrayList<>(bindings);
+        for (int i = 0; i < bindings; i++) {
+            ips.add("$2a$10$Xus.AHTCas97Ofx0tFs85O" + "%031d".formatted(i));
+            hwids.add("%08x-%08x-%08x-%08x-8".formatted(i, i * 31, i * 17, i * 13));
+        }
+        arrays = new Document(counts);
+        arrays.remove("ipCount");
+        arrays.remove("hwidCount");
+        arrays.append("ips", ips).append("hwids", hwids);
+        System.out.printf("%n%d bindings: %d bytes with arrays, %d bytes with counts%n", bindings, encode(arrays), encode(counts));
+    }
+    
+    /**
+     * The license document with its IPs and HWIDs in arrays.
+     */
+    @Benchmark
+    public int encodeArrays() {
+        return encode(arrays);
+    }
+    
+    /**
+     * The license document with only the binding counts.
+     */
+    @Benchmark
+    public int encodeCounts() {
+        return encode(counts);
+    }
+    
+    /**
+     * Encode the given document to BSON.
+     *
+     * @param document the document to encode
+     * @return the size of the encoded document
+     */
+    private int encode(Document document) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        codec.encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+        return buffer.getPosition();
+    }
+}
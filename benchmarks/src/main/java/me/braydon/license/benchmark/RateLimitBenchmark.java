@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.benchmark;
+
+import me.braydon.license.service.RateLimitService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for taking a token from the {@link RateLimitService},
+ * with contended threads on a single IP and spread over many IPs.
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimitBenchmark {
+    private static final int IPS = 10000;
+    
+    private RateLimitService rateLimitService;
+    private String[] ips;
+    
+    @Setup
+    public void setup() {
+        // A rate high enough to never reject, so only the bookkeeping is measured
+        rateLimitService = new RateLimitService(1_000_000_000D, 1_000_000, 1_000_000_000D, 1_000_000, 100000L, 600L);
+        ips = new String[IPS];
+        for (int i = 0; i < IPS; i++) {
+            ips[i] = "10.0." + (i >> 8) + "." + (i & 0xFF);
+        }
+    }
+    
+    /**
+     * Every thread takes tokens from the same bucket.
+     */
+    @Benchmark
+    @Threads(4)
+    public void sameIp() {
+        rateLimitService.checkIp(ips[0]);
+    }
+    
+    /**
+     * Threads take tokens from random buckets.
+     */
+    @Benchmark
+    @Threads(4)
+    public void manyIps() {
+        rateLimitService.checkIp(ips[ThreadLocalRandom.current().nextInt(IPS)]);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import lombok.NonNull;
+import me.braydon.license.repository.LicenseRepository;
+import me.braydon.license.repository.ReactiveLicenseRepository;
+import org.springframework.boot.autoconfigure.mongo.MongoProperties;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.SimpleReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
+import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
+
+/**
+ * The configuration of the reactive profile.
+ * <p>
+ * The reactive Mongo driver is excluded from auto-configuration
+ * (see application.yml), so the servlet stack doesn't open a second
+ * connection pool. Here it's set up from the same connection string
+ * and mapping as the blocking driver. Tomcat is also on the classpath
+ * for the servlet stack, so Netty has to be chosen explicitly.
+ * </p>
+ * <p>
+ * Enabling the reactive repositories turns off the auto-configured
+ * blocking ones, so both are enabled explicitly.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("reactive")
+@EnableMongoRepositories(basePackageClasses = LicenseRepository.class, includeFilters = @ComponentScan.Filter(
+    type = FilterType.ASSIGNABLE_TYPE, classes = LicenseRepository.class
+))
+@EnableReactiveMongoRepositories(basePackageClasses = ReactiveLicenseRepository.class, includeFilters = @ComponentScan.Filter(
+    type = FilterType.ASSIGNABLE_TYPE, classes = ReactiveLicenseRepository.class
+))
+public class ReactiveConfiguration {
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+    
+    @Bean(destroyMethod = "close")
+    public MongoClient reactiveMongoClient(@NonNull MongoProperties properties) {
+        return MongoClients.create(MongoClientSettings.builder()
+                                       .applyConnectionString(new ConnectionString(properties.determineUri()))
+                                       .build());
+    }
+    
+    @Bean
+    public ReactiveMongoTemplate reactiveMongoTemplate(@NonNull MongoClient reactiveMongoClient, @NonNull MongoProperties properties,
+                                                       @NonNull MongoMappingContext mappingContext,
+                                                       @NonNull MongoCustomConversions conversions) {
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return new ReactiveMongoTemplate(new SimpleReactiveMongoDatabaseFactory(reactiveMongoClient,
+            properties.getMongoClientDatabase()
+        ), converter);
+    }
+}
@@ -10,6 +10,8 @@ import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
 
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.File;
 import java.nio.file.Files;
 import java.security.*;
@@ -23,6 +25,11 @@ import java.util.Base64;
 @UtilityClass
 public final class CryptographyUtils {
     private static final String ALGORITHM = "RSA"; // The algorithm to use
+    private static final String SESSION_ALGORITHM = "AES"; // The algorithm for session keys
+    private static final String SESSION_TRANSFORMATION = "AES/GCM/NoPadding"; // The transformation for session payloads
+    private static final int GCM_IV_LENGTH = 12; // The length of the GCM IV, in bytes
+    private static final int GCM_TAG_LENGTH = 128; // The length of the GCM authentication tag, in bits
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA"; // The algorithm for signatures
     
     /**
      * Generate a new key pair.
@@ -78,4 +85,49 @@ public final class CryptographyUtils {
         cipher.init(Cipher.DECRYPT_MODE, privateKey); // Set our mode and private key
         return new String(cipher.doFinal(Base64.getDecoder().decode(input))); // Return our decrypted result
     }
-}
\ No newline at end of file
+    
+    /**
+     * Decrypt the given AES-GCM payload
+     * with the provided session key.
+     * <p>
+     * The payload is expected to be the 12 byte
+     * IV followed by the ciphertext and tag.
+     * </p>
+     *
+     * @param sessionKey the raw AES session key
+     * @param payload    the IV and encrypted payload
+     * @param aad        the additional authenticated data
+     * @return the decrypted payload
+     * @throws IllegalArgumentException if the payload couldn't be decrypted or authenticated
+     */
+    public static byte[] decryptSessionPayload(byte[] sessionKey, byte[] payload, byte[] aad) {
+        if (payload.length <= GCM_IV_LENGTH) {
+            throw new IllegalArgumentException("Payload is too short");
+        }
+        try {
+            Cipher cipher = Cipher.getInstance(SESSION_TRANSFORMATION); // Create the cipher
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(sessionKey, SESSION_ALGORITHM),
+                new GCMParameterSpec(GCM_TAG_LENGTH, payload, 0, GCM_IV_LENGTH)
+            ); // Set our mode, session key and IV
+            cipher.updateAAD(aad);
+            return cipher.doFinal(payload, GCM_IV_LENGTH, payload.length - GCM_IV_LENGTH); // Return our decrypted result
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalArgumentException("Failed to decrypt payload", ex);
+        }
+    }
+    
+    /**
+     * Sign the given input with the given private key.
+     *
+     * @param input      the input to sign
+     * @param privateKey the key to sign with
+     * @return the signature
+     */
+    @SneakyThrows
+    public static byte[] sign(byte[] input, @NonNull PrivateKey privateKey) {
+        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+        signature.initSign(privateKey);
+        signature.update(input);
+        return signature.sign();
+    }
+}
@@ -8,6 +8,10 @@ package me.braydon.license.common;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.NonNull;
 import lombok.experimental.UtilityClass;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+import java.net.InetSocketAddress;
+import java.util.function.Function;
 
 /**
  * @author Braydon
@@ -15,46 +19,35 @@ import lombok.experimental.UtilityClass;
 @UtilityClass
 public final class IPUtils {
     /**
-     * The regex expression for validating IPv4 addresses.
-     */
-    public static final String IPV4_REGEX = "^(?:[0-9]{1,3}\\.){3}[0-9]{1,3}$";
-    
-    /**
-     * The regex expression for validating IPv6 addresses.
+     * Get the real IP from the given request.
+     * <p>
+     * The forwarding headers can be sent by anyone, so
+     * they're only believed from the given trusted proxies.
+     * </p>
+     *
+     * @param request the request
+     * @param proxies the proxies trusted to forward the client IP
+     * @return the real IP
      */
-    public static final String IPV6_REGEX = "^([0-9a-fA-F]{1,4}:){7}[0-9a-fA-F]{1,4}$|^(([0-9a-fA-F]{1,4}:){0,6}[0-9a-fA-F]{1,4})?::(([0-9a-fA-F]{1,4}:){0,6}[0-9a-fA-F]{1,4})?$";
-    
-    private static final String[] IP_HEADERS = new String[] {
-        "CF-Connecting-IP",
-        "X-Forwarded-For"
-    };
+    @NonNull
+    public static String getRealIp(@NonNull HttpServletRequest request, @NonNull TrustedProxies proxies) {
+        return getRealIp(request.getRemoteAddr(), request::getHeader, proxies);
+    }
     
     /**
-     * Get the real IP from the given request.
+     * Get the real IP from the given reactive request.
      *
      * @param request the request
+     * @param proxies the proxies trusted to forward the client IP
      * @return the real IP
+     * @see #getRealIp(HttpServletRequest, TrustedProxies)
      */
     @NonNull
-    public static String getRealIp(@NonNull HttpServletRequest request) {
-        String ip = request.getRemoteAddr();
-        for (String headerName : IP_HEADERS) {
-            String header = request.getHeader(headerName);
-            if (header == null) {
-                continue;
-            }
-            if (!header.contains(",")) { // Handle single IP
-                ip = header;
-                break;
-            }
-            // Handle multiple IPs
-            String[] ips = header.split(",");
-            for (String ipHeader : ips) {
-                ip = ipHeader;
-                break;
-            }
-        }
-        return ip;
+    public static String getRealIp(@NonNull ServerHttpRequest request, @NonNull TrustedProxies proxies) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        String ip = remoteAddress == null || remoteAddress.getAddress() == null ? ""
+                        : remoteAddress.getAddress().getHostAddress();
+        return getRealIp(ip, request.getHeaders()::getFirst, proxies);
     }
     
     /**
@@ -75,7 +68,7 @@ public final class IPUtils {
      * @return true if IPv4, otherwise false
      */
     public static boolean isIpV4(@NonNull String input) {
-        return input.matches(IPV4_REGEX);
+        return parseIpV4(input) != -1L;
     }
     
     /**
@@ -86,6 +79,229 @@ public final class IPUtils {
      * @return true if IPv6, otherwise false
      */
     public static boolean isIpV6(@NonNull String input) {
-        return input.matches(IPV6_REGEX);
+        return parseIpV6(input, null);
+    }
+    
+    /**
+     * Parse the given IPv4 address.
+     *
+     * @param input the input
+     * @return the unsigned 32-bit address, -1 if invalid
+     */
+    public static long parseIpV4(@NonNull String input) {
+        return parseIpV4(input, 0, input.length());
+    }
+    
+    /**
+     * Parse the given IPv6 address.
+     * <p>
+     * Compressed (::) addresses and addresses
+     * ending in an IPv4 address are supported.
+     * </p>
+     *
+     * @param input  the input
+     * @param result the array to store the high and low
+     *               64 bits of the address in, null to only validate
+     * @return true if the address is valid, otherwise false
+     */
+    public static boolean parseIpV6(@NonNull String input, long[] result) {
+        int length = input.length();
+        if (length < 2 || length > 45) { // Can't be a valid IPv6 address
+            return false;
+        }
+        long headHigh = 0L, headLow = 0L; // The groups before the compression
+        long tailHigh = 0L, tailLow = 0L; // The groups after the compression
+        int groups = 0; // The amount of groups parsed
+        int compressedAt = -1; // The amount of groups before the compression
+        int index = 0;
+        if (input.charAt(0) == ':') { // Only valid if the address starts with ::
+            if (input.charAt(1) != ':') {
+                return false;
+            }
+            compressedAt = 0;
+            index = 2;
+        }
+        while (index < length) {
+            int start = index;
+            int value = 0;
+            while (index < length && index - start < 5) {
+                int digit = hexDigit(input.charAt(index));
+                if (digit == -1) {
+                    break;
+                }
+                value = (value << 4) | digit;
+                index++;
+            }
+            int group;
+            int groupCount;
+            if (index < length && input.charAt(index) == '.') { // The address ends with an IPv4 address
+                long ipV4 = parseIpV4(input, start, length);
+                if (ipV4 == -1L || groups > 6) {
+                    return false;
+                }
+                group = (int) ipV4;
+                groupCount = 2;
+                index = length;
+            } else {
+                if (index == start || index - start > 4) { // Groups must have 1-4 hex digits
+                    return false;
+                }
+                group = value;
+                groupCount = 1;
+            }
+            // Append the group(s) to the head or tail
+            int bits = groupCount * 16;
+            if (compressedAt == -1) {
+                headHigh = (headHigh << bits) | (headLow >>> (64 - bits));
+                headLow = (headLow << bits) | (group & 0xFFFFFFFFL);
+            } else {
+                tailHigh = (tailHigh << bits) | (tailLow >>> (64 - bits));
+                tailLow = (tailLow << bits) | (group & 0xFFFFFFFFL);
+            }
+            groups += groupCount;
+            if (groups > 8) {
+                return false;
+            }
+            if (index == length) {
+                break;
+            }
+            if (input.charAt(index++) != ':') { // Groups must be separated by a colon
+                return false;
+            }
+            if (index < length && input.charAt(index) == ':') { // Compression
+                if (compressedAt != -1) { // Only one compression is allowed
+                    return false;
+                }
+                compressedAt = groups;
+                index++;
+            } else if (index == length) { // Trailing colon
+                return false;
+            }
+        }
+        if (compressedAt == -1 ? groups != 8 : groups > 7) {
+            return false;
+        }
+        if (result != null) {
+            if (compressedAt != -1) { // Move the head groups to the top of the address
+                int shift = (8 - compressedAt) * 16;
+                if (shift >= 128) {
+                    headHigh = 0L;
+                    headLow = 0L;
+                } else if (shift >= 64) {
+                    headHigh = headLow << (shift - 64);
+                    headLow = 0L;
+                } else if (shift > 0) {
+                    headHigh = (headHigh << shift) | (headLow >>> (64 - shift));
+                    headLow <<= shift;
+                }
+            }
+            result[0] = headHigh | tailHigh;
+            result[1] = headLow | tailLow;
+        }
+        return true;
+    }
+    
+    /**
+     * Get the real IP of a request from the
+     * given remote address and headers.
+     *
+     * @param remoteAddr the address the request came from
+     * @param headers    the function to get a header of the request
+     * @param proxies    the proxies trusted to forward the client IP
+     * @return the real IP
+     */
+    @NonNull
+    private static String getRealIp(@NonNull String remoteAddr, @NonNull Function<String, String> headers,
+                                    @NonNull TrustedProxies proxies) {
+        if (!proxies.isTrusted(remoteAddr)) { // Not from our proxy, the headers could say anything
+            return remoteAddr;
+        }
+        String connectingIp = headers.apply("CF-Connecting-IP"); // Set by Cloudflare, replacing any sent by the client
+        if (connectingIp != null) {
+            return connectingIp.trim();
+        }
+        String forwardedFor = headers.apply("X-Forwarded-For");
+        if (forwardedFor == null) {
+            return remoteAddr;
+        }
+        // Each proxy appends the address it got the request from, so walk back from ours,
+        // the first address that isn't a trusted proxy is the client. Anything before it
+        // was sent by the client, and can't be believed.
+        String ip = remoteAddr;
+        int end = forwardedFor.length();
+        while (end > 0) {
+            int comma = forwardedFor.lastIndexOf(',', end - 1);
+            String hop = forwardedFor.substring(comma + 1, end).trim();
+            if (hop.isEmpty()) {
+                break;
+            }
+            ip = hop;
+            if (!proxies.isTrusted(hop)) {
+                break;
+            }
+            end = comma;
+        }
+        return ip;
+    }
+    
+    /**
+     * Parse the IPv4 address in the given
+     * range of the given input.
+     *
+     * @param input the input
+     * @param from  the start index, inclusive
+     * @param to    the end index, exclusive
+     * @return the unsigned 32-bit address, -1 if invalid
+     */
+    private static long parseIpV4(@NonNull String input, int from, int to) {
+        if (to - from < 7 || to - from > 15) { // Can't be a valid IPv4 address
+            return -1L;
+        }
+        long address = 0L;
+        int octets = 0;
+        int index = from;
+        while (index < to) {
+            int start = index;
+            int value = 0;
+            while (index < to && index - start < 4) {
+                char c = input.charAt(index);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+                index++;
+            }
+            // Octets must have 1-3 digits and be at most 255
+            if (index == start || index - start > 3 || value > 255) {
+                return -1L;
+            }
+            address = (address << 8) | value;
+            if (++octets == 4) {
+                break;
+            }
+            if (index >= to || input.charAt(index++) != '.') { // Octets must be separated by a dot
+                return -1L;
+            }
+        }
+        return octets == 4 && index == to ? address : -1L;
+    }
+    
+    /**
+     * Get the value of the given ASCII hex digit.
+     *
+     * @param c the character
+     * @return the value, -1 if not a hex digit
+     */
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
     }
 }
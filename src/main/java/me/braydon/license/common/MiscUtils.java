@@ -21,8 +21,23 @@ public final class MiscUtils {
      */
     @NonNull
     public static String obfuscateKey(@NonNull String rawKey) {
-        int length = 9; // The amount of chars to show
+        int length = Math.min(9, rawKey.length() / 2); // The amount of chars to show, never the whole key
         String key = rawKey.substring(0, length);
         return key + "*".repeat(rawKey.length() - length);
     }
+    
+    /**
+     * Check if the given hardware id is in the correct
+     * format, 4 segments followed by the processor count.
+     *
+     * @param hwid the hardware id to check
+     * @return true if valid, otherwise false
+     */
+    public static boolean isValidHwid(@NonNull String hwid) {
+        if (!hwid.contains("-")) {
+            return false;
+        }
+        int segments = hwid.substring(0, hwid.lastIndexOf("-")).split("-").length;
+        return segments == 4;
+    }
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.common;
+
+import lombok.NonNull;
+import lombok.SneakyThrows;
+
+import javax.crypto.Cipher;
+import java.security.PrivateKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reusable RSA decryptor bound to a {@link PrivateKey}.
+ * <p>
+ * Looking up and initializing a {@link Cipher} is expensive,
+ * so initialized ciphers (along with their Base64 and output
+ * buffers) are kept in a pool and reused between calls. The
+ * pool isn't tied to threads, so it also works with virtual
+ * threads, which would otherwise get a new cipher every time.
+ * </p>
+ *
+ * @author Braydon
+ * @see CryptographyUtils#decryptMessage(String, PrivateKey) for the non-pooled equivalent
+ */
+public final class RSADecryptor {
+    private static final String ALGORITHM = "RSA"; // The algorithm to use
+    
+    /**
+     * The private key to decrypt with.
+     */
+    @NonNull private final PrivateKey privateKey;
+    
+    /**
+     * The maximum amount of idle ciphers to keep.
+     */
+    private final int maxIdle;
+    
+    /**
+     * The idle ciphers, ready for use.
+     */
+    @NonNull private final ConcurrentLinkedQueue<Slot> idle = new ConcurrentLinkedQueue<>();
+    
+    /**
+     * The amount of ciphers in {@link #idle}.
+     */
+    @NonNull private final AtomicInteger idleCount = new AtomicInteger();
+    
+    public RSADecryptor(@NonNull PrivateKey privateKey, int maxIdle) {
+        this.privateKey = privateKey;
+        this.maxIdle = maxIdle;
+    }
+    
+    /**
+     * Decrypt the given Base64 encoded input.
+     *
+     * @param input the encrypted input
+     * @return the decrypted result
+     * @throws IllegalArgumentException if the input isn't valid Base64
+     */
+    @NonNull
+    public String decrypt(@NonNull String input) {
+        Slot slot = acquire();
+        try {
+            int outputLength = slot.decrypt(input);
+            try {
+                return new String(slot.output, 0, outputLength); // Return our decrypted result
+            } finally {
+                Arrays.fill(slot.output, 0, outputLength, (byte) 0); // Don't leave the plaintext lying around
+            }
+        } finally {
+            release(slot);
+        }
+    }
+    
+    /**
+     * Decrypt the given Base64 encoded input
+     * into its raw decrypted bytes.
+     *
+     * @param input the encrypted input
+     * @return the decrypted bytes
+     * @throws IllegalArgumentException if the input isn't valid Base64
+     */
+    public byte[] decryptBytes(@NonNull String input) {
+        Slot slot = acquire();
+        try {
+            int outputLength = slot.decrypt(input);
+            try {
+                return Arrays.copyOf(slot.output, outputLength);
+            } finally {
+                Arrays.fill(slot.output, 0, outputLength, (byte) 0); // Don't leave the plaintext lying around
+            }
+        } finally {
+            release(slot);
+        }
+    }
+    
+    /**
+     * Take an idle cipher from the
+     * pool, or create a new one.
+     *
+     * @return the cipher slot
+     */
+    @NonNull
+    private Slot acquire() {
+        Slot slot = idle.poll();
+        if (slot == null) { // Pool is empty, create a new cipher
+            return new Slot(privateKey);
+        }
+        idleCount.decrementAndGet();
+        return slot;
+    }
+    
+    /**
+     * Return the given cipher to the pool,
+     * dropping it if the pool is full.
+     *
+     * @param slot the cipher slot
+     */
+    private void release(@NonNull Slot slot) {
+        if (idleCount.incrementAndGet() > maxIdle) { // Pool is full
+            idleCount.decrementAndGet();
+            return;
+        }
+        idle.offer(slot);
+    }
+    
+    /**
+     * An initialized {@link Cipher}
+     * along with its reusable buffers.
+     */
+    private static final class Slot {
+        @NonNull private final Cipher cipher;
+        private byte[] encoded = new byte[0];
+        private byte[] decoded = new byte[0];
+        private byte[] output = new byte[0];
+        
+        @SneakyThrows
+        private Slot(@NonNull PrivateKey privateKey) {
+            cipher = Cipher.getInstance(ALGORITHM); // Create the cipher
+            cipher.init(Cipher.DECRYPT_MODE, privateKey); // Set our mode and private key
+        }
+        
+        /**
+         * Decrypt the given Base64 encoded
+         * input into the output buffer.
+         *
+         * @param input the encrypted input
+         * @return the length of the decrypted result
+         */
+        @SneakyThrows
+        private int decrypt(@NonNull String input) {
+            int length = input.length();
+            if (encoded.length != length) { // The decoder needs an exactly sized source
+                encoded = new byte[length];
+                decoded = new byte[(length / 4) * 3 + 3];
+            }
+            for (int i = 0; i < length; i++) {
+                char c = input.charAt(i);
+                if (c > 0x7F) { // Not a Base64 character
+                    throw new IllegalArgumentException("Illegal base64 character " + Integer.toHexString(c));
+                }
+                encoded[i] = (byte) c;
+            }
+            int decodedLength = Base64.getDecoder().decode(encoded, decoded);
+            int outputSize = cipher.getOutputSize(decodedLength);
+            if (output.length < outputSize) {
+                output = new byte[outputSize];
+            }
+            return cipher.doFinal(decoded, 0, decodedLength, output, 0); // Decrypt, resetting the cipher
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.common;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded, lock-free ring buffer with
+ * many producers and a single consumer.
+ * <p>
+ * Each slot has a sequence, which tells producers whether
+ * the slot is free for their lap, and the consumer whether
+ * the element in it has been published. Producers claim a
+ * slot with a single CAS, and never wait on each other or
+ * the consumer; when the buffer is full, offering fails.
+ * </p>
+ *
+ * @param <T> the type of the elements
+ * @author Braydon
+ */
+public final class RingBuffer<T> {
+    /**
+     * The elements in the buffer.
+     */
+    @NonNull private final AtomicReferenceArray<T> elements;
+    
+    /**
+     * The sequence of each slot.
+     */
+    @NonNull private final AtomicLongArray sequences;
+    
+    /**
+     * The mask to get the slot of a position with.
+     */
+    private final int mask;
+    
+    /**
+     * The amount of elements the buffer can hold.
+     */
+    @Getter private final int capacity;
+    
+    /**
+     * The position the next element is offered at.
+     */
+    @NonNull private final AtomicLong tail = new AtomicLong();
+    
+    /**
+     * The position the next element is taken from.
+     * <p>
+     * Only written by the consumer.
+     * </p>
+     */
+    private volatile long head;
+    
+    /**
+     * Create a ring buffer holding at least
+     * the given amount of elements.
+     *
+     * @param capacity the minimum capacity, rounded up to a power of two
+     */
+    public RingBuffer(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mask = this.capacity - 1;
+        elements = new AtomicReferenceArray<>(this.capacity);
+        sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+    
+    /**
+     * Offer the given element to the buffer.
+     *
+     * @param element the element to offer
+     * @return true if added, false if the buffer is full
+     */
+    public boolean offer(@NonNull T element) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0L) { // The slot is free for this lap, try to claim it
+                if (tail.compareAndSet(position, position + 1L)) {
+                    elements.lazySet(slot, element);
+                    sequences.set(slot, position + 1L); // Publish the element
+                    return true;
+                }
+            } else if (difference < 0L) { // The consumer hasn't taken the element from the last lap
+                return false;
+            }
+            position = tail.get(); // Another producer claimed the slot
+        }
+    }
+    
+    /**
+     * Take up to the given amount of elements from the buffer.
+     * <p>
+     * This must only be called by a single thread at a time.
+     * </p>
+     *
+     * @param consumer the consumer to pass the elements to
+     * @param limit    the maximum amount of elements to take
+     * @return the amount of elements taken
+     */
+    public int drain(@NonNull Consumer<T> consumer, int limit) {
+        long position = head;
+        int drained = 0;
+        while (drained < limit) {
+            int slot = (int) position & mask;
+            if (sequences.get(slot) != position + 1L) { // Empty, or not published yet
+                break;
+            }
+            T element = elements.get(slot);
+            elements.lazySet(slot, null);
+            sequences.set(slot, position + capacity); // Free the slot for the next lap
+            head = ++position;
+            consumer.accept(element);
+            drained++;
+        }
+        return drained;
+    }
+    
+    /**
+     * Get the amount of elements in the buffer.
+     *
+     * @return the amount of elements
+     */
+    public int size() {
+        return (int) Math.min(Math.max(tail.get() - head, 0L), capacity);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.common;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The proxies trusted to tell us the
+ * IP of the client they're forwarding.
+ * <p>
+ * Each proxy is an IP, or a CIDR range (e.g. 10.0.0.0/8).
+ * The ranges are parsed once, so checking an IP
+ * doesn't parse anything but the IP itself.
+ * </p>
+ *
+ * @author Braydon
+ * @see IPUtils#getRealIp(jakarta.servlet.http.HttpServletRequest, TrustedProxies)
+ */
+public final class TrustedProxies {
+    /**
+     * No trusted proxies, the remote address is always the client.
+     */
+    public static final TrustedProxies NONE = new TrustedProxies(List.of());
+    
+    /**
+     * The trusted ranges.
+     */
+    @NonNull private final List<Range> ranges;
+    
+    private TrustedProxies(@NonNull List<Range> ranges) {
+        this.ranges = ranges;
+    }
+    
+    /**
+     * Parse the given comma separated proxies.
+     *
+     * @param proxies the proxies, IPs or CIDR ranges
+     * @return the trusted proxies
+     * @throws IllegalArgumentException if a proxy is invalid
+     */
+    @NonNull
+    public static TrustedProxies parse(@NonNull String proxies) throws IllegalArgumentException {
+        List<Range> ranges = new ArrayList<>();
+        for (String proxy : proxies.split(",")) {
+            proxy = proxy.trim();
+            if (!proxy.isEmpty()) {
+                ranges.add(Range.parse(proxy));
+            }
+        }
+        return ranges.isEmpty() ? NONE : new TrustedProxies(List.copyOf(ranges));
+    }
+    
+    /**
+     * Check if the given IP is a trusted proxy.
+     *
+     * @param ip the IP to check
+     * @return true if trusted, otherwise false
+     */
+    public boolean isTrusted(@NonNull String ip) {
+        if (ranges.isEmpty()) {
+            return false;
+        }
+        long ipV4 = IPUtils.parseIpV4(ip);
+        long[] ipV6 = null;
+        if (ipV4 == -1L) {
+            ipV6 = new long[2];
+            if (!IPUtils.parseIpV6(ip, ipV6)) { // Not an IP
+                return false;
+            }
+        }
+        for (Range range : ranges) {
+            if (ipV6 == null ? range.contains(ipV4) : range.contains(ipV6[0], ipV6[1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * An IPv4 or IPv6 CIDR range.
+     *
+     * @param v6   whether the range is IPv6
+     * @param high the high 64 bits of the address, 0 for IPv4
+     * @param low  the low 64 bits of the address
+     * @param bits the amount of leading bits matched
+     */
+    private record Range(boolean v6, long high, long low, int bits) {
+        /**
+         * Parse the given IP or CIDR range.
+         *
+         * @param input the input
+         * @return the range
+         * @throws IllegalArgumentException if the input is invalid
+         */
+        @NonNull
+        private static Range parse(@NonNull String input) throws IllegalArgumentException {
+            int slash = input.indexOf('/');
+            String address = slash == -1 ? input : input.substring(0, slash);
+            long ipV4 = IPUtils.parseIpV4(address);
+            long[] ipV6 = new long[2];
+            boolean v6 = ipV4 == -1L;
+            if (v6 && !IPUtils.parseIpV6(address, ipV6)) {
+                throw new IllegalArgumentException("Invalid trusted proxy: " + input);
+            }
+            int maxBits = v6 ? 128 : 32;
+            int bits = maxBits;
+            if (slash != -1) {
+                try {
+                    bits = Integer.parseInt(input.substring(slash + 1));
+                } catch (NumberFormatException ex) {
+                    bits = -1;
+                }
+                if (bits < 0 || bits > maxBits) {
+                    throw new IllegalArgumentException("Invalid trusted proxy: " + input);
+                }
+            }
+            return v6 ? new Range(true, ipV6[0] & mask(bits), ipV6[1] & mask(bits - 64), bits)
+                       : new Range(false, 0L, ipV4 & (mask(bits) >>> 32), bits);
+        }
+        
+        /**
+         * Check if the given IPv4 address is in this range.
+         *
+         * @param ip the unsigned 32-bit address
+         * @return true if in range, otherwise false
+         */
+        private boolean contains(long ip) {
+            return !v6 && (ip & (mask(bits) >>> 32)) == low;
+        }
+        
+        /**
+         * Check if the given IPv6 address is in this range.
+         *
+         * @param ipHigh the high 64 bits of the address
+         * @param ipLow  the low 64 bits of the address
+         * @return true if in range, otherwise false
+         */
+        private boolean contains(long ipHigh, long ipLow) {
+            return v6 && (ipHigh & mask(bits)) == high && (ipLow & mask(bits - 64)) == low;
+        }
+        
+        /**
+         * Get the mask of the given amount
+         * of leading bits of a 64-bit word.
+         *
+         * @param bits the amount of bits, clamped to 0-64
+         * @return the mask
+         */
+        private static long mask(int bits) {
+            return bits <= 0 ? 0L : bits >= 64 ? -1L : -1L << (64 - bits);
+        }
+    }
+}
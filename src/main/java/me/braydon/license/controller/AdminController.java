@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import me.braydon.license.dto.AuditDayDTO;
+import me.braydon.license.dto.LicenseQueryDTO;
+import me.braydon.license.dto.LicenseTransferDTO;
+import me.braydon.license.dto.LicenseTransferProgressDTO;
+import me.braydon.license.exception.APIException;
+import me.braydon.license.model.License;
+import me.braydon.license.service.AuditService;
+import me.braydon.license.service.LicenseQueryService;
+import me.braydon.license.service.LicenseTransferService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+/**
+ * The routes for administrating {@link License}s.
+ * <p>
+ * These routes require the admin token to be sent as a
+ * bearer token, and are disabled if no token is configured.
+ * Responses are streamed as NDJSON, so errors are only
+ * returned as JSON before anything has been written.
+ * </p>
+ *
+ * @author Braydon
+ */
+@RestController
+@Profile("!reactive")
+@RequestMapping("/admin")
+public final class AdminController {
+    private static final String BEARER_PREFIX = "Bearer ";
+    
+    /**
+     * The {@link LicenseTransferService} to use.
+     */
+    @NonNull private final LicenseTransferService transferService;
+    
+    /**
+     * The {@link LicenseQueryService} to use.
+     */
+    @NonNull private final LicenseQueryService queryService;
+    
+    /**
+     * The {@link AuditService} to report checks with.
+     */
+    @NonNull private final AuditService auditService;
+    
+    /**
+     * The mapper to write NDJSON lines with.
+     */
+    @NonNull private final ObjectMapper objectMapper;
+    
+    /**
+     * The token required to use the admin routes.
+     */
+    @Value("${admin.token}")
+    private String token;
+    
+    /**
+     * The maximum amount of days to report checks for at once.
+     */
+    @Value("${admin.audit.max-days}")
+    private long maxAuditDays;
+    
+    @Autowired
+    public AdminController(@NonNull LicenseTransferService transferService, @NonNull LicenseQueryService queryService,
+                           @NonNull AuditService auditService, @NonNull ObjectMapper objectMapper) {
+        this.transferService = transferService;
+        this.queryService = queryService;
+        this.auditService = auditService;
+        this.objectMapper = objectMapper;
+    }
+    
+    /**
+     * This route handles importing licenses from NDJSON.
+     * <p>
+     * The progress is written as a line of NDJSON
+     * after every chunk, with the final line being
+     * the summary of the import.
+     * </p>
+     *
+     * @param request  the request to read licenses from
+     * @param response the response to write progress to
+     * @return the response entity, null if the response was streamed
+     * @throws IOException if reading or writing fails
+     * @see LicenseTransferDTO for the line format
+     * @see ResponseEntity for response entity
+     */
+    @PostMapping(value = "/licenses/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<?> importLicenses(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response)
+        throws IOException {
+        try {
+            checkAuthorization(request);
+        } catch (APIException ex) { // Handle the exception
+            return error(ex);
+        }
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        OutputStream output = response.getOutputStream();
+        LicenseTransferProgressDTO result = transferService.importLicenses(request.getInputStream(),
+            progress -> writeLine(output, progress)
+        );
+        writeLine(output, result);
+        return null;
+    }
+    
+    /**
+     * This route handles exporting all licenses as NDJSON.
+     *
+     * @param request  the request
+     * @param response the response to write licenses to
+     * @return the response entity, null if the response was streamed
+     * @throws IOException if writing fails
+     * @see LicenseTransferDTO for the line format
+     * @see ResponseEntity for response entity
+     */
+    @GetMapping("/licenses/export")
+    @ResponseBody
+    public ResponseEntity<?> exportLicenses(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response)
+        throws IOException {
+        try {
+            checkAuthorization(request);
+        } catch (APIException ex) { // Handle the exception
+            return error(ex);
+        }
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"licenses.ndjson\"");
+        transferService.exportLicenses(response.getOutputStream());
+        return null;
+    }
+    
+    /**
+     * This route handles listing the licenses
+     * matching a query as NDJSON, a page at a time.
+     * <p>
+     * The final line has the cursor to pass as
+     * {@code after} to get the next page.
+     * </p>
+     *
+     * @param request  the request
+     * @param response the response to write licenses to
+     * @param query    the query to match
+     * @return the response entity, null if the response was streamed
+     * @throws IOException if writing fails
+     * @see LicenseQueryDTO for the query params
+     * @see ResponseEntity for response entity
+     */
+    @GetMapping("/licenses")
+    @ResponseBody
+    public ResponseEntity<?> queryLicenses(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                           @NonNull LicenseQueryDTO query) throws IOException {
+        try {
+            checkAuthorization(request);
+            if (!query.isValid()) { // Ensure the query is valid
+                throw new APIException(HttpStatus.BAD_REQUEST, "Invalid limit or date range");
+            }
+        } catch (APIException ex) { // Handle the exception
+            return error(ex);
+        }
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        queryService.queryLicenses(query, response.getOutputStream());
+        return null;
+    }
+    
+    /**
+     * This route handles reporting the checks
+     * per day and product, from the audit log.
+     *
+     * @param request the request
+     * @param product the product to report, null for all
+     * @param from    the first day to report, inclusive
+     * @param to      the last day to report, inclusive
+     * @return the response entity
+     * @see AuditDayDTO for the days
+     * @see ResponseEntity for response entity
+     */
+    @GetMapping("/audit/days")
+    @ResponseBody
+    public ResponseEntity<?> auditDays(@NonNull HttpServletRequest request, @RequestParam(required = false) String product,
+                                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @NonNull LocalDate from,
+                                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @NonNull LocalDate to) {
+        try {
+            checkAuthorization(request);
+            if (to.isBefore(from) || ChronoUnit.DAYS.between(from, to) >= maxAuditDays) { // Ensure the range is valid
+                throw new APIException(HttpStatus.BAD_REQUEST, "Invalid date range, at most " + maxAuditDays + " days");
+            }
+            return ResponseEntity.ok(Map.of("days", auditService.getDays(product, from, to)));
+        } catch (APIException ex) { // Handle the exception
+            return error(ex);
+        }
+    }
+    
+    /**
+     * Ensure the given request has the admin token.
+     *
+     * @param request the request
+     * @throws APIException if the admin routes are disabled or the token is wrong
+     */
+    private void checkAuthorization(@NonNull HttpServletRequest request) throws APIException {
+        if (token == null || token.isBlank()) { // Admin routes are disabled
+            throw new APIException(HttpStatus.NOT_FOUND, "Admin routes are disabled");
+        }
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header == null || !header.startsWith(BEARER_PREFIX) || !MessageDigest.isEqual(
+            header.substring(BEARER_PREFIX.length()).getBytes(StandardCharsets.UTF_8),
+            token.getBytes(StandardCharsets.UTF_8)
+        )) {
+            throw new APIException(HttpStatus.UNAUTHORIZED, "Invalid admin token");
+        }
+    }
+    
+    /**
+     * Write the given value as a line of
+     * NDJSON and flush it to the client.
+     *
+     * @param output the output to write to
+     * @param value  the value to write
+     */
+    @SneakyThrows
+    private void writeLine(@NonNull OutputStream output, @NonNull Object value) {
+        output.write(objectMapper.writeValueAsBytes(value));
+        output.write('\n');
+        output.flush();
+    }
+    
+    /**
+     * Build the error response for the given exception.
+     *
+     * @param ex the exception
+     * @return the response entity
+     */
+    @NonNull
+    private static ResponseEntity<?> error(@NonNull APIException ex) {
+        return ResponseEntity.status(ex.getStatus())
+                   .contentType(MediaType.APPLICATION_JSON)
+                   .body(Map.of("error", ex.getLocalizedMessage()));
+    }
+}
@@ -7,27 +7,39 @@ package me.braydon.license.controller;
 
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.NonNull;
-import me.braydon.license.common.CryptographyUtils;
 import me.braydon.license.common.IPUtils;
-import me.braydon.license.dto.LicenseCheckBodyDTO;
-import me.braydon.license.dto.LicenseDTO;
+import me.braydon.license.common.MiscUtils;
+import me.braydon.license.common.TrustedProxies;
+import me.braydon.license.dto.*;
 import me.braydon.license.exception.APIException;
+import me.braydon.license.exception.RateLimitExceededException;
 import me.braydon.license.model.License;
+import me.braydon.license.service.AuditService;
 import me.braydon.license.service.CryptographyService;
 import me.braydon.license.service.LicenseService;
+import me.braydon.license.service.LicenseTokenService;
+import me.braydon.license.service.MetricsService;
+import me.braydon.license.service.RateLimitService;
+import me.braydon.license.service.StartupService;
+import me.braydon.license.service.MetricsService.Stage;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * @author Braydon
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping(value = "/", produces = MediaType.APPLICATION_JSON_VALUE)
 public final class LicenseController {
     /**
@@ -40,10 +52,56 @@ public final class LicenseController {
      */
     @NonNull private final LicenseService licenseService;
     
+    /**
+     * The {@link MetricsService} to use.
+     */
+    @NonNull private final MetricsService metricsService;
+    
+    /**
+     * The {@link LicenseTokenService} to issue offline tokens with.
+     */
+    @NonNull private final LicenseTokenService tokenService;
+    
+    /**
+     * The {@link RateLimitService} to limit checks from an IP with.
+     */
+    @NonNull private final RateLimitService rateLimitService;
+    
+    /**
+     * The {@link AuditService} to record the outcome of checks with.
+     */
+    @NonNull private final AuditService auditService;
+    
+    /**
+     * The {@link StartupService} to wait on before checking licenses.
+     */
+    @NonNull private final StartupService startupService;
+    
+    /**
+     * The proxies trusted to forward the IP of the requester.
+     */
+    @NonNull private final TrustedProxies trustedProxies;
+    
+    /**
+     * The maximum amount of licenses in a batch check.
+     */
+    @Value("${licenses.batch-limit}")
+    private int batchLimit;
+    
     @Autowired
-    public LicenseController(@NonNull CryptographyService cryptographyService, @NonNull LicenseService licenseService) {
+    public LicenseController(@NonNull CryptographyService cryptographyService, @NonNull LicenseService licenseService,
+                             @NonNull MetricsService metricsService, @NonNull LicenseTokenService tokenService,
+                             @NonNull RateLimitService rateLimitService, @NonNull AuditService auditService,
+                             @NonNull StartupService startupService,
+                             @Value("${server.trusted-proxies}") @NonNull String trustedProxies) {
         this.cryptographyService = cryptographyService;
         this.licenseService = licenseService;
+        this.metricsService = metricsService;
+        this.tokenService = tokenService;
+        this.rateLimitService = rateLimitService;
+        this.auditService = auditService;
+        this.startupService = startupService;
+        this.trustedProxies = TrustedProxies.parse(trustedProxies);
     }
     
     /**
@@ -58,36 +116,32 @@ public final class LicenseController {
     @PostMapping("/check")
     @ResponseBody
     public ResponseEntity<?> check(@NonNull HttpServletRequest request, @RequestBody @NonNull LicenseCheckBodyDTO body) {
+        long started = System.nanoTime();
+        String ip = IPUtils.getRealIp(request, trustedProxies); // The IP of the requester
+        LicenseCheckPayloadDTO payload = null; // The decrypted payload, null if not decrypted yet
         try { // Attempt to check the license
-            if (!body.isValid()) {
-                throw new APIException(HttpStatus.BAD_REQUEST, "Invalid request body");
-            }
-            // Ensure the IP is valid
-            String ip = IPUtils.getRealIp(request); // The IP of the requester
-            if (IPUtils.getIpType(ip) == -1) {
-                throw new APIException(HttpStatus.BAD_REQUEST, "Invalid IP address");
-            }
-            String key;
-            String hwid;
-            try {
-                PrivateKey privateKey = cryptographyService.getKeyPair().getPrivate(); // Get our private key
-                key = CryptographyUtils.decryptMessage(body.getKey(), privateKey); // Decrypt our license key
-                hwid = CryptographyUtils.decryptMessage(body.getHwid(), privateKey); // Decrypt our hwid
-            } catch (IllegalArgumentException ex) {
-                throw new APIException(HttpStatus.BAD_REQUEST, "Signature Error");
-            }
+            rateLimitService.checkIp(ip); // Reject floods before any crypto runs
+            startupService.ensureReady(); // Reject checks until the licenses are migrated
+            
+            // Ensure the body and IP are valid
+            metricsService.time(Stage.BODY_VALIDATION, () -> {
+                if (!body.isValid()) {
+                    throw new APIException(HttpStatus.BAD_REQUEST, "Invalid request body");
+                }
+                if (IPUtils.getIpType(ip) == -1) {
+                    throw new APIException(HttpStatus.BAD_REQUEST, "Invalid IP address");
+                }
+            });
+            payload = metricsService.time(Stage.DECRYPT, () -> cryptographyService.decrypt(body));
+            String key = payload.getKey();
+            String hwid = payload.getHwid();
             
             // Validating that the UUID is in the correct format
-            boolean invalidHwid = true;
-            if (hwid.contains("-")) {
-                int segments = hwid.substring(0, hwid.lastIndexOf("-")).split("-").length;
-                if (segments == 4) {
-                    invalidHwid = false;
+            metricsService.time(Stage.HWID_VALIDATION, () -> {
+                if (!MiscUtils.isValidHwid(hwid)) { // Invalid HWID
+                    throw new APIException(HttpStatus.BAD_REQUEST, "Invalid HWID");
                 }
-            }
-            if (invalidHwid) { // Invalid HWID
-                throw new APIException(HttpStatus.BAD_REQUEST, "Invalid HWID");
-            }
+            });
             
             // Check the license
             License license = licenseService.check(
@@ -96,18 +150,140 @@ public final class LicenseController {
                 ip,
                 hwid
             );
+            metricsService.countSuccess(body.getProduct());
+            
             // Return OK with the license DTO
-            return ResponseEntity.ok(new LicenseDTO(
-                license.getDescription(),
-                license.getOwnerSnowflake(),
-                license.getOwnerName(),
-                license.getPlan(),
-                license.getLatestVersion(),
-                license.getExpires()
-            ));
+            ResponseEntity<?> response = ResponseEntity.ok(toDTO(license, key, hwid, body.isEnvelope()));
+            auditService.recordSuccess(key, body.getProduct(), ip, hwid, started);
+            return response;
         } catch (APIException ex) { // Handle the exception
-            return ResponseEntity.status(ex.getStatus())
-                       .body(Map.of("error", ex.getLocalizedMessage()));
+            metricsService.countFailure(ex, String.valueOf(body.getProduct()));
+            auditService.recordFailure(ex, payload == null ? null : payload.getKey(), body.getProduct(), ip,
+                payload == null ? null : payload.getHwid(), started
+            );
+            return error(ex);
         }
     }
+    
+    /**
+     * This route handles checking multiple
+     * licenses used on the same machine at once.
+     * <p>
+     * Each license is checked the same way as the
+     * check route, and has its own status in the result.
+     * </p>
+     *
+     * @param body the body of the request
+     * @return the response entity
+     * @see License for license
+     * @see LicenseBatchCheckBodyDTO for body
+     * @see ResponseEntity for response entity
+     */
+    @PostMapping("/check/batch")
+    @ResponseBody
+    public ResponseEntity<?> checkBatch(@NonNull HttpServletRequest request, @RequestBody @NonNull LicenseBatchCheckBodyDTO body) {
+        long started = System.nanoTime();
+        String ip = IPUtils.getRealIp(request, trustedProxies); // The IP of the requester
+        try { // Attempt to check the licenses
+            // Reject floods before any crypto runs, charging each version 1 license as a check
+            rateLimitService.checkIp(ip, !body.isEnvelope() && body.getLicenses() != null ? body.getLicenses().size() : 1);
+            startupService.ensureReady(); // Reject checks until the licenses are migrated
+            
+            // Ensure the body and IP are valid
+            metricsService.time(Stage.BODY_VALIDATION, () -> {
+                if (!body.isValid()) {
+                    throw new APIException(HttpStatus.BAD_REQUEST, "Invalid request body");
+                }
+                if (!body.isEnvelope() && body.getLicenses().size() > batchLimit) {
+                    throw new APIException(HttpStatus.BAD_REQUEST, "Too many licenses, the limit is " + batchLimit);
+                }
+                if (IPUtils.getIpType(ip) == -1) {
+                    throw new APIException(HttpStatus.BAD_REQUEST, "Invalid IP address");
+                }
+            });
+            LicenseBatchCheckPayloadDTO payload = metricsService.time(Stage.DECRYPT, () -> cryptographyService.decrypt(body));
+            if (payload.getLicenses().size() > batchLimit) {
+                throw new APIException(HttpStatus.BAD_REQUEST, "Too many licenses, the limit is " + batchLimit);
+            }
+            if (body.isEnvelope()) { // Charge the rest of the licenses, now that they're known
+                rateLimitService.checkIp(ip, payload.getLicenses().size() - 1);
+            }
+            String hwid = payload.getHwid();
+            
+            // Validating that the UUID is in the correct format
+            metricsService.time(Stage.HWID_VALIDATION, () -> {
+                if (!MiscUtils.isValidHwid(hwid)) { // Invalid HWID
+                    throw new APIException(HttpStatus.BAD_REQUEST, "Invalid HWID");
+                }
+            });
+            
+            // Check the licenses
+            List<LicenseBatchResultDTO> results = new ArrayList<>();
+            List<LicenseService.BatchResult> checked = licenseService.checkBatch(payload.getLicenses(), ip, hwid);
+            for (int i = 0; i < checked.size(); i++) {
+                LicenseService.BatchResult result = checked.get(i);
+                APIException error = result.error();
+                if (error != null) {
+                    metricsService.countFailure(error, result.product());
+                    results.add(new LicenseBatchResultDTO(result.product(), error.getStatus().value(), null, error.getLocalizedMessage()));
+                    continue;
+                }
+                metricsService.countSuccess(result.product());
+                results.add(new LicenseBatchResultDTO(result.product(), HttpStatus.OK.value(), toDTO(result.license(),
+                    payload.getLicenses().get(i).getKey(), hwid, body.isEnvelope()
+                ), null));
+            }
+            for (int i = 0; i < checked.size(); i++) { // Audit each check, now that all are done
+                LicenseService.BatchResult result = checked.get(i);
+                String key = payload.getLicenses().get(i).getKey();
+                if (result.error() == null) {
+                    auditService.recordSuccess(key, result.product(), ip, hwid, started);
+                } else {
+                    auditService.recordFailure(result.error(), key, result.product(), ip, hwid, started);
+                }
+            }
+            // Return OK with the result of each license
+            return ResponseEntity.ok(Map.of("results", results));
+        } catch (APIException ex) { // Handle the exception
+            auditService.recordFailure(ex, null, null, ip, null, started);
+            return error(ex);
+        }
+    }
+    
+    /**
+     * Build the error response for the given exception.
+     *
+     * @param ex the exception
+     * @return the response entity
+     */
+    @NonNull
+    static ResponseEntity<?> error(@NonNull APIException ex) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(ex.getStatus());
+        if (ex instanceof RateLimitExceededException rateLimitEx) { // Tell the client when to try again
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(rateLimitEx.getRetryAfter()));
+        }
+        return response.body(Map.of("error", ex.getLocalizedMessage()));
+    }
+    
+    /**
+     * Create the DTO returned for the given license.
+     *
+     * @param license the checked license
+     * @param key     the raw key of the license
+     * @param hwid    the hwid the license was checked from
+     * @param token   whether to issue a token, only version 2 clients get one
+     * @return the license DTO
+     */
+    @NonNull
+    private LicenseDTO toDTO(@NonNull License license, @NonNull String key, @NonNull String hwid, boolean token) {
+        return new LicenseDTO(
+            license.getDescription(),
+            license.getOwnerSnowflake(),
+            license.getOwnerName(),
+            license.getPlan(),
+            license.getLatestVersion(),
+            license.getExpires(),
+            token ? metricsService.time(Stage.TOKEN_SIGN, () -> tokenService.issue(license, key, hwid)) : null
+        );
+    }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.controller;
+
+import lombok.NonNull;
+import me.braydon.license.common.IPUtils;
+import me.braydon.license.common.MiscUtils;
+import me.braydon.license.common.TrustedProxies;
+import me.braydon.license.dto.LicenseCheckBodyDTO;
+import me.braydon.license.dto.LicenseCheckPayloadDTO;
+import me.braydon.license.dto.LicenseDTO;
+import me.braydon.license.exception.APIException;
+import me.braydon.license.model.License;
+import me.braydon.license.service.*;
+import me.braydon.license.service.MetricsService.Stage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * The check route of the reactive profile.
+ * <p>
+ * This behaves exactly like {@link LicenseController#check},
+ * but runs on the event loop. RSA, BCrypt and token signing
+ * run on the {@link ComputeService} pool, so no thread is held
+ * while a check waits on Mongo. Batch checks and the admin
+ * routes are only available on the servlet stack.
+ * </p>
+ *
+ * @author Braydon
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping(value = "/", produces = MediaType.APPLICATION_JSON_VALUE)
+public final class ReactiveLicenseController {
+    /**
+     * The {@link CryptographyService} to use.
+     */
+    @NonNull private final CryptographyService cryptographyService;
+    
+    /**
+     * The {@link ReactiveLicenseService} to use.
+     */
+    @NonNull private final ReactiveLicenseService licenseService;
+    
+    /**
+     * The {@link ComputeService} to decrypt and sign on.
+     */
+    @NonNull private final ComputeService computeService;
+    
+    /**
+     * The {@link MetricsService} to use.
+     */
+    @NonNull private final MetricsService metricsService;
+    
+    /**
+     * The {@link LicenseTokenService} to issue offline tokens with.
+     */
+    @NonNull private final LicenseTokenService tokenService;
+    
+    /**
+     * The {@link RateLimitService} to limit checks from an IP with.
+     */
+    @NonNull private final RateLimitService rateLimitService;
+    
+    /**
+     * The {@link AuditService} to record the outcome of checks with.
+     */
+    @NonNull private final AuditService auditService;
+    
+    /**
+     * The {@link StartupService} to wait on before checking licenses.
+     */
+    @NonNull private final StartupService startupService;
+    
+    /**
+     * The proxies trusted to forward the IP of the requester.
+     */
+    @NonNull private final TrustedProxies trustedProxies;
+    
+    @Autowired
+    public ReactiveLicenseController(@NonNull CryptographyService cryptographyService, @NonNull ReactiveLicenseService licenseService,
+                                     @NonNull ComputeService computeService, @NonNull MetricsService metricsService,
+                                     @NonNull LicenseTokenService tokenService, @NonNull RateLimitService rateLimitService,
+                                     @NonNull AuditService auditService,
+                                     @NonNull StartupService startupService,
+                                     @Value("${server.trusted-proxies}") @NonNull String trustedProxies) {
+        this.cryptographyService = cryptographyService;
+        this.licenseService = licenseService;
+        this.computeService = computeService;
+        this.metricsService = metricsService;
+        this.tokenService = tokenService;
+        this.rateLimitService = rateLimitService;
+        this.auditService = auditService;
+        this.startupService = startupService;
+        this.trustedProxies = TrustedProxies.parse(trustedProxies);
+    }
+    
+    /**
+     * This route handle checking of licenses.
+     *
+     * @param body the body of the request
+     * @return the response entity
+     * @see License for license
+     * @see LicenseCheckBodyDTO for body
+     * @see ResponseEntity for response entity
+     */
+    @PostMapping("/check")
+    @ResponseBody
+    public Mono<ResponseEntity<?>> check(@NonNull ServerHttpRequest request, @RequestBody @NonNull LicenseCheckBodyDTO body) {
+        long started = System.nanoTime();
+        String ip = IPUtils.getRealIp(request, trustedProxies); // The IP of the requester
+        AtomicReference<LicenseCheckPayloadDTO> decrypted = new AtomicReference<>(); // The decrypted payload, once decrypted
+        return Mono.defer(() -> {
+            rateLimitService.checkIp(ip); // Reject floods before any crypto runs
+            startupService.ensureReady(); // Reject checks until the licenses are migrated
+            
+            // Ensure the body and IP are valid
+            metricsService.time(Stage.BODY_VALIDATION, () -> {
+                if (!body.isValid()) {
+                    throw new APIException(HttpStatus.BAD_REQUEST, "Invalid request body");
+                }
+                if (IPUtils.getIpType(ip) == -1) {
+                    throw new APIException(HttpStatus.BAD_REQUEST, "Invalid IP address");
+                }
+            });
+            return compute(() -> metricsService.time(Stage.DECRYPT, () -> cryptographyService.decrypt(body))).flatMap(payload -> {
+                decrypted.set(payload);
+                String key = payload.getKey();
+                String hwid = payload.getHwid();
+                
+                // Validating that the UUID is in the correct format
+                metricsService.time(Stage.HWID_VALIDATION, () -> {
+                    if (!MiscUtils.isValidHwid(hwid)) { // Invalid HWID
+                        throw new APIException(HttpStatus.BAD_REQUEST, "Invalid HWID");
+                    }
+                });
+                
+                // Check the license
+                return licenseService.check(key, body.getProduct(), ip, hwid)
+                           .flatMap(license -> compute(() -> toDTO(license, key, hwid, body.isEnvelope())));
+            });
+        }).<ResponseEntity<?>>map(license -> {
+            metricsService.countSuccess(body.getProduct());
+            LicenseCheckPayloadDTO payload = decrypted.get();
+            auditService.recordSuccess(payload.getKey(), body.getProduct(), ip, payload.getHwid(), started);
+            return ResponseEntity.ok(license); // Return OK with the license DTO
+        }).onErrorResume(APIException.class, ex -> { // Handle the exception
+            metricsService.countFailure(ex, String.valueOf(body.getProduct()));
+            LicenseCheckPayloadDTO payload = decrypted.get();
+            auditService.recordFailure(ex, payload == null ? null : payload.getKey(), body.getProduct(), ip,
+                payload == null ? null : payload.getHwid(), started
+            );
+            return Mono.just(LicenseController.error(ex));
+        });
+    }
+    
+    /**
+     * Create the DTO returned for the given license.
+     *
+     * @param license the checked license
+     * @param key     the raw key of the license
+     * @param hwid    the hwid the license was checked from
+     * @param token   whether to issue a token, only version 2 clients get one
+     * @return the license DTO
+     */
+    @NonNull
+    private LicenseDTO toDTO(@NonNull License license, @NonNull String key, @NonNull String hwid, boolean token) {
+        return new LicenseDTO(
+            license.getDescription(),
+            license.getOwnerSnowflake(),
+            license.getOwnerName(),
+            license.getPlan(),
+            license.getLatestVersion(),
+            license.getExpires(),
+            token ? metricsService.time(Stage.TOKEN_SIGN, () -> tokenService.issue(license, key, hwid)) : null
+        );
+    }
+    
+    /**
+     * Run the given CPU bound work on the compute pool.
+     *
+     * @param work the work to run
+     * @return the result of the work
+     * @param <T> the result type
+     */
+    @NonNull
+    private <T> Mono<T> compute(@NonNull Supplier<T> work) {
+        return Mono.fromFuture(() -> computeService.submit(work));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import me.braydon.license.model.AuditRollup;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * The checks of a product on a single day.
+ *
+ * @author Braydon
+ * @see AuditRollup for the stored rollup
+ */
+@AllArgsConstructor @Getter @ToString
+public class AuditDayDTO {
+    /**
+     * The product that was checked.
+     */
+    @NonNull private final String product;
+    
+    /**
+     * The UTC day of the checks.
+     */
+    @NonNull private final LocalDate day;
+    
+    /**
+     * The amount of checks.
+     */
+    private final long checks;
+    
+    /**
+     * The amount of checks that used a license.
+     */
+    private final long uses;
+    
+    /**
+     * The average amount of microseconds a check took.
+     */
+    private final long averageLatency;
+    
+    /**
+     * The amount of checks, keyed by the HTTP status they were answered with.
+     */
+    @NonNull private final Map<String, Long> statuses;
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+/**
+ * The decrypted payload of a
+ * session encrypted envelope.
+ *
+ * @author Braydon
+ */
+public interface EnvelopePayload {
+    /**
+     * Get the unique nonce of the request.
+     *
+     * @return the nonce
+     */
+    String getNonce();
+    
+    /**
+     * Get the unix time the request was sent at.
+     * <p>
+     * This is authenticated with the rest of the payload,
+     * so it can't be changed to replay an old request.
+     * </p>
+     *
+     * @return the timestamp, in milliseconds
+     */
+    Long getTimestamp();
+    
+    /**
+     * Are these params valid?
+     *
+     * @return whether the params are valid
+     */
+    boolean isValid();
+}
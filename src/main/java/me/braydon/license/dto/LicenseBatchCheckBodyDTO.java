@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import me.braydon.license.model.License;
+
+import java.util.List;
+
+/**
+ * A data transfer object that contains the body
+ * for checking multiple {@link License}'s at once.
+ * <p>
+ * All licenses in a batch are checked
+ * from the same machine, so share a hwid.
+ * </p>
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor @Getter @ToString
+public class LicenseBatchCheckBodyDTO {
+    /**
+     * The additional authenticated data of version 2
+     * envelopes, as a batch isn't for a single product.
+     */
+    public static final String ENVELOPE_AAD = "batch";
+    
+    /**
+     * The version of the check protocol.
+     *
+     * @see LicenseCheckBodyDTO#getVersion() for versions
+     */
+    private int version;
+    
+    /**
+     * The RSA encrypted hardware id of the
+     * user checking the licenses, used by version 1.
+     */
+    private String hwid;
+    
+    /**
+     * The licenses to check, used by version 1.
+     */
+    private List<LicenseBatchEntryDTO> licenses;
+    
+    /**
+     * The RSA encrypted AES session key, used by version 2.
+     */
+    private String sessionKey;
+    
+    /**
+     * The session encrypted payload, used by version 2.
+     *
+     * @see LicenseBatchCheckPayloadDTO for payload
+     */
+    private String payload;
+    
+    /**
+     * Is this body using the session encrypted envelope?
+     *
+     * @return whether the envelope is used
+     */
+    public boolean isEnvelope() {
+        return version >= 2;
+    }
+    
+    /**
+     * Are these params valid?
+     *
+     * @return whether the params are valid
+     */
+    public boolean isValid() {
+        if (isEnvelope()) {
+            return sessionKey != null && payload != null;
+        }
+        return hwid != null && licenses != null && !licenses.isEmpty()
+                   && licenses.stream().allMatch(entry -> entry != null && entry.isValid());
+    }
+}
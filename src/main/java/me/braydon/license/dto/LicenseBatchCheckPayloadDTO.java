@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import me.braydon.license.model.License;
+
+import java.util.List;
+
+/**
+ * A data transfer object that contains the encrypted
+ * payload for checking multiple {@link License}'s at once.
+ * <p>
+ * This is sent inside of the session encrypted payload
+ * of a version 2 {@link LicenseBatchCheckBodyDTO}.
+ * </p>
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor @Getter @ToString
+public class LicenseBatchCheckPayloadDTO implements EnvelopePayload {
+    /**
+     * The hardware id of the user checking the licenses.
+     */
+    private String hwid;
+    
+    /**
+     * The unique nonce of this request.
+     */
+    private String nonce;
+    
+    /**
+     * The unix time this request was sent at, in milliseconds.
+     */
+    private Long timestamp;
+    
+    /**
+     * The licenses to check.
+     */
+    private List<LicenseBatchEntryDTO> licenses;
+    
+    @Override
+    public boolean isValid() {
+        return hwid != null && nonce != null && timestamp != null && licenses != null && !licenses.isEmpty()
+                   && licenses.stream().allMatch(entry -> entry != null && entry.isValid());
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import me.braydon.license.model.License;
+
+/**
+ * A data transfer object for a single
+ * {@link License} in a batch check.
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor @Getter @ToString
+public class LicenseBatchEntryDTO {
+    /**
+     * The license key to check.
+     * <p>
+     * This is RSA encrypted in a version 1 body,
+     * and plain inside of a version 2 payload.
+     * </p>
+     */
+    private String key;
+    
+    /**
+     * The product of the license to check.
+     */
+    private String product;
+    
+    /**
+     * Are these params valid?
+     *
+     * @return whether the params are valid
+     */
+    public boolean isValid() {
+        return key != null && product != null;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import me.braydon.license.model.License;
+
+/**
+ * A data transfer object for the result of
+ * checking a single {@link License} in a batch.
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor @Getter @ToString
+public class LicenseBatchResultDTO {
+    /**
+     * The product of the license that was checked.
+     */
+    @NonNull private String product;
+    
+    /**
+     * The status the check would have had on its own.
+     */
+    private int status;
+    
+    /**
+     * The checked license, null if the check failed.
+     */
+    private LicenseDTO license;
+    
+    /**
+     * The error of the check, null if the check succeeded.
+     */
+    private String error;
+}
@@ -18,6 +18,17 @@ import me.braydon.license.model.License;
  */
 @AllArgsConstructor @Getter @ToString
 public class LicenseCheckBodyDTO {
+    /**
+     * The version of the check protocol.
+     * <p>
+     * Version 1 sends the key and hwid as two separate
+     * RSA ciphertexts. Version 2 sends a single RSA encrypted
+     * session key along with an AES-GCM payload containing
+     * the key, hwid and a nonce.
+     * </p>
+     */
+    private int version;
+    
     /**
      * The license key to check.
      */
@@ -33,12 +44,36 @@ public class LicenseCheckBodyDTO {
      */
     private String hwid;
     
+    /**
+     * The RSA encrypted AES session key, used by version 2.
+     */
+    private String sessionKey;
+    
+    /**
+     * The session encrypted payload, used by version 2.
+     *
+     * @see LicenseCheckPayloadDTO for payload
+     */
+    private String payload;
+    
+    /**
+     * Is this body using the session encrypted envelope?
+     *
+     * @return whether the envelope is used
+     */
+    public boolean isEnvelope() {
+        return version >= 2;
+    }
+    
     /**
      * Are these params valid?
      *
      * @return whether the params are valid
      */
     public boolean isValid() {
+        if (isEnvelope()) {
+            return product != null && sessionKey != null && payload != null;
+        }
         return key != null && product != null && hwid != null;
     }
 }
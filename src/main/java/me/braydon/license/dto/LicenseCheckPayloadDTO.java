@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import me.braydon.license.model.License;
+
+/**
+ * A data transfer object that contains the
+ * encrypted payload for checking a {@link License}.
+ * <p>
+ * This is sent inside of the session encrypted
+ * payload of a version 2 {@link LicenseCheckBodyDTO}.
+ * </p>
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor @Getter @ToString
+public class LicenseCheckPayloadDTO implements EnvelopePayload {
+    /**
+     * The license key to check.
+     */
+    private String key;
+    
+    /**
+     * The hardware id of the user checking the license.
+     */
+    private String hwid;
+    
+    /**
+     * The unique nonce of this request.
+     */
+    private String nonce;
+    
+    /**
+     * The unix time this request was sent at, in milliseconds.
+     */
+    private Long timestamp;
+    
+    @Override
+    public boolean isValid() {
+        return key != null && hwid != null && nonce != null && timestamp != null;
+    }
+}
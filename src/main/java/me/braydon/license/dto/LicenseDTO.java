@@ -55,4 +55,15 @@ public class LicenseDTO {
      * The optional expiration {@link Date} of this license.
      */
     private Date expires;
+    
+    /**
+     * The signed offline token for this license, null if disabled.
+     * <p>
+     * Clients can verify this with our public key, and
+     * trust it until it expires instead of checking again.
+     * </p>
+     *
+     * @see LicenseTokenDTO for claims
+     */
+    private String token;
 }
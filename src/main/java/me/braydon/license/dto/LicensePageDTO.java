@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import me.braydon.license.model.License;
+
+/**
+ * A data transfer object for the end
+ * of a page of queried {@link License}s.
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor @Getter @ToString
+public class LicensePageDTO {
+    /**
+     * The amount of licenses in the page.
+     */
+    private long count;
+    
+    /**
+     * The cursor of the next page, null if this is the last page.
+     */
+    private String next;
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import me.braydon.license.model.License;
+
+import java.time.Instant;
+
+/**
+ * A data transfer object for a query
+ * of {@link License}s by an admin.
+ * <p>
+ * Every filter is optional. Licenses are listed in the order
+ * of their id, a page at a time, and the next page is
+ * fetched by passing the cursor of the previous page.
+ * Dates are ISO-8601 instants, or unix times in millis.
+ * </p>
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor @Getter @ToString
+public class LicenseQueryDTO {
+    /**
+     * The product the licenses are for.
+     */
+    private String product;
+    
+    /**
+     * The Discord snowflake of the owner of the licenses.
+     */
+    private Long owner;
+    
+    /**
+     * The plan of the licenses.
+     */
+    private String plan;
+    
+    /**
+     * Only list licenses expiring at or after this.
+     */
+    private Instant expiresAfter;
+    
+    /**
+     * Only list licenses expiring before this.
+     */
+    private Instant expiresBefore;
+    
+    /**
+     * Only list licenses last used at or after this.
+     */
+    private Instant usedAfter;
+    
+    /**
+     * Only list licenses last used before this.
+     */
+    private Instant usedBefore;
+    
+    /**
+     * The cursor to list licenses after, null for the first page.
+     * <p>
+     * This is the id of the last license of the previous page.
+     * </p>
+     */
+    private String after;
+    
+    /**
+     * The maximum amount of licenses to list, null for the default.
+     */
+    private Integer limit;
+    
+    /**
+     * Are these params valid?
+     *
+     * @return whether the params are valid
+     */
+    public boolean isValid() {
+        return (limit == null || limit > 0)
+                   && (expiresAfter == null || expiresBefore == null || expiresAfter.isBefore(expiresBefore))
+                   && (usedAfter == null || usedBefore == null || usedAfter.isBefore(usedBefore));
+    }
+}
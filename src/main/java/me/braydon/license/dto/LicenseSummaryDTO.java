@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import me.braydon.license.model.License;
+
+import java.util.Date;
+
+/**
+ * A data transfer object for a {@link License}
+ * listed by an admin query.
+ * <p>
+ * The verifier and bindings are never listed.
+ * </p>
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor @Getter @ToString
+public class LicenseSummaryDTO {
+    /**
+     * The id (key index) of the license.
+     */
+    @NonNull private String id;
+    
+    /**
+     * The product the license is for.
+     */
+    @NonNull private String product;
+    
+    /**
+     * The optional description of the license.
+     */
+    private String description;
+    
+    /**
+     * The Discord snowflake of the owner of the license, -1 if none.
+     */
+    private long ownerSnowflake;
+    
+    /**
+     * The Discord name of the owner of the license.
+     */
+    private String ownerName;
+    
+    /**
+     * The plan for the license.
+     */
+    private String plan;
+    
+    /**
+     * The latest version of the product.
+     */
+    private String latestVersion;
+    
+    /**
+     * The amount of uses the license has.
+     */
+    private int uses;
+    
+    /**
+     * The amount of IPs used on the license.
+     */
+    private int ipCount;
+    
+    /**
+     * The amount of hardware IDs used on the license.
+     */
+    private int hwidCount;
+    
+    /**
+     * The IP limit of the license.
+     */
+    private int ipLimit;
+    
+    /**
+     * The HWID limit of the license.
+     */
+    private int hwidLimit;
+    
+    /**
+     * The optional expiration {@link Date} of the license.
+     */
+    private Date expires;
+    
+    /**
+     * The {@link Date} the license was last used.
+     */
+    private Date lastUsed;
+    
+    /**
+     * The {@link Date} the license was created.
+     */
+    private Date created;
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import me.braydon.license.model.License;
+
+/**
+ * A data transfer object for the claims of a
+ * signed offline token for a {@link License}.
+ * <p>
+ * Clients can verify the token with our public
+ * key, and trust it until it expires instead of
+ * checking the license again.
+ * </p>
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor @Getter @ToString
+public class LicenseTokenDTO {
+    /**
+     * The id of the license.
+     */
+    @NonNull private String license;
+    
+    /**
+     * The Base64 encoded SHA-256 hash of the
+     * license key, so clients can tell which key
+     * the token is for without it being exposed.
+     */
+    @NonNull private String keyHash;
+    
+    /**
+     * The product the license is for.
+     */
+    @NonNull private String product;
+    
+    /**
+     * The hardware id the token was issued to.
+     */
+    @NonNull private String hwid;
+    
+    /**
+     * The optional description of the license.
+     */
+    private String description;
+    
+    /**
+     * The Discord snowflake of the owner of the license.
+     */
+    private long ownerSnowflake;
+    
+    /**
+     * The Discord name of the owner of the license.
+     */
+    private String ownerName;
+    
+    /**
+     * The plan for the license.
+     */
+    @NonNull private String plan;
+    
+    /**
+     * The latest version of the product the license is for.
+     */
+    @NonNull private String latestVersion;
+    
+    /**
+     * The unix time in millis the license expires, null if permanent.
+     */
+    private Long expires;
+    
+    /**
+     * The unix time in millis the token was issued.
+     */
+    private long issued;
+    
+    /**
+     * The unix time in millis the token expires.
+     */
+    private long validUntil;
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import me.braydon.license.model.License;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * A data transfer object for a {@link License}
+ * in a bulk import or export.
+ * <p>
+ * Imported licenses either have a raw key, which is
+ * indexed on import, or the id of an already indexed
+ * license, as written by an export. Exports never
+ * contain raw keys, as they aren't stored.
+ * </p>
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor @Getter @ToString
+public class LicenseTransferDTO {
+    /**
+     * The raw key of the license, imports only.
+     */
+    private String key;
+    
+    /**
+     * The id (key index) of the license.
+     */
+    private String id;
+    
+    /**
+     * The optional BCrypt verifier of the license key.
+     */
+    private String verifier;
+    
+    /**
+     * The product the license is for.
+     */
+    private String product;
+    
+    /**
+     * The optional description of the license.
+     */
+    private String description;
+    
+    /**
+     * The Discord snowflake of the owner of the license.
+     */
+    private Long ownerSnowflake;
+    
+    /**
+     * The Discord name of the owner of the license.
+     */
+    private String ownerName;
+    
+    /**
+     * The plan for the license, "Basic" if not set.
+     */
+    private String plan;
+    
+    /**
+     * The latest version of the product, "1.0" if not set.
+     */
+    private String latestVersion;
+    
+    /**
+     * The amount of uses the license has.
+     */
+    private int uses;
+    
+    /**
+     * The hashed IPs that have used the license.
+     */
+    private Set<String> ips;
+    
+    /**
+     * The hardware ids that have used the license.
+     */
+    private Set<String> hwids;
+    
+    /**
+     * The IP limit of the license.
+     */
+    private Integer ipLimit;
+    
+    /**
+     * The HWID limit of the license.
+     */
+    private Integer hwidLimit;
+    
+    /**
+     * The optional expiration {@link Date} of the license.
+     */
+    private Date expires;
+    
+    /**
+     * The {@link Date} the license was last used.
+     */
+    private Date lastUsed;
+    
+    /**
+     * The {@link Date} the license was created.
+     */
+    private Date created;
+    
+    /**
+     * Are these params valid?
+     *
+     * @return whether the params are valid
+     */
+    @JsonIgnore
+    public boolean isValid() {
+        return (key == null) != (id == null) && product != null
+                   && ipLimit != null && ipLimit >= 0 && hwidLimit != null && hwidLimit >= 0;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.dto;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import me.braydon.license.model.License;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A data transfer object for the progress
+ * of a bulk {@link License} import.
+ *
+ * @author Braydon
+ */
+@Getter @ToString
+public class LicenseTransferProgressDTO {
+    /**
+     * The maximum amount of errors to report.
+     */
+    private static final int MAX_ERRORS = 100;
+    
+    /**
+     * The amount of lines processed.
+     */
+    private long processed;
+    
+    /**
+     * The amount of licenses imported.
+     */
+    private long imported;
+    
+    /**
+     * The amount of licenses skipped as they already exist.
+     */
+    private long duplicates;
+    
+    /**
+     * The amount of invalid lines.
+     */
+    private long invalid;
+    
+    /**
+     * The errors of the first invalid lines.
+     */
+    @NonNull private final List<String> errors = new ArrayList<>();
+    
+    /**
+     * Has the import finished?
+     */
+    private boolean done;
+    
+    /**
+     * Record an invalid line.
+     *
+     * @param line  the line number
+     * @param error the error of the line
+     */
+    public void invalid(long line, @NonNull String error) {
+        invalid++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("Line " + line + ": " + error);
+        }
+    }
+    
+    /**
+     * Record a processed chunk.
+     *
+     * @param lines      the amount of lines in the chunk
+     * @param imported   the amount of licenses imported
+     * @param duplicates the amount of duplicate licenses
+     */
+    public void chunk(int lines, int imported, int duplicates) {
+        processed += lines;
+        this.imported += imported;
+        this.duplicates += duplicates;
+    }
+    
+    /**
+     * Mark the import as finished.
+     */
+    public void done() {
+        done = true;
+    }
+}
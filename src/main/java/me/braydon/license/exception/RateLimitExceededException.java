@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * This exception is raised when an IP or
+ * license key is checked too often.
+ *
+ * @author Braydon
+ */
+@Getter
+public class RateLimitExceededException extends APIException {
+    /**
+     * The amount of seconds until the next request is allowed.
+     */
+    private final long retryAfter;
+    
+    public RateLimitExceededException(long retryAfter) {
+        super(HttpStatus.TOO_MANY_REQUESTS, "Too many requests, please try again later");
+        this.retryAfter = retryAfter;
+    }
+}
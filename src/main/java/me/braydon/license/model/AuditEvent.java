@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Represents the outcome of a single
+ * check of a {@link License}.
+ * <p>
+ * Events are only ever appended, to a time series collection,
+ * which Mongo stores in buckets per product and time range.
+ * Events expire after the audit retention.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Document(AuditEvent.COLLECTION)
+@AllArgsConstructor
+@Getter
+@ToString
+public class AuditEvent {
+    public static final String COLLECTION = "audit";
+    public static final String TIME_FIELD = "timestamp";
+    public static final String META_FIELD = "product";
+    
+    /**
+     * The {@link Date} of the check.
+     */
+    @NonNull private final Date timestamp;
+    
+    /**
+     * The product of the license, null if it wasn't found.
+     */
+    private final String product;
+    
+    /**
+     * The index of the key that was checked, null if unknown.
+     */
+    private final String key;
+    
+    /**
+     * The hashed IP the check came from.
+     */
+    @NonNull private final String ip;
+    
+    /**
+     * The hardware id the check came from, null if unknown.
+     */
+    private final String hwid;
+    
+    /**
+     * The HTTP status the check was answered with.
+     */
+    private final int status;
+    
+    /**
+     * The amount of microseconds the check took.
+     */
+    private final long latency;
+}
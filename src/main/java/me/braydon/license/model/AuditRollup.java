@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Represents the checks of a product on a
+ * single day, rolled up from {@link AuditEvent}s.
+ * <p>
+ * Rollups are incremented as events are written, so
+ * reporting on a range of days reads a document per
+ * day, rather than aggregating every event.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Document(AuditRollup.COLLECTION)
+@CompoundIndex(name = "product_day", def = "{ 'product': 1, 'day': 1 }")
+@AllArgsConstructor
+@Getter
+@ToString
+public class AuditRollup {
+    public static final String COLLECTION = "audit_daily";
+    
+    /**
+     * The id of this rollup, the product and day.
+     */
+    @Id @NonNull private final String id;
+    
+    /**
+     * The product that was checked.
+     */
+    @NonNull private final String product;
+    
+    /**
+     * The UTC day of the checks.
+     */
+    @NonNull private final Date day;
+    
+    /**
+     * The amount of checks.
+     */
+    private long checks;
+    
+    /**
+     * The total amount of microseconds the checks took.
+     */
+    private long latency;
+    
+    /**
+     * The amount of checks, keyed by the HTTP status they were answered with.
+     */
+    @NonNull private final Map<String, Long> statuses;
+    
+    /**
+     * Create an empty rollup for the given product and day.
+     *
+     * @param product the product
+     * @param day     the UTC day
+     * @return the rollup
+     */
+    @NonNull
+    public static AuditRollup of(@NonNull String product, @NonNull LocalDate day) {
+        return new AuditRollup(product + "/" + day, product, Date.from(day.atStartOfDay(ZoneOffset.UTC).toInstant()),
+            0L, 0L, new HashMap<>()
+        );
+    }
+    
+    /**
+     * Add a check to this rollup.
+     *
+     * @param status  the HTTP status of the check
+     * @param latency the amount of microseconds the check took
+     */
+    public void add(int status, long latency) {
+        checks++;
+        this.latency += latency;
+        statuses.merge(String.valueOf(status), 1L, Long::sum);
+    }
+}
@@ -13,11 +13,12 @@ import me.braydon.license.exception.APIException;
 import me.braydon.license.exception.LicenseHwidLimitExceededException;
 import me.braydon.license.exception.LicenseIpLimitExceededException;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.util.Date;
-import java.util.Set;
 
 /**
  * Represents a license key.
@@ -25,15 +26,36 @@ import java.util.Set;
  * @author Braydon
  */
 @Document("keys")
+@CompoundIndexes({
+    @CompoundIndex(name = "product_expires", def = "{ 'product': 1, 'expires': 1 }"),
+    @CompoundIndex(name = "product_key", def = "{ 'product': 1, '_id': 1 }"), // Keyset pages of a product
+    @CompoundIndex(name = "owner_product", def = "{ 'owner.snowflake': 1, 'product': 1 }"),
+    @CompoundIndex(name = "expires", def = "{ 'expires': 1 }")
+})
 @Setter
 @Getter
 @ToString
 public class License {
     /**
      * The key of this license.
+     * <p>
+     * This is the HMAC-SHA256 index of the raw key,
+     * or the BCrypt hash of the raw key for licenses
+     * that haven't been migrated yet.
+     * </p>
      */
     @Id @NonNull private String key;
     
+    /**
+     * The optional slow hash of the raw key, with
+     * a salt unique to this license.
+     * <p>
+     * If this is null, the license
+     * has no verifier to check.
+     * </p>
+     */
+    private String verifier;
+    
     /**
      * The product this license is for.
      */
@@ -78,14 +100,20 @@ public class License {
     private int uses;
     
     /**
-     * The IPs used on this license.
+     * The amount of IPs used on this license.
+     * <p>
+     * The IPs themselves are stored as {@link LicenseBinding}s.
+     * </p>
      */
-    private Set<String> ips;
+    private int ipCount;
     
     /**
-     * The hardware IDs that were used on this license.
+     * The amount of hardware IDs that were used on this license.
+     * <p>
+     * The HWIDs themselves are stored as {@link LicenseBinding}s.
+     * </p>
      */
-    private Set<String> hwids;
+    private int hwidCount;
     
     /**
      * The limit of IPs that can be used on this license.
@@ -153,24 +181,42 @@ public class License {
     }
     
     /**
-     * Invoked when this license is used.
+     * Ensure a use with the given IP and
+     * hardware id fits within the limits.
      *
-     * @param hashedIp the hashed ip used
-     * @param hwid     the hardware id used
+     * @param newIp   whether the IP is new to this license
+     * @param newHwid whether the HWID is new to this license
+     * @throws LicenseIpLimitExceededException if the IP limit has been exceeded
+     * @throws LicenseHwidLimitExceededException if the HWID limit has been exceeded
      */
-    public void use(@NonNull String hashedIp, @NonNull String hwid) throws APIException {
+    public void checkLimits(boolean newIp, boolean newHwid) throws APIException {
         // IP limit has been exceeded
-        if (!ips.contains(hashedIp) && ips.size() >= ipLimit) {
+        if (newIp && ipCount >= ipLimit) {
             throw new LicenseIpLimitExceededException();
         }
         // HWID limit has been exceeded
-        if (!hwids.contains(hwid) && hwids.size() >= hwidLimit) {
+        if (newHwid && hwidCount >= hwidLimit) {
             throw new LicenseHwidLimitExceededException();
         }
+    }
+    
+    /**
+     * Invoked when this license is used.
+     *
+     * @param newIp   whether the IP is new to this license
+     * @param newHwid whether the HWID is new to this license
+     */
+    public void use(boolean newIp, boolean newHwid) throws APIException {
+        checkLimits(newIp, newHwid); // Ensure the limits allow this use
+        
         // The license was used
         uses++; // Increment uses
-        ips.add(hashedIp); // Add the used IP
-        hwids.add(hwid); // Add the used HWID
+        if (newIp) { // Count the new IP
+            ipCount++;
+        }
+        if (newHwid) { // Count the new HWID
+            hwidCount++;
+        }
         lastUsed = new Date(); // Last used now
     }
-}
\ No newline at end of file
+}
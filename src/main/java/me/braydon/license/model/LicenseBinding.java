@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Represents an IP or hardware id
+ * that has been used on a {@link License}.
+ * <p>
+ * Bindings are stored in their own collection, so a license
+ * with a large limit doesn't have to be loaded and rewritten
+ * in full on every check. The unique index makes checking a
+ * single binding a single index lookup.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Document(LicenseBinding.COLLECTION)
+@CompoundIndex(name = "license_type_value", def = "{ 'license': 1, 'type': 1, 'value': 1 }", unique = true)
+@AllArgsConstructor
+@Getter
+@ToString
+public class LicenseBinding {
+    public static final String COLLECTION = "license_bindings";
+    
+    /**
+     * The id of this binding.
+     */
+    @Id private String id;
+    
+    /**
+     * The key of the license this binding is for.
+     */
+    @NonNull private final String license;
+    
+    /**
+     * The type of this binding.
+     */
+    @NonNull private final Type type;
+    
+    /**
+     * The hashed IP or hardware id of this binding.
+     */
+    @NonNull private final String value;
+    
+    /**
+     * The {@link Date} this binding was created.
+     */
+    @NonNull private final Date created;
+    
+    public LicenseBinding(@NonNull String license, @NonNull Type type, @NonNull String value) {
+        this(null, license, type, value, new Date());
+    }
+    
+    /**
+     * The type of a binding.
+     */
+    public enum Type {
+        /**
+         * The binding is a hashed IP.
+         */
+        IP,
+        
+        /**
+         * The binding is a hardware id.
+         */
+        HWID
+    }
+}
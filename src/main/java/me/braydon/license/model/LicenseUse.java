@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.model;
+
+import lombok.NonNull;
+
+import java.util.Date;
+
+/**
+ * The uses of a {@link License} that have
+ * been recorded, but not yet written.
+ *
+ * @param key      the key of the license
+ * @param uses     the amount of uses to add
+ * @param lastUsed the {@link Date} the license was last used
+ * @author Braydon
+ */
+public record LicenseUse(@NonNull String key, long uses, @NonNull Date lastUsed) { }
@@ -0,0 +1,929 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import me.braydon.license.dto.LicenseQueryDTO;
+import me.braydon.license.exception.APIException;
+import me.braydon.license.exception.LicenseHwidLimitExceededException;
+import me.braydon.license.exception.LicenseIpLimitExceededException;
+import me.braydon.license.exception.LicenseNotFoundException;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseBinding;
+import me.braydon.license.model.LicenseUse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * The {@link LicenseStore} that keeps licenses
+ * on the local disk, for the embedded profile.
+ * <p>
+ * Every license and binding is held in memory, in a hash
+ * index by key, and every change is appended to a log on
+ * disk before it's applied. On startup the log is replayed
+ * to rebuild the index. The log is synced periodically, so
+ * a crash of the server loses nothing, but a crash of the
+ * machine can lose up to the sync interval of changes.
+ * </p>
+ * <p>
+ * Uses and bindings only lock their own license, while
+ * creating, removing and moving licenses lock the whole
+ * store. Once enough changes have been appended, the log
+ * is compacted to a single record per license and binding.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Repository
+@Profile("embedded")
+@Slf4j(topic = "Embedded Store")
+public class EmbeddedLicenseStore implements LicenseStore {
+    private static final byte PUT = 0; // A license was inserted
+    private static final byte DELETE = 1; // A license was removed
+    private static final byte USE = 2; // Uses were added to a license
+    private static final byte BIND = 3; // An IP and/or HWID was bound and counted
+    private static final byte BINDING = 4; // A binding was added without counting it
+    private static final byte CLEAR = 5; // The bindings of a license were cleared
+    private static final byte MOVE = 6; // The bindings of a license were moved
+    
+    /**
+     * The log of changes to the store.
+     */
+    @NonNull private final LicenseLog licenseLog;
+    
+    /**
+     * The amount of records to append before compacting the log.
+     */
+    private final long compactThreshold;
+    
+    /**
+     * The stored licenses, keyed by key.
+     */
+    @NonNull private final Map<String, License> licenses = new ConcurrentHashMap<>();
+    
+    /**
+     * The keys of the stored licenses, in order.
+     */
+    @NonNull private final NavigableSet<String> keys = new ConcurrentSkipListSet<>();
+    
+    /**
+     * The bindings of each license, keyed by the
+     * license key, then by the type and value.
+     */
+    @NonNull private final Map<String, Map<String, LicenseBinding>> bindings = new ConcurrentHashMap<>();
+    
+    /**
+     * The lock of the store.
+     * <p>
+     * Changes to a single license take the read lock and
+     * lock the license, changes that add or remove licenses
+     * (and compacting the log) take the write lock.
+     * </p>
+     */
+    @NonNull private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    /**
+     * The amount of records appended since the log was last compacted.
+     */
+    @NonNull private final AtomicLong appended = new AtomicLong();
+    
+    /**
+     * Has the log been replayed?
+     */
+    private volatile boolean initialized;
+    
+    @Autowired
+    public EmbeddedLicenseStore(@Value("${storage.embedded.path}") @NonNull String path,
+                                @Value("${storage.embedded.compact-threshold}") long compactThreshold) {
+        licenseLog = new LicenseLog(Path.of(path));
+        this.compactThreshold = Math.max(compactThreshold, 1L);
+    }
+    
+    /**
+     * Replay the log into memory, and compact
+     * it if it holds any stale records.
+     */
+    @Override
+    public void initialize() {
+        if (initialized) { // Already replayed
+            return;
+        }
+        try {
+            long records = licenseLog.open(this::replay);
+            long live = licenses.size();
+            for (Map<String, LicenseBinding> licenseBindings : bindings.values()) {
+                live += licenseBindings.size();
+            }
+            if (records > live) { // Drop the stale records
+                compact();
+            }
+            log.info("Replayed {} records into {} licenses", records, licenses.size());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to read the license log", ex);
+        }
+        initialized = true;
+    }
+    
+    /**
+     * Sync the log to disk, and compact
+     * it once it has grown enough.
+     */
+    @Scheduled(fixedDelayString = "${storage.embedded.sync-interval}", timeUnit = TimeUnit.SECONDS)
+    public void sync() {
+        if (!initialized) { // Not replayed yet
+            return;
+        }
+        try {
+            if (appended.get() >= compactThreshold) {
+                compact();
+            } else {
+                licenseLog.sync();
+            }
+        } catch (IOException ex) {
+            log.warn("Failed to sync the license log: {}", ex.getMessage());
+        }
+    }
+    
+    @PreDestroy
+    public void onShutdown() throws IOException {
+        licenseLog.close();
+    }
+    
+    @Override @NonNull
+    public Optional<License> findById(@NonNull String key) {
+        return Optional.ofNullable(copy(licenses.get(key)));
+    }
+    
+    @Override @NonNull
+    public Optional<License> getLicense(@NonNull String key, @NonNull String product) {
+        License license = licenses.get(key);
+        return license == null || !license.getProduct().equals(product) ? Optional.empty() : Optional.of(copy(license));
+    }
+    
+    @Override @NonNull
+    public Optional<License> getCheckLicense(@NonNull String key, @NonNull String product) {
+        return getLicense(key, product);
+    }
+    
+    @Override @NonNull
+    public List<License> getCheckLicenses(@NonNull Collection<String> keys) {
+        List<License> found = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            License license = copy(licenses.get(key));
+            if (license != null) {
+                found.add(license);
+            }
+        }
+        return found;
+    }
+    
+    @Override
+    public long count() {
+        return licenses.size();
+    }
+    
+    @Override
+    public boolean hasLegacyKeys() {
+        // BCrypt hashes start with $2, which the HMAC index never does
+        String first = keys.ceiling("$2");
+        return first != null && first.compareTo("$3") < 0;
+    }
+    
+    @Override @NonNull
+    public License insert(@NonNull License license) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (licenses.containsKey(license.getKey())) {
+                throw new DuplicateKeyException("License already exists");
+            }
+            append(PUT, out -> writeLicense(out, license));
+            putLicense(copy(license));
+        } finally {
+            writeLock.unlock();
+        }
+        return license;
+    }
+    
+    @Override @NonNull
+    public List<License> insertAll(@NonNull List<License> licenses) {
+        List<License> inserted = new ArrayList<>(licenses.size());
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            for (License license : licenses) {
+                if (this.licenses.containsKey(license.getKey())) { // Skip existing licenses
+                    continue;
+                }
+                append(PUT, out -> writeLicense(out, license));
+                putLicense(copy(license));
+                inserted.add(license);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return inserted;
+    }
+    
+    @Override
+    public void deleteById(@NonNull String key) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (!licenses.containsKey(key)) { // Nothing to remove
+                return;
+            }
+            append(DELETE, out -> out.writeUTF(key));
+            removeLicense(key);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    @Override @NonNull
+    public Set<LicenseBinding.Type> findBindings(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid) {
+        Set<LicenseBinding.Type> types = EnumSet.noneOf(LicenseBinding.Type.class);
+        Map<String, LicenseBinding> licenseBindings = bindings.get(key);
+        if (licenseBindings != null) {
+            if (licenseBindings.containsKey(bindingId(LicenseBinding.Type.IP, hashedIp))) {
+                types.add(LicenseBinding.Type.IP);
+            }
+            if (licenseBindings.containsKey(bindingId(LicenseBinding.Type.HWID, hwid))) {
+                types.add(LicenseBinding.Type.HWID);
+            }
+        }
+        return types;
+    }
+    
+    @Override @NonNull
+    public Map<String, Set<LicenseBinding.Type>> findBindings(@NonNull Collection<String> keys, @NonNull String hashedIp,
+                                                              @NonNull String hwid) {
+        Map<String, Set<LicenseBinding.Type>> found = new HashMap<>();
+        for (String key : keys) {
+            Set<LicenseBinding.Type> types = findBindings(key, hashedIp, hwid);
+            if (!types.isEmpty()) {
+                found.put(key, types);
+            }
+        }
+        return found;
+    }
+    
+    @Override
+    public void bind(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid, boolean newIp, boolean newHwid)
+        throws APIException {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            License license = licenses.get(key);
+            if (license == null) { // The license was removed
+                throw new LicenseNotFoundException();
+            }
+            synchronized (license) {
+                Map<String, LicenseBinding> licenseBindings = bindings.get(key);
+                // Skip bindings someone else added already
+                boolean bindIp = newIp && (licenseBindings == null
+                                               || !licenseBindings.containsKey(bindingId(LicenseBinding.Type.IP, hashedIp)));
+                boolean bindHwid = newHwid && (licenseBindings == null
+                                                   || !licenseBindings.containsKey(bindingId(LicenseBinding.Type.HWID, hwid)));
+                if (bindIp && license.getIpCount() >= license.getIpLimit()) {
+                    throw new LicenseIpLimitExceededException();
+                }
+                if (bindHwid && license.getHwidCount() >= license.getHwidLimit()) {
+                    throw new LicenseHwidLimitExceededException();
+                }
+                if (!bindIp && !bindHwid) { // Nothing to bind
+                    return;
+                }
+                String ip = bindIp ? hashedIp : null;
+                String boundHwid = bindHwid ? hwid : null;
+                long created = System.currentTimeMillis();
+                append(BIND, out -> {
+                    out.writeUTF(key);
+                    out.writeLong(created);
+                    writeNullable(out, ip);
+                    writeNullable(out, boundHwid);
+                });
+                applyBind(key, created, ip, boundHwid);
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+    
+    @Override
+    public void clearBindings(@NonNull String key, boolean clearIps, boolean clearHwids) {
+        if (!clearIps && !clearHwids) { // Nothing to clear
+            return;
+        }
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            append(CLEAR, out -> {
+                out.writeUTF(key);
+                out.writeBoolean(clearIps);
+                out.writeBoolean(clearHwids);
+            });
+            applyClear(key, clearIps, clearHwids);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    @Override
+    public void moveBindings(@NonNull String from, @NonNull String to) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (!bindings.containsKey(from)) { // Nothing to move
+                return;
+            }
+            append(MOVE, out -> {
+                out.writeUTF(from);
+                out.writeUTF(to);
+            });
+            applyMove(from, to);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Licenses in the embedded store never
+     * stored their bindings in arrays.
+     *
+     * @return zero
+     */
+    @Override
+    public long migrateBindings() {
+        return 0L;
+    }
+    
+    @Override
+    public void insertBindings(@NonNull List<LicenseBinding> bindings) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            for (LicenseBinding binding : bindings) {
+                Map<String, LicenseBinding> licenseBindings = this.bindings.get(binding.getLicense());
+                if (licenseBindings != null && licenseBindings.containsKey(bindingId(binding.getType(), binding.getValue()))) {
+                    continue; // Skip existing bindings
+                }
+                append(BINDING, out -> writeBinding(out, binding));
+                putBinding(binding);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    @Override @NonNull
+    public Stream<LicenseBinding> streamBindings(@NonNull Collection<String> keys) {
+        return List.copyOf(keys).stream()
+                   .map(bindings::get)
+                   .filter(Objects::nonNull)
+                   .flatMap(licenseBindings -> List.copyOf(licenseBindings.values()).stream());
+    }
+    
+    @Override @NonNull
+    public Optional<License> use(@NonNull String key, @NonNull String product) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            License license = licenses.get(key);
+            if (license == null || !license.getProduct().equals(product)) {
+                return Optional.empty();
+            }
+            return Optional.of(addUse(license, 1L, System.currentTimeMillis()));
+        } finally {
+            readLock.unlock();
+        }
+    }
+    
+    @Override @NonNull
+    public Map<String, License> useAll(@NonNull Collection<String> keys) {
+        Map<String, License> used = new HashMap<>();
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            for (String key : keys) {
+                License license = licenses.get(key);
+                if (license != null) {
+                    used.put(key, addUse(license, 1L, now));
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return used;
+    }
+    
+    @Override
+    public void addUses(@NonNull List<LicenseUse> uses) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            for (LicenseUse use : uses) {
+                License license = licenses.get(use.key());
+                if (license != null) { // Skip licenses that are gone
+                    addUse(license, use.uses(), use.lastUsed().getTime());
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+    
+    @Override @NonNull
+    public Stream<License> streamAll(int batchSize) {
+        return keys.stream().map(licenses::get).filter(Objects::nonNull).map(EmbeddedLicenseStore::copy);
+    }
+    
+    @Override @NonNull
+    public Stream<License> streamQuery(@NonNull LicenseQueryDTO query, int limit, int batchSize) {
+        NavigableSet<String> page = query.getAfter() == null ? keys : keys.tailSet(query.getAfter(), false);
+        return page.stream()
+                   .map(licenses::get)
+                   .filter(license -> license != null && matches(license, query))
+                   .limit(limit)
+                   .map(license -> {
+                       License copy = copy(license);
+                       copy.setVerifier(null); // Not one of the query fields
+                       return copy;
+                   });
+    }
+    
+    @Override @NonNull
+    public Stream<String> streamKeys(int batchSize) {
+        return keys.stream();
+    }
+    
+    /**
+     * Add the given uses to the given license.
+     * <p>
+     * The caller must hold the read lock.
+     * </p>
+     *
+     * @param license  the license to add the uses to
+     * @param uses     the amount of uses
+     * @param lastUsed the unix time of the last use, only moved forward
+     * @return a copy of the license after the uses were added
+     */
+    @NonNull
+    private License addUse(@NonNull License license, long uses, long lastUsed) {
+        synchronized (license) {
+            String key = license.getKey();
+            append(USE, out -> {
+                out.writeUTF(key);
+                out.writeLong(uses);
+                out.writeLong(lastUsed);
+            });
+            applyUse(license, uses, lastUsed);
+            return copy(license);
+        }
+    }
+    
+    /**
+     * Append a record of the given type to the log.
+     *
+     * @param type   the type of the record
+     * @param writer the writer of the record body
+     */
+    private void append(byte type, @NonNull RecordWriter writer) {
+        licenseLog.append(encode(type, writer));
+        appended.incrementAndGet();
+    }
+    
+    /**
+     * Apply the given record of the log.
+     *
+     * @param record the record to apply
+     */
+    private void replay(@NonNull ByteBuffer record) {
+        byte[] bytes = new byte[record.remaining()];
+        record.get(bytes);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte type = in.readByte();
+            switch (type) {
+                case PUT -> putLicense(readLicense(in));
+                case DELETE -> removeLicense(in.readUTF());
+                case USE -> {
+                    License license = licenses.get(in.readUTF());
+                    long uses = in.readLong();
+                    long lastUsed = in.readLong();
+                    if (license != null) {
+                        applyUse(license, uses, lastUsed);
+                    }
+                }
+                case BIND -> applyBind(in.readUTF(), in.readLong(), readNullable(in), readNullable(in));
+                case BINDING -> putBinding(readBinding(in));
+                case CLEAR -> applyClear(in.readUTF(), in.readBoolean(), in.readBoolean());
+                case MOVE -> applyMove(in.readUTF(), in.readUTF());
+                default -> throw new IOException("Unknown record type " + type);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to replay a license log record", ex);
+        }
+    }
+    
+    /**
+     * Rewrite the log with a single record
+     * for each license and binding.
+     *
+     * @throws IOException if rewriting the log fails
+     */
+    private void compact() throws IOException {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            long before = licenseLog.size();
+            licenseLog.rewrite(rewritten -> {
+                for (License license : licenses.values()) {
+                    rewritten.append(encode(PUT, out -> writeLicense(out, license)));
+                }
+                for (Map<String, LicenseBinding> licenseBindings : bindings.values()) {
+                    for (LicenseBinding binding : licenseBindings.values()) {
+                        rewritten.append(encode(BINDING, out -> writeBinding(out, binding)));
+                    }
+                }
+            });
+            appended.set(0L);
+            log.info("Compacted the license log from {} to {} bytes", before, licenseLog.size());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Encode a record of the given type.
+     *
+     * @param type   the type of the record
+     * @param writer the writer of the record body
+     * @return the encoded record
+     */
+    private static byte[] encode(byte type, @NonNull RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            writer.write(out);
+        } catch (IOException ex) { // Writing to memory never fails
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Add the given license to the index.
+     *
+     * @param license the license to add
+     */
+    private void putLicense(@NonNull License license) {
+        licenses.put(license.getKey(), license);
+        keys.add(license.getKey());
+    }
+    
+    /**
+     * Remove the license with the given key from the index.
+     *
+     * @param key the key of the license
+     */
+    private void removeLicense(@NonNull String key) {
+        licenses.remove(key);
+        keys.remove(key);
+    }
+    
+    /**
+     * Add the given binding to the index.
+     *
+     * @param binding the binding to add
+     */
+    private void putBinding(@NonNull LicenseBinding binding) {
+        bindings.computeIfAbsent(binding.getLicense(), key -> new ConcurrentHashMap<>())
+            .put(bindingId(binding.getType(), binding.getValue()), binding);
+    }
+    
+    /**
+     * Add the given uses to the given license.
+     *
+     * @param license  the license
+     * @param uses     the amount of uses
+     * @param lastUsed the unix time of the last use, only moved forward
+     */
+    private static void applyUse(@NonNull License license, long uses, long lastUsed) {
+        license.setUses((int) (license.getUses() + uses));
+        if (license.getLastUsed() == null || license.getLastUsed().getTime() < lastUsed) {
+            license.setLastUsed(new Date(lastUsed));
+        }
+    }
+    
+    /**
+     * Add and count the given bindings of the license with the given key.
+     *
+     * @param key     the key of the license
+     * @param created the unix time the bindings were created
+     * @param ip      the hashed ip to bind, null if none
+     * @param hwid    the hwid to bind, null if none
+     */
+    private void applyBind(@NonNull String key, long created, String ip, String hwid) {
+        License license = licenses.get(key);
+        if (ip != null) {
+            putBinding(new LicenseBinding(null, key, LicenseBinding.Type.IP, ip, new Date(created)));
+            if (license != null) {
+                license.setIpCount(license.getIpCount() + 1);
+            }
+        }
+        if (hwid != null) {
+            putBinding(new LicenseBinding(null, key, LicenseBinding.Type.HWID, hwid, new Date(created)));
+            if (license != null) {
+                license.setHwidCount(license.getHwidCount() + 1);
+            }
+        }
+    }
+    
+    /**
+     * Clear the IPs and/or HWIDs of the license with the given key.
+     *
+     * @param key        the key of the license
+     * @param clearIps   whether to clear the IPs
+     * @param clearHwids whether to clear the HWIDs
+     */
+    private void applyClear(@NonNull String key, boolean clearIps, boolean clearHwids) {
+        Map<String, LicenseBinding> licenseBindings = bindings.get(key);
+        if (licenseBindings != null) {
+            licenseBindings.values().removeIf(binding -> binding.getType() == LicenseBinding.Type.IP ? clearIps : clearHwids);
+        }
+        License license = licenses.get(key);
+        if (license == null) {
+            return;
+        }
+        if (clearIps) {
+            license.setIpCount(0);
+        }
+        if (clearHwids) {
+            license.setHwidCount(0);
+        }
+    }
+    
+    /**
+     * Move the bindings of a license to a new key.
+     *
+     * @param from the old key of the license
+     * @param to   the new key of the license
+     */
+    private void applyMove(@NonNull String from, @NonNull String to) {
+        Map<String, LicenseBinding> moved = bindings.remove(from);
+        if (moved == null) { // Nothing to move
+            return;
+        }
+        for (LicenseBinding binding : moved.values()) {
+            putBinding(new LicenseBinding(null, to, binding.getType(), binding.getValue(), binding.getCreated()));
+        }
+    }
+    
+    /**
+     * Check if the given license matches the filters of the given query.
+     *
+     * @param license the license to check
+     * @param query   the query to match
+     * @return true if matching, otherwise false
+     */
+    private static boolean matches(@NonNull License license, @NonNull LicenseQueryDTO query) {
+        return (query.getProduct() == null || query.getProduct().equals(license.getProduct()))
+                   && (query.getOwner() == null || query.getOwner() == license.getOwnerSnowflake())
+                   && (query.getPlan() == null || query.getPlan().equals(license.getPlan()))
+                   && inRange(license.getExpires(), query.getExpiresAfter(), query.getExpiresBefore())
+                   && inRange(license.getLastUsed(), query.getUsedAfter(), query.getUsedBefore());
+    }
+    
+    /**
+     * Check if the given date is in the given range.
+     *
+     * @param date the date to check, null if unset
+     * @param from the start of the range, inclusive, null if open
+     * @param to   the end of the range, exclusive, null if open
+     * @return true if in range, or there is no range, otherwise false
+     */
+    private static boolean inRange(Date date, Instant from, Instant to) {
+        if (from == null && to == null) { // No range
+            return true;
+        }
+        if (date == null) { // Unset dates never match a range
+            return false;
+        }
+        Instant instant = date.toInstant();
+        return (from == null || !instant.isBefore(from)) && (to == null || instant.isBefore(to));
+    }
+    
+    /**
+     * Copy the given license, so callers can't
+     * change the stored license.
+     *
+     * @param license the license to copy, null if none
+     * @return the copy, null if none
+     */
+    private static License copy(License license) {
+        if (license == null) {
+            return null;
+        }
+        synchronized (license) {
+            License copy = new License();
+            copy.setKey(license.getKey());
+            copy.setVerifier(license.getVerifier());
+            copy.setProduct(license.getProduct());
+            copy.setDescription(license.getDescription());
+            copy.setOwnerSnowflake(license.getOwnerSnowflake());
+            copy.setOwnerName(license.getOwnerName());
+            copy.setPlan(license.getPlan());
+            copy.setLatestVersion(license.getLatestVersion());
+            copy.setUses(license.getUses());
+            copy.setIpCount(license.getIpCount());
+            copy.setHwidCount(license.getHwidCount());
+            copy.setIpLimit(license.getIpLimit());
+            copy.setHwidLimit(license.getHwidLimit());
+            copy.setExpires(license.getExpires());
+            copy.setLastUsed(license.getLastUsed());
+            copy.setCreated(license.getCreated());
+            return copy;
+        }
+    }
+    
+    /**
+     * Write the given license to a record.
+     *
+     * @param out     the record to write to
+     * @param license the license to write
+     * @throws IOException if writing fails
+     */
+    private static void writeLicense(@NonNull DataOutput out, @NonNull License license) throws IOException {
+        out.writeUTF(license.getKey());
+        writeNullable(out, license.getVerifier());
+        out.writeUTF(license.getProduct());
+        writeNullable(out, license.getDescription());
+        out.writeLong(license.getOwnerSnowflake());
+        writeNullable(out, license.getOwnerName());
+        out.writeUTF(license.getPlan());
+        out.writeUTF(license.getLatestVersion());
+        out.writeInt(license.getUses());
+        out.writeInt(license.getIpCount());
+        out.writeInt(license.getHwidCount());
+        out.writeInt(license.getIpLimit());
+        out.writeInt(license.getHwidLimit());
+        writeDate(out, license.getExpires());
+        writeDate(out, license.getLastUsed());
+        out.writeLong(license.getCreated().getTime());
+    }
+    
+    /**
+     * Read a license from a record.
+     *
+     * @param in the record to read from
+     * @return the license
+     * @throws IOException if reading fails
+     */
+    @NonNull
+    private static License readLicense(@NonNull DataInput in) throws IOException {
+        License license = new License();
+        license.setKey(in.readUTF());
+        license.setVerifier(readNullable(in));
+        license.setProduct(in.readUTF());
+        license.setDescription(readNullable(in));
+        license.setOwnerSnowflake(in.readLong());
+        license.setOwnerName(readNullable(in));
+        license.setPlan(in.readUTF());
+        license.setLatestVersion(in.readUTF());
+        license.setUses(in.readInt());
+        license.setIpCount(in.readInt());
+        license.setHwidCount(in.readInt());
+        license.setIpLimit(in.readInt());
+        license.setHwidLimit(in.readInt());
+        license.setExpires(readDate(in));
+        license.setLastUsed(readDate(in));
+        license.setCreated(new Date(in.readLong()));
+        return license;
+    }
+    
+    /**
+     * Write the given binding to a record.
+     *
+     * @param out     the record to write to
+     * @param binding the binding to write
+     * @throws IOException if writing fails
+     */
+    private static void writeBinding(@NonNull DataOutput out, @NonNull LicenseBinding binding) throws IOException {
+        out.writeUTF(binding.getLicense());
+        out.writeByte(binding.getType().ordinal());
+        out.writeUTF(binding.getValue());
+        out.writeLong(binding.getCreated().getTime());
+    }
+    
+    /**
+     * Read a binding from a record.
+     *
+     * @param in the record to read from
+     * @return the binding
+     * @throws IOException if reading fails
+     */
+    @NonNull
+    private static LicenseBinding readBinding(@NonNull DataInput in) throws IOException {
+        return new LicenseBinding(null, in.readUTF(), LicenseBinding.Type.values()[in.readByte()], in.readUTF(),
+            new Date(in.readLong())
+        );
+    }
+    
+    /**
+     * Write the given optional string to a record.
+     *
+     * @param out   the record to write to
+     * @param value the string, null if none
+     * @throws IOException if writing fails
+     */
+    private static void writeNullable(@NonNull DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    
+    /**
+     * Read an optional string from a record.
+     *
+     * @param in the record to read from
+     * @return the string, null if none
+     * @throws IOException if reading fails
+     */
+    private static String readNullable(@NonNull DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
+    /**
+     * Write the given optional date to a record.
+     *
+     * @param out  the record to write to
+     * @param date the date, null if none
+     * @throws IOException if writing fails
+     */
+    private static void writeDate(@NonNull DataOutput out, Date date) throws IOException {
+        out.writeLong(date == null ? Long.MIN_VALUE : date.getTime());
+    }
+    
+    /**
+     * Read an optional date from a record.
+     *
+     * @param in the record to read from
+     * @return the date, null if none
+     * @throws IOException if reading fails
+     */
+    private static Date readDate(@NonNull DataInput in) throws IOException {
+        long time = in.readLong();
+        return time == Long.MIN_VALUE ? null : new Date(time);
+    }
+    
+    /**
+     * Get the id of a binding within its license.
+     *
+     * @param type  the type of the binding
+     * @param value the value of the binding
+     * @return the id
+     */
+    @NonNull
+    private static String bindingId(@NonNull LicenseBinding.Type type, @NonNull String value) {
+        return type.name() + ":" + value;
+    }
+    
+    /**
+     * A writer of the body of a log record.
+     */
+    @FunctionalInterface
+    private interface RecordWriter {
+        /**
+         * Write the body of the record.
+         *
+         * @param out the record to write to
+         * @throws IOException if writing fails
+         */
+        void write(@NonNull DataOutput out) throws IOException;
+    }
+}
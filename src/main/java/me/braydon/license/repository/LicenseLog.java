@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of records on disk.
+ * <p>
+ * Each record is framed by its length and a CRC32C checksum.
+ * The log is read back through a memory mapping, and a torn
+ * or corrupt record at the end (from a crash mid-write) ends
+ * the log, which is truncated to the last whole record.
+ * </p>
+ *
+ * @author Braydon
+ */
+final class LicenseLog implements AutoCloseable {
+    private static final int HEADER_SIZE = 8; // The length and checksum of a record
+    
+    /**
+     * The path of the log file.
+     */
+    @NonNull private final Path path;
+    
+    /**
+     * The channel to append records with, null if closed.
+     */
+    private FileChannel channel;
+    
+    /**
+     * The size of the log, in bytes.
+     */
+    private long size;
+    
+    LicenseLog(@NonNull Path path) {
+        this.path = path;
+    }
+    
+    /**
+     * Open the log, and pass each record in it to the given reader.
+     *
+     * @param reader the reader of the records
+     * @return the amount of records read
+     * @throws IOException if reading the log fails
+     */
+    synchronized long open(@NonNull Consumer<ByteBuffer> reader) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long records = 0L;
+        long valid = 0L; // The end of the last whole record
+        long length = channel.size();
+        if (length > 0L) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0L, length);
+            CRC32C crc = new CRC32C();
+            while (mapped.remaining() >= HEADER_SIZE) {
+                int recordSize = mapped.getInt();
+                int checksum = mapped.getInt();
+                if (recordSize < 0 || recordSize > mapped.remaining()) { // Torn record
+                    break;
+                }
+                ByteBuffer record = mapped.slice(mapped.position(), recordSize);
+                crc.reset();
+                crc.update(record.duplicate());
+                if ((int) crc.getValue() != checksum) { // Corrupt record
+                    break;
+                }
+                reader.accept(record);
+                mapped.position(mapped.position() + recordSize);
+                valid = mapped.position();
+                records++;
+            }
+        }
+        if (valid < length) { // Drop the broken tail, so new records follow the last whole one
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+        size = valid;
+        return records;
+    }
+    
+    /**
+     * Append the given record to the log.
+     * <p>
+     * The record is only handed to the OS, and
+     * is on disk once the log is next synced.
+     * </p>
+     *
+     * @param record the record to append
+     * @throws UncheckedIOException if writing fails
+     */
+    synchronized void append(byte[] record) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + record.length);
+        CRC32C crc = new CRC32C();
+        crc.update(record);
+        frame.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+        try {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        size += frame.capacity();
+    }
+    
+    /**
+     * Force the appended records to disk.
+     *
+     * @throws IOException if syncing fails
+     */
+    synchronized void sync() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+    
+    /**
+     * Replace the log with the records written by the given writer.
+     * <p>
+     * The new log is written next to the current one, and
+     * moved over it once synced, so a crash leaves either
+     * the old or the new log whole.
+     * </p>
+     *
+     * @param writer the writer of the new records
+     * @throws IOException if writing the new log fails
+     */
+    synchronized void rewrite(@NonNull Consumer<LicenseLog> writer) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        LicenseLog rewritten = new LicenseLog(temp);
+        Files.deleteIfExists(temp);
+        rewritten.open(record -> { });
+        try {
+            writer.accept(rewritten);
+            rewritten.sync();
+        } finally {
+            rewritten.close();
+        }
+        channel.close();
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = channel.size();
+        channel.position(size);
+    }
+    
+    /**
+     * Get the size of the log.
+     *
+     * @return the size, in bytes
+     */
+    synchronized long size() {
+        return size;
+    }
+    
+    /**
+     * Sync and close the log.
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) { // Not open
+            return;
+        }
+        channel.force(false);
+        channel.close();
+        channel = null;
+    }
+}
@@ -11,6 +11,8 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -19,7 +21,28 @@ import java.util.Optional;
  * @author Braydon
  */
 @Repository
-public interface LicenseRepository extends MongoRepository<License, String> {
+public interface LicenseRepository extends MongoRepository<License, String>, LicenseRepositoryCustom {
+    /**
+     * The projection of the fields that license checks need.
+     * <p>
+     * Licenses loaded with this projection don't
+     * have their uses and dates, and must never
+     * be saved back as a whole.
+     * </p>
+     */
+    String CHECK_FIELDS = "{ verifier: 1, product: 1, description: 1, 'owner.snowflake': 1, 'owner.name': 1, plan: 1, "
+                              + "latestVersion: 1, ipCount: 1, hwidCount: 1, ipLimit: 1, hwidLimit: 1, expires: 1 }";
+    
+    /**
+     * The projection of the fields that admin queries list.
+     * <p>
+     * This is every field except the verifier and
+     * the legacy IP and HWID arrays.
+     * </p>
+     */
+    String QUERY_FIELDS = "{ product: 1, description: 1, 'owner.snowflake': 1, 'owner.name': 1, plan: 1, latestVersion: 1, "
+                              + "uses: 1, ipCount: 1, hwidCount: 1, ipLimit: 1, hwidLimit: 1, expires: 1, lastUsed: 1, created: 1 }";
+    
     /**
      * Get the license that has the given
      * key and is for the given product.
@@ -31,4 +54,29 @@ public interface LicenseRepository extends MongoRepository<License, String> {
      */
     @Query("{ key: ?0, product: ?1 }")
     Optional<License> getLicense(@NonNull String key, @NonNull String product);
+    
+    /**
+     * Get the fields a check needs of the license
+     * that has the given key and is for the given product.
+     *
+     * @param key     the key to get
+     * @param product the product the key is for
+     * @return the optional license
+     * @see #CHECK_FIELDS for the fields
+     * @see License for license
+     */
+    @Query(value = "{ key: ?0, product: ?1 }", fields = CHECK_FIELDS)
+    Optional<License> getCheckLicense(@NonNull String key, @NonNull String product);
+    
+    /**
+     * Get the fields a check needs of the
+     * licenses that have the given keys.
+     *
+     * @param keys the keys to get
+     * @return the found licenses
+     * @see #CHECK_FIELDS for the fields
+     * @see License for license
+     */
+    @Query(value = "{ key: { $in: ?0 } }", fields = CHECK_FIELDS)
+    List<License> getCheckLicenses(@NonNull Collection<String> keys);
 }
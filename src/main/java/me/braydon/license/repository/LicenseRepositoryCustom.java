@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import lombok.NonNull;
+import me.braydon.license.dto.LicenseQueryDTO;
+import me.braydon.license.exception.APIException;
+import me.braydon.license.exception.LicenseHwidLimitExceededException;
+import me.braydon.license.exception.LicenseIpLimitExceededException;
+import me.braydon.license.exception.LicenseNotFoundException;
+import me.braydon.license.model.AuditEvent;
+import me.braydon.license.model.AuditRollup;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseBinding;
+import me.braydon.license.model.LicenseUse;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Custom operations for the {@link LicenseRepository}
+ * that can't be expressed as derived queries.
+ *
+ * @author Braydon
+ */
+public interface LicenseRepositoryCustom {
+    /**
+     * Find out which of the given IP and hardware id
+     * are already bound to the license with the given key.
+     * <p>
+     * This is a single query on the unique binding index,
+     * no matter how many bindings the license has.
+     * </p>
+     *
+     * @param key      the key of the license
+     * @param hashedIp the hashed ip used
+     * @param hwid     the hardware id used
+     * @return the types of the bindings that exist
+     * @see LicenseBinding for bindings
+     */
+    @NonNull
+    Set<LicenseBinding.Type> findBindings(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid);
+    
+    /**
+     * Find out which of the given IP and hardware id are
+     * already bound to each of the licenses with the given keys.
+     *
+     * @param keys     the keys of the licenses
+     * @param hashedIp the hashed ip used
+     * @param hwid     the hardware id used
+     * @return the types of the bindings that exist, keyed by the license key
+     * @see LicenseBinding for bindings
+     */
+    @NonNull
+    Map<String, Set<LicenseBinding.Type>> findBindings(@NonNull Collection<String> keys, @NonNull String hashedIp,
+                                                       @NonNull String hwid);
+    
+    /**
+     * Bind the given new IP and/or hardware id to
+     * the license with the given key, if its limits allow it.
+     * <p>
+     * Each new binding is inserted, and then counted against
+     * its limit with a single conditional update. If the limit
+     * was reached, the binding is removed again, along with any
+     * binding that was added by this call.
+     * </p>
+     *
+     * @param key      the key of the license
+     * @param hashedIp the hashed ip used
+     * @param hwid     the hardware id used
+     * @param newIp    whether the IP is new to the license
+     * @param newHwid  whether the HWID is new to the license
+     * @throws LicenseIpLimitExceededException if the IP limit has been reached
+     * @throws LicenseHwidLimitExceededException if the HWID limit has been reached
+     * @throws LicenseNotFoundException if the license is gone
+     * @see LicenseBinding for bindings
+     */
+    void bind(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid, boolean newIp, boolean newHwid)
+        throws APIException;
+    
+    /**
+     * Atomically record a use of the license with the given key.
+     * <p>
+     * The uses are incremented and the last used date is set.
+     * The IP and HWID must have been bound beforehand. Only the
+     * {@link LicenseRepository#CHECK_FIELDS} are returned.
+     * </p>
+     *
+     * @param key     the key of the license
+     * @param product the product the license is for
+     * @return the updated license, empty if it wasn't found
+     * @see License for license
+     */
+    @NonNull
+    Optional<License> use(@NonNull String key, @NonNull String product);
+    
+    /**
+     * Record a use of each of the licenses with the
+     * given keys in a single update, and read the
+     * {@link LicenseRepository#CHECK_FIELDS} of all
+     * of them back with a single query.
+     *
+     * @param keys the keys of the licenses
+     * @return the licenses after the write, keyed by their key
+     * @see License for license
+     */
+    @NonNull
+    Map<String, License> useAll(@NonNull Collection<String> keys);
+    
+    /**
+     * Add the given uses to their licenses
+     * in a single unordered bulk write.
+     * <p>
+     * The last used date of a license is only moved
+     * forward. Licenses that are gone are skipped.
+     * </p>
+     *
+     * @param uses the uses to add
+     * @see LicenseUse for uses
+     */
+    void addUses(@NonNull List<LicenseUse> uses);
+    
+    /**
+     * Clear the IPs and/or HWIDs of
+     * the license with the given key.
+     *
+     * @param key        the key of the license
+     * @param clearIps   whether to clear the IPs
+     * @param clearHwids whether to clear the HWIDs
+     */
+    void clearBindings(@NonNull String key, boolean clearIps, boolean clearHwids);
+    
+    /**
+     * Move the bindings of a license to a new
+     * key, such as when a legacy key is migrated.
+     *
+     * @param from the old key of the license
+     * @param to   the new key of the license
+     */
+    void moveBindings(@NonNull String from, @NonNull String to);
+    
+    /**
+     * Move the IPs and HWIDs of any licenses that still
+     * store them in arrays to the binding collection.
+     * <p>
+     * This is safe to run again if it was interrupted. Once
+     * finished, it's marked as done in the migrations
+     * collection, and later runs skip the scan.
+     * </p>
+     *
+     * @return the amount of licenses migrated
+     * @see LicenseBinding for bindings
+     */
+    long migrateBindings();
+    
+    /**
+     * Insert the given licenses in a single unordered bulk write.
+     * <p>
+     * Licenses that already exist are skipped,
+     * the rest of the licenses are still inserted.
+     * </p>
+     *
+     * @param licenses the licenses to insert
+     * @return the licenses that were inserted
+     * @see License for license
+     */
+    @NonNull
+    List<License> insertAll(@NonNull List<License> licenses);
+    
+    /**
+     * Insert the given bindings in a single unordered
+     * bulk write, skipping any that already exist.
+     * <p>
+     * The binding counts of the licenses aren't updated.
+     * </p>
+     *
+     * @param bindings the bindings to insert
+     * @see LicenseBinding for bindings
+     */
+    void insertBindings(@NonNull List<LicenseBinding> bindings);
+    
+    /**
+     * Stream all licenses from a cursor, fetching
+     * the given amount of licenses at a time.
+     * <p>
+     * The stream must be closed once done.
+     * </p>
+     *
+     * @param batchSize the amount of licenses per cursor batch
+     * @return the stream of licenses
+     * @see License for license
+     */
+    @NonNull
+    Stream<License> streamAll(int batchSize);
+    
+    /**
+     * Stream a page of the licenses matching the given
+     * query from a cursor, in the order of their key.
+     * <p>
+     * The page starts after the cursor of the query, so
+     * each page is an index range scan, no matter how deep
+     * it is. Only the {@link LicenseRepository#QUERY_FIELDS}
+     * are returned. The stream must be closed once done.
+     * </p>
+     *
+     * @param query     the query to match
+     * @param limit     the maximum amount of licenses to stream
+     * @param batchSize the amount of licenses per cursor batch
+     * @return the stream of licenses
+     * @see License for license
+     */
+    @NonNull
+    Stream<License> streamQuery(@NonNull LicenseQueryDTO query, int limit, int batchSize);
+    
+    /**
+     * Stream the keys of all licenses from a cursor, fetching
+     * the given amount of keys at a time.
+     * <p>
+     * The stream must be closed once done.
+     * </p>
+     *
+     * @param batchSize the amount of keys per cursor batch
+     * @return the stream of keys
+     * @see License for license
+     */
+    @NonNull
+    Stream<String> streamKeys(int batchSize);
+    
+    /**
+     * Stream the bindings of the licenses
+     * with the given keys from a cursor.
+     * <p>
+     * The stream must be closed once done.
+     * </p>
+     *
+     * @param keys the keys of the licenses
+     * @return the stream of bindings
+     * @see LicenseBinding for bindings
+     */
+    @NonNull
+    Stream<LicenseBinding> streamBindings(@NonNull Collection<String> keys);
+    
+    /**
+     * Check if any licenses are still stored
+     * with a legacy BCrypt hashed key.
+     *
+     * @return true if there are legacy keys, otherwise false
+     */
+    boolean hasLegacyKeys();
+    
+    /**
+     * Create the indexes declared on the license, binding
+     * and audit rollup documents, if they don't exist yet.
+     * <p>
+     * This is done after startup instead of by
+     * auto index creation, which blocks the boot.
+     * </p>
+     */
+    void createIndexes();
+    
+    /**
+     * Create the time series collection of
+     * the audit log, if it doesn't exist yet.
+     * <p>
+     * It has to be created explicitly, as inserting into
+     * a missing collection creates a regular collection.
+     * </p>
+     *
+     * @param retention the amount of days to keep events for
+     * @see AuditEvent for events
+     */
+    void createAuditCollection(long retention);
+    
+    /**
+     * Append the given events to the audit log.
+     *
+     * @param events the events to append
+     * @see AuditEvent for events
+     */
+    void insertAuditEvents(@NonNull List<AuditEvent> events);
+    
+    /**
+     * Add the given rollups to the stored rollups of
+     * the same product and day, creating them if needed.
+     *
+     * @param rollups the rollups to add
+     * @see AuditRollup for rollups
+     */
+    void addAuditRollups(@NonNull Collection<AuditRollup> rollups);
+    
+    /**
+     * Find the rollups between the given days.
+     *
+     * @param product the product to find the rollups of, null for all
+     * @param from    the first day, inclusive
+     * @param to      the last day, inclusive
+     * @return the rollups, ordered by day and product
+     * @see AuditRollup for rollups
+     */
+    @NonNull
+    List<AuditRollup> findAuditRollups(String product, @NonNull LocalDate from, @NonNull LocalDate to);
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.TimeSeriesGranularity;
+import com.mongodb.client.model.TimeSeriesOptions;
+import lombok.NonNull;
+import me.braydon.license.dto.LicenseQueryDTO;
+import me.braydon.license.exception.APIException;
+import me.braydon.license.exception.LicenseHwidLimitExceededException;
+import me.braydon.license.exception.LicenseIpLimitExceededException;
+import me.braydon.license.exception.LicenseNotFoundException;
+import me.braydon.license.model.AuditEvent;
+import me.braydon.license.model.AuditRollup;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseBinding;
+import me.braydon.license.model.LicenseUse;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The implementation of the {@link LicenseRepositoryCustom} operations.
+ *
+ * @author Braydon
+ */
+public class LicenseRepositoryImpl implements LicenseRepositoryCustom {
+    private static final int DUPLICATE_KEY_ERROR = 11000; // The Mongo error code for a duplicate key
+    private static final String MIGRATIONS = "migrations"; // The collection the completed migrations are marked in
+    private static final String BINDINGS_MIGRATION = "bindings"; // The id of the binding migration marker
+    static final Document CHECK_FIELDS = Document.parse(LicenseRepository.CHECK_FIELDS);
+    private static final Document QUERY_FIELDS = Document.parse(LicenseRepository.QUERY_FIELDS);
+    
+    /**
+     * The {@link MongoTemplate} to use.
+     */
+    @NonNull private final MongoTemplate mongoTemplate;
+    
+    @Autowired
+    public LicenseRepositoryImpl(@NonNull MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+    
+    @Override @NonNull
+    public Set<LicenseBinding.Type> findBindings(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid) {
+        return findBindings(List.of(key), hashedIp, hwid).getOrDefault(key, EnumSet.noneOf(LicenseBinding.Type.class));
+    }
+    
+    @Override @NonNull
+    public Map<String, Set<LicenseBinding.Type>> findBindings(@NonNull Collection<String> keys, @NonNull String hashedIp,
+                                                              @NonNull String hwid) {
+        Document filter = new Document("license", keys.size() == 1 ? keys.iterator().next() : new Document("$in", List.copyOf(keys)))
+                              .append("$or", List.of(
+                                  new Document("type", LicenseBinding.Type.IP.name()).append("value", hashedIp),
+                                  new Document("type", LicenseBinding.Type.HWID.name()).append("value", hwid)
+                              ));
+        Map<String, Set<LicenseBinding.Type>> bindings = new HashMap<>();
+        for (LicenseBinding binding : mongoTemplate.find(new BasicQuery(filter), LicenseBinding.class)) {
+            bindings.computeIfAbsent(binding.getLicense(), key -> EnumSet.noneOf(LicenseBinding.Type.class)).add(binding.getType());
+        }
+        return bindings;
+    }
+    
+    @Override
+    public void bind(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid, boolean newIp, boolean newHwid)
+        throws APIException {
+        boolean boundIp = newIp && reserve(key, LicenseBinding.Type.IP, hashedIp, "ipCount", "ipLimit");
+        if (!newHwid) {
+            return;
+        }
+        try {
+            reserve(key, LicenseBinding.Type.HWID, hwid, "hwidCount", "hwidLimit");
+        } catch (APIException ex) { // Undo the IP binding, the use isn't allowed
+            if (boundIp) {
+                release(key, LicenseBinding.Type.IP, hashedIp, "ipCount");
+            }
+            throw ex;
+        }
+    }
+    
+    @Override @NonNull
+    public Optional<License> use(@NonNull String key, @NonNull String product) {
+        BasicQuery query = new BasicQuery(new Document("_id", key).append("product", product), CHECK_FIELDS);
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, useUpdate(),
+            FindAndModifyOptions.options().returnNew(true), License.class
+        ));
+    }
+    
+    @Override @NonNull
+    public Map<String, License> useAll(@NonNull Collection<String> keys) {
+        BasicQuery query = new BasicQuery(new Document("_id", new Document("$in", List.copyOf(keys))), CHECK_FIELDS);
+        mongoTemplate.updateMulti(query, useUpdate(), License.class);
+        
+        // Read the licenses back
+        Map<String, License> licenses = new HashMap<>();
+        for (License license : mongoTemplate.find(query, License.class)) {
+            licenses.put(license.getKey(), license);
+        }
+        return licenses;
+    }
+    
+    @Override
+    public void addUses(@NonNull List<LicenseUse> uses) {
+        if (uses.isEmpty()) { // Nothing to add
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, License.class);
+        for (LicenseUse use : uses) {
+            bulk.updateOne(new BasicQuery(new Document("_id", use.key())), new Update()
+                                                                              .inc("uses", use.uses())
+                                                                              .max("lastUsed", use.lastUsed()));
+        }
+        bulk.execute();
+    }
+    
+    @Override
+    public void clearBindings(@NonNull String key, boolean clearIps, boolean clearHwids) {
+        // Take the removed bindings off the counts, rather than zeroing them, so a binding
+        // reserved meanwhile keeps its count whether it was inserted before the remove or after
+        Update update = new Update();
+        if (clearIps) {
+            update.inc("ipCount", -removeBindings(key, LicenseBinding.Type.IP));
+        }
+        if (clearHwids) {
+            update.inc("hwidCount", -removeBindings(key, LicenseBinding.Type.HWID));
+        }
+        if (!update.getUpdateObject().isEmpty()) {
+            mongoTemplate.updateFirst(new BasicQuery(new Document("_id", key)), update, License.class);
+        }
+    }
+    
+    @Override
+    public void moveBindings(@NonNull String from, @NonNull String to) {
+        mongoTemplate.updateMulti(new BasicQuery(new Document("license", from)), new Update().set("license", to),
+            LicenseBinding.class
+        );
+    }
+    
+    @Override
+    public long migrateBindings() {
+        BasicQuery marker = new BasicQuery(new Document("_id", BINDINGS_MIGRATION));
+        if (mongoTemplate.exists(marker, MIGRATIONS)) { // Already migrated, skip the scan
+            return 0L;
+        }
+        Document filter = new Document("$or", List.of(
+            new Document("ips", new Document("$exists", true)),
+            new Document("hwids", new Document("$exists", true))
+        ));
+        long migrated = 0L;
+        try (Stream<Document> documents = mongoTemplate.stream(new BasicQuery(filter), Document.class,
+            mongoTemplate.getCollectionName(License.class)
+        )) {
+            Iterator<Document> iterator = documents.iterator();
+            while (iterator.hasNext()) {
+                Document document = iterator.next();
+                String key = document.getString("_id");
+                Set<String> ips = new HashSet<>(document.getList("ips", String.class, List.of()));
+                Set<String> hwids = new HashSet<>(document.getList("hwids", String.class, List.of()));
+                List<LicenseBinding> bindings = new ArrayList<>(ips.size() + hwids.size());
+                for (String ip : ips) {
+                    bindings.add(new LicenseBinding(key, LicenseBinding.Type.IP, ip));
+                }
+                for (String hwid : hwids) {
+                    bindings.add(new LicenseBinding(key, LicenseBinding.Type.HWID, hwid));
+                }
+                insertBindings(bindings);
+                
+                // Count the bindings and drop the arrays, adding to the counts of any
+                // bindings reserved since, and only once if the migration is rerun
+                Update update = new Update()
+                                    .inc("ipCount", ips.size())
+                                    .inc("hwidCount", hwids.size())
+                                    .unset("ips")
+                                    .unset("hwids");
+                mongoTemplate.updateFirst(new BasicQuery(new Document("_id", key).append("$or", filter.get("$or"))), update,
+                    License.class
+                );
+                migrated++;
+            }
+        }
+        // Mark the migration as done, so the next boot doesn't scan the licenses again
+        mongoTemplate.upsert(marker, new Update().set("completed", new Date()), MIGRATIONS);
+        return migrated;
+    }
+    
+    @Override @NonNull
+    public List<License> insertAll(@NonNull List<License> licenses) {
+        Set<Integer> failed = insertUnordered(licenses, License.class);
+        if (failed.isEmpty()) {
+            return licenses;
+        }
+        List<License> inserted = new ArrayList<>(licenses.size() - failed.size());
+        for (int i = 0; i < licenses.size(); i++) {
+            if (!failed.contains(i)) {
+                inserted.add(licenses.get(i));
+            }
+        }
+        return inserted;
+    }
+    
+    @Override
+    public void insertBindings(@NonNull List<LicenseBinding> bindings) {
+        insertUnordered(bindings, LicenseBinding.class);
+    }
+    
+    @Override @NonNull
+    public Stream<License> streamAll(int batchSize) {
+        return mongoTemplate.stream(new Query().cursorBatchSize(batchSize), License.class);
+    }
+    
+    @Override @NonNull
+    public Stream<License> streamQuery(@NonNull LicenseQueryDTO query, int limit, int batchSize) {
+        Document filter = new Document();
+        if (query.getAfter() != null) { // Continue after the cursor
+            filter.append("_id", new Document("$gt", query.getAfter()));
+        }
+        if (query.getProduct() != null) {
+            filter.append("product", query.getProduct());
+        }
+        if (query.getOwner() != null) {
+            filter.append("owner.snowflake", query.getOwner());
+        }
+        if (query.getPlan() != null) {
+            filter.append("plan", query.getPlan());
+        }
+        appendRange(filter, "expires", query.getExpiresAfter(), query.getExpiresBefore());
+        appendRange(filter, "lastUsed", query.getUsedAfter(), query.getUsedBefore());
+        Query mongoQuery = new BasicQuery(filter, QUERY_FIELDS)
+                               .with(Sort.by(Sort.Direction.ASC, "_id"))
+                               .limit(limit)
+                               .cursorBatchSize(Math.min(limit, batchSize));
+        return mongoTemplate.stream(mongoQuery, License.class);
+    }
+    
+    @Override @NonNull
+    public Stream<String> streamKeys(int batchSize) {
+        Query query = new BasicQuery(new Document(), new Document("_id", 1)).cursorBatchSize(batchSize);
+        return mongoTemplate.stream(query, Document.class, mongoTemplate.getCollectionName(License.class))
+                   .map(document -> document.getString("_id"));
+    }
+    
+    @Override @NonNull
+    public Stream<LicenseBinding> streamBindings(@NonNull Collection<String> keys) {
+        return mongoTemplate.stream(new BasicQuery(new Document("license", new Document("$in", List.copyOf(keys)))),
+            LicenseBinding.class
+        );
+    }
+    
+    @Override
+    public boolean hasLegacyKeys() {
+        // BCrypt hashes start with $2, which the HMAC index never does
+        return mongoTemplate.exists(new BasicQuery(new Document("_id", new Document("$gte", "$2").append("$lt", "$3"))), License.class);
+    }
+    
+    @Override
+    public void createIndexes() {
+        IndexResolver resolver = IndexResolver.create(mongoTemplate.getConverter().getMappingContext());
+        for (Class<?> type : List.of(License.class, LicenseBinding.class, AuditRollup.class)) {
+            IndexOperations indexOps = mongoTemplate.indexOps(type);
+            resolver.resolveIndexFor(type).forEach(indexOps::ensureIndex);
+        }
+    }
+    
+    @Override
+    public void createAuditCollection(long retention) {
+        if (mongoTemplate.collectionExists(AuditEvent.COLLECTION)) { // Already created
+            return;
+        }
+        mongoTemplate.getDb().createCollection(AuditEvent.COLLECTION, new CreateCollectionOptions()
+                                                                          .timeSeriesOptions(new TimeSeriesOptions(AuditEvent.TIME_FIELD)
+                                                                                                 .metaField(AuditEvent.META_FIELD)
+                                                                                                 .granularity(TimeSeriesGranularity.SECONDS))
+                                                                          .expireAfter(retention, TimeUnit.DAYS));
+    }
+    
+    @Override
+    public void insertAuditEvents(@NonNull List<AuditEvent> events) {
+        if (events.isEmpty()) { // Nothing to insert
+            return;
+        }
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, AuditEvent.class).insert(events).execute();
+    }
+    
+    @Override
+    public void addAuditRollups(@NonNull Collection<AuditRollup> rollups) {
+        if (rollups.isEmpty()) { // Nothing to add
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, AuditRollup.class);
+        for (AuditRollup rollup : rollups) {
+            Update update = new Update()
+                                .setOnInsert("product", rollup.getProduct())
+                                .setOnInsert("day", rollup.getDay())
+                                .inc("checks", rollup.getChecks())
+                                .inc("latency", rollup.getLatency());
+            rollup.getStatuses().forEach((status, count) -> update.inc("statuses." + status, count));
+            bulk.upsert(new BasicQuery(new Document("_id", rollup.getId())), update);
+        }
+        bulk.execute();
+    }
+    
+    @Override @NonNull
+    public List<AuditRollup> findAuditRollups(String product, @NonNull LocalDate from, @NonNull LocalDate to) {
+        Document filter = new Document();
+        if (product != null) {
+            filter.append("product", product);
+        }
+        appendRange(filter, "day", from.atStartOfDay(ZoneOffset.UTC).toInstant(),
+            to.plusDays(1L).atStartOfDay(ZoneOffset.UTC).toInstant()
+        );
+        return mongoTemplate.find(new BasicQuery(filter).with(Sort.by(Sort.Direction.ASC, "day", "product")), AuditRollup.class);
+    }
+    
+    /**
+     * Bind the given value to the license with the
+     * given key, and count it against its limit.
+     * <p>
+     * Room is taken before the binding is inserted, so a
+     * binding that can be seen is always counted, and a
+     * duplicate means the value is really bound already.
+     * </p>
+     *
+     * @param key   the key of the license
+     * @param type  the type of the binding
+     * @param value the value of the binding
+     * @param count the name of the count field
+     * @param limit the name of the limit field
+     * @return true if the binding was added, false if it already existed
+     * @throws APIException if the limit has been reached, or the license is gone
+     */
+    private boolean reserve(@NonNull String key, @NonNull LicenseBinding.Type type, @NonNull String value,
+                            @NonNull String count, @NonNull String limit) throws APIException {
+        // Only bind if there's room for it
+        if (mongoTemplate.updateFirst(roomQuery(key, count, limit), new Update().inc(count, 1), License.class).getMatchedCount() == 0L) {
+            if (mongoTemplate.exists(bindingQuery(key, type, value), LicenseBinding.class)) { // Someone else bound it already
+                return false;
+            }
+            if (!mongoTemplate.exists(new BasicQuery(new Document("_id", key)), License.class)) { // The license was removed
+                throw new LicenseNotFoundException();
+            }
+            throw type == LicenseBinding.Type.IP ? new LicenseIpLimitExceededException() : new LicenseHwidLimitExceededException();
+        }
+        try {
+            mongoTemplate.insert(new LicenseBinding(key, type, value));
+            return true;
+        } catch (DuplicateKeyException ex) { // Someone else bound it already, give the room back
+            mongoTemplate.updateFirst(new BasicQuery(new Document("_id", key)), new Update().inc(count, -1), License.class);
+            return false;
+        }
+    }
+    
+    /**
+     * Remove the given binding from the license with
+     * the given key, and stop counting it against its limit.
+     *
+     * @param key   the key of the license
+     * @param type  the type of the binding
+     * @param value the value of the binding
+     * @param count the name of the count field
+     */
+    private void release(@NonNull String key, @NonNull LicenseBinding.Type type, @NonNull String value, @NonNull String count) {
+        if (mongoTemplate.remove(bindingQuery(key, type, value), LicenseBinding.class).getDeletedCount() > 0L) {
+            mongoTemplate.updateFirst(new BasicQuery(new Document("_id", key)), new Update().inc(count, -1), License.class);
+        }
+    }
+    
+    /**
+     * Remove every binding of the given type
+     * from the license with the given key.
+     *
+     * @param key  the key of the license
+     * @param type the type of the bindings
+     * @return the amount of bindings removed
+     */
+    private long removeBindings(@NonNull String key, @NonNull LicenseBinding.Type type) {
+        return mongoTemplate.remove(new BasicQuery(new Document("license", key).append("type", type.name())),
+            LicenseBinding.class
+        ).getDeletedCount();
+    }
+    
+    /**
+     * Insert the given documents in a single unordered
+     * bulk write, skipping any that already exist.
+     *
+     * @param documents the documents to insert
+     * @param type      the type of the documents
+     * @return the indexes of the documents that already existed
+     */
+    @NonNull
+    private Set<Integer> insertUnordered(@NonNull List<?> documents, @NonNull Class<?> type) {
+        if (documents.isEmpty()) { // Nothing to insert
+            return Set.of();
+        }
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, type).insert(documents).execute();
+            return Set.of();
+        } catch (BulkOperationException ex) {
+            Set<Integer> failed = new HashSet<>();
+            for (BulkWriteError error : ex.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY_ERROR) { // Only duplicates are expected
+                    throw ex;
+                }
+                failed.add(error.getIndex());
+            }
+            return failed;
+        }
+    }
+    
+    /**
+     * Build the query for a single binding.
+     *
+     * @param key   the key of the license
+     * @param type  the type of the binding
+     * @param value the value of the binding
+     * @return the query
+     */
+    @NonNull
+    static Query bindingQuery(@NonNull String key, @NonNull LicenseBinding.Type type, @NonNull String value) {
+        return new BasicQuery(new Document("license", key).append("type", type.name()).append("value", value));
+    }
+    
+    /**
+     * Build the query for a license that has
+     * room for another binding of a type.
+     *
+     * @param key   the key of the license
+     * @param count the name of the count field
+     * @param limit the name of the limit field
+     * @return the query
+     */
+    @NonNull
+    static Query roomQuery(@NonNull String key, @NonNull String count, @NonNull String limit) {
+        return new BasicQuery(new Document("_id", key)
+                                  .append("$expr", new Document("$lt", List.of("$" + count, "$" + limit))));
+    }
+    
+    /**
+     * Build the update that records a use.
+     *
+     * @return the update
+     */
+    @NonNull
+    static Update useUpdate() {
+        return new Update()
+                   .inc("uses", 1)
+                   .set("lastUsed", new Date());
+    }
+    
+    /**
+     * Append the given date range on a field to the given filter.
+     *
+     * @param filter the filter to append to
+     * @param field  the name of the date field
+     * @param from   the inclusive start of the range, null if unbounded
+     * @param to     the exclusive end of the range, null if unbounded
+     */
+    private static void appendRange(@NonNull Document filter, @NonNull String field, Instant from, Instant to) {
+        if (from == null && to == null) { // No range
+            return;
+        }
+        Document range = new Document();
+        if (from != null) {
+            range.append("$gte", Date.from(from));
+        }
+        if (to != null) {
+            range.append("$lt", Date.from(to));
+        }
+        filter.append(field, range);
+    }
+}
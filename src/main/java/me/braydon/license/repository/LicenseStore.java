@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import lombok.NonNull;
+import me.braydon.license.dto.LicenseQueryDTO;
+import me.braydon.license.exception.APIException;
+import me.braydon.license.exception.LicenseHwidLimitExceededException;
+import me.braydon.license.exception.LicenseIpLimitExceededException;
+import me.braydon.license.exception.LicenseNotFoundException;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseBinding;
+import me.braydon.license.model.LicenseUse;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * The storage of {@link License}s and their {@link LicenseBinding}s.
+ * <p>
+ * The services only ever go through this, so the storage can
+ * be swapped out. MongoDB is used by default, and the embedded
+ * profile stores licenses on the local disk instead, for small
+ * deployments that don't want to run MongoDB.
+ * </p>
+ *
+ * @author Braydon
+ * @see MongoLicenseStore for the MongoDB store
+ * @see EmbeddedLicenseStore for the embedded store
+ */
+public interface LicenseStore {
+    /**
+     * Prepare this store, before any licenses are checked.
+     * <p>
+     * This is run by a startup step, and is retried if it fails.
+     * </p>
+     */
+    void initialize();
+    
+    /**
+     * Get the license with the given key.
+     *
+     * @param key the key of the license
+     * @return the optional license
+     * @see License for license
+     */
+    @NonNull
+    Optional<License> findById(@NonNull String key);
+    
+    /**
+     * Get the license that has the given
+     * key and is for the given product.
+     *
+     * @param key     the key to get
+     * @param product the product the key is for
+     * @return the optional license
+     * @see License for license
+     */
+    @NonNull
+    Optional<License> getLicense(@NonNull String key, @NonNull String product);
+    
+    /**
+     * Get the fields a check needs of the license
+     * that has the given key and is for the given product.
+     *
+     * @param key     the key to get
+     * @param product the product the key is for
+     * @return the optional license
+     * @see LicenseRepository#CHECK_FIELDS for the fields
+     * @see License for license
+     */
+    @NonNull
+    Optional<License> getCheckLicense(@NonNull String key, @NonNull String product);
+    
+    /**
+     * Get the fields a check needs of the
+     * licenses that have the given keys.
+     *
+     * @param keys the keys to get
+     * @return the found licenses
+     * @see LicenseRepository#CHECK_FIELDS for the fields
+     * @see License for license
+     */
+    @NonNull
+    List<License> getCheckLicenses(@NonNull Collection<String> keys);
+    
+    /**
+     * Get the amount of stored licenses.
+     *
+     * @return the amount of licenses
+     */
+    long count();
+    
+    /**
+     * Check if any licenses are still stored
+     * with a legacy BCrypt hashed key.
+     *
+     * @return true if there are legacy keys, otherwise false
+     */
+    boolean hasLegacyKeys();
+    
+    /**
+     * Insert the given license.
+     *
+     * @param license the license to insert
+     * @return the inserted license
+     * @throws DuplicateKeyException if a license with the same key exists
+     * @see License for license
+     */
+    @NonNull
+    License insert(@NonNull License license);
+    
+    /**
+     * Insert the given licenses.
+     * <p>
+     * Licenses that already exist are skipped,
+     * the rest of the licenses are still inserted.
+     * </p>
+     *
+     * @param licenses the licenses to insert
+     * @return the licenses that were inserted
+     * @see License for license
+     */
+    @NonNull
+    List<License> insertAll(@NonNull List<License> licenses);
+    
+    /**
+     * Remove the license with the given key,
+     * but not its bindings.
+     *
+     * @param key the key of the license
+     */
+    void deleteById(@NonNull String key);
+    
+    /**
+     * Find out which of the given IP and hardware id
+     * are already bound to the license with the given key.
+     *
+     * @param key      the key of the license
+     * @param hashedIp the hashed ip used
+     * @param hwid     the hardware id used
+     * @return the types of the bindings that exist
+     * @see LicenseBinding for bindings
+     */
+    @NonNull
+    Set<LicenseBinding.Type> findBindings(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid);
+    
+    /**
+     * Find out which of the given IP and hardware id are
+     * already bound to each of the licenses with the given keys.
+     *
+     * @param keys     the keys of the licenses
+     * @param hashedIp the hashed ip used
+     * @param hwid     the hardware id used
+     * @return the types of the bindings that exist, keyed by the license key
+     * @see LicenseBinding for bindings
+     */
+    @NonNull
+    Map<String, Set<LicenseBinding.Type>> findBindings(@NonNull Collection<String> keys, @NonNull String hashedIp,
+                                                       @NonNull String hwid);
+    
+    /**
+     * Atomically bind the given new IP and/or hardware id
+     * to the license with the given key, if its limits allow it.
+     * <p>
+     * Either every new binding is added and counted,
+     * or none are.
+     * </p>
+     *
+     * @param key      the key of the license
+     * @param hashedIp the hashed ip used
+     * @param hwid     the hardware id used
+     * @param newIp    whether the IP is new to the license
+     * @param newHwid  whether the HWID is new to the license
+     * @throws LicenseIpLimitExceededException if the IP limit has been reached
+     * @throws LicenseHwidLimitExceededException if the HWID limit has been reached
+     * @throws LicenseNotFoundException if the license is gone
+     * @see LicenseBinding for bindings
+     */
+    void bind(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid, boolean newIp, boolean newHwid)
+        throws APIException;
+    
+    /**
+     * Clear the IPs and/or HWIDs of
+     * the license with the given key.
+     *
+     * @param key        the key of the license
+     * @param clearIps   whether to clear the IPs
+     * @param clearHwids whether to clear the HWIDs
+     */
+    void clearBindings(@NonNull String key, boolean clearIps, boolean clearHwids);
+    
+    /**
+     * Move the bindings of a license to a new
+     * key, such as when a legacy key is migrated.
+     *
+     * @param from the old key of the license
+     * @param to   the new key of the license
+     */
+    void moveBindings(@NonNull String from, @NonNull String to);
+    
+    /**
+     * Move the IPs and HWIDs of any licenses that still
+     * store them in arrays to their own bindings.
+     *
+     * @return the amount of licenses migrated
+     * @see LicenseBinding for bindings
+     */
+    long migrateBindings();
+    
+    /**
+     * Insert the given bindings, skipping any that already exist.
+     * <p>
+     * The binding counts of the licenses aren't updated.
+     * </p>
+     *
+     * @param bindings the bindings to insert
+     * @see LicenseBinding for bindings
+     */
+    void insertBindings(@NonNull List<LicenseBinding> bindings);
+    
+    /**
+     * Stream the bindings of the licenses with the given keys.
+     * <p>
+     * The stream must be closed once done.
+     * </p>
+     *
+     * @param keys the keys of the licenses
+     * @return the stream of bindings
+     * @see LicenseBinding for bindings
+     */
+    @NonNull
+    Stream<LicenseBinding> streamBindings(@NonNull Collection<String> keys);
+    
+    /**
+     * Atomically record a use of the license with the given key.
+     * <p>
+     * The uses are incremented and the last used date is set.
+     * The IP and HWID must have been bound beforehand.
+     * </p>
+     *
+     * @param key     the key of the license
+     * @param product the product the license is for
+     * @return the fields a check needs of the updated license, empty if it wasn't found
+     * @see License for license
+     */
+    @NonNull
+    Optional<License> use(@NonNull String key, @NonNull String product);
+    
+    /**
+     * Record a use of each of the licenses with the given keys.
+     *
+     * @param keys the keys of the licenses
+     * @return the fields a check needs of the licenses after the write, keyed by their key
+     * @see License for license
+     */
+    @NonNull
+    Map<String, License> useAll(@NonNull Collection<String> keys);
+    
+    /**
+     * Add the given uses to their licenses.
+     * <p>
+     * The last used date of a license is only moved
+     * forward. Licenses that are gone are skipped.
+     * </p>
+     *
+     * @param uses the uses to add
+     * @see LicenseUse for uses
+     */
+    void addUses(@NonNull List<LicenseUse> uses);
+    
+    /**
+     * Stream all licenses, reading the
+     * given amount of licenses at a time.
+     * <p>
+     * The stream must be closed once done.
+     * </p>
+     *
+     * @param batchSize the amount of licenses per batch
+     * @return the stream of licenses
+     * @see License for license
+     */
+    @NonNull
+    Stream<License> streamAll(int batchSize);
+    
+    /**
+     * Stream a page of the licenses matching the
+     * given query, in the order of their key.
+     * <p>
+     * The page starts after the cursor of the query. Only
+     * the {@link LicenseRepository#QUERY_FIELDS} are returned.
+     * The stream must be closed once done.
+     * </p>
+     *
+     * @param query     the query to match
+     * @param limit     the maximum amount of licenses to stream
+     * @param batchSize the amount of licenses per batch
+     * @return the stream of licenses
+     * @see License for license
+     */
+    @NonNull
+    Stream<License> streamQuery(@NonNull LicenseQueryDTO query, int limit, int batchSize);
+    
+    /**
+     * Stream the keys of all licenses, reading
+     * the given amount of keys at a time.
+     * <p>
+     * The stream must be closed once done.
+     * </p>
+     *
+     * @param batchSize the amount of keys per batch
+     * @return the stream of keys
+     * @see License for license
+     */
+    @NonNull
+    Stream<String> streamKeys(int batchSize);
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import lombok.NonNull;
+import me.braydon.license.dto.LicenseQueryDTO;
+import me.braydon.license.exception.APIException;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseBinding;
+import me.braydon.license.model.LicenseUse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * The {@link LicenseStore} backed by MongoDB.
+ * <p>
+ * This is the default store, every operation
+ * is done by the {@link LicenseRepository}.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Repository
+@Profile("!embedded")
+public class MongoLicenseStore implements LicenseStore {
+    /**
+     * The {@link LicenseRepository} to use.
+     */
+    @NonNull private final LicenseRepository repository;
+    
+    @Autowired
+    public MongoLicenseStore(@NonNull LicenseRepository repository) {
+        this.repository = repository;
+    }
+    
+    /**
+     * Create the indexes, as auto index
+     * creation would block the boot.
+     */
+    @Override
+    public void initialize() {
+        repository.createIndexes();
+    }
+    
+    @Override @NonNull
+    public Optional<License> findById(@NonNull String key) {
+        return repository.findById(key);
+    }
+    
+    @Override @NonNull
+    public Optional<License> getLicense(@NonNull String key, @NonNull String product) {
+        return repository.getLicense(key, product);
+    }
+    
+    @Override @NonNull
+    public Optional<License> getCheckLicense(@NonNull String key, @NonNull String product) {
+        return repository.getCheckLicense(key, product);
+    }
+    
+    @Override @NonNull
+    public List<License> getCheckLicenses(@NonNull Collection<String> keys) {
+        return repository.getCheckLicenses(keys);
+    }
+    
+    @Override
+    public long count() {
+        return repository.count();
+    }
+    
+    @Override
+    public boolean hasLegacyKeys() {
+        return repository.hasLegacyKeys();
+    }
+    
+    @Override @NonNull
+    public License insert(@NonNull License license) {
+        return repository.insert(license);
+    }
+    
+    @Override @NonNull
+    public List<License> insertAll(@NonNull List<License> licenses) {
+        return repository.insertAll(licenses);
+    }
+    
+    @Override
+    public void deleteById(@NonNull String key) {
+        repository.deleteById(key);
+    }
+    
+    @Override @NonNull
+    public Set<LicenseBinding.Type> findBindings(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid) {
+        return repository.findBindings(key, hashedIp, hwid);
+    }
+    
+    @Override @NonNull
+    public Map<String, Set<LicenseBinding.Type>> findBindings(@NonNull Collection<String> keys, @NonNull String hashedIp,
+                                                              @NonNull String hwid) {
+        return repository.findBindings(keys, hashedIp, hwid);
+    }
+    
+    @Override
+    public void bind(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid, boolean newIp, boolean newHwid)
+        throws APIException {
+        repository.bind(key, hashedIp, hwid, newIp, newHwid);
+    }
+    
+    @Override
+    public void clearBindings(@NonNull String key, boolean clearIps, boolean clearHwids) {
+        repository.clearBindings(key, clearIps, clearHwids);
+    }
+    
+    @Override
+    public void moveBindings(@NonNull String from, @NonNull String to) {
+        repository.moveBindings(from, to);
+    }
+    
+    @Override
+    public long migrateBindings() {
+        return repository.migrateBindings();
+    }
+    
+    @Override
+    public void insertBindings(@NonNull List<LicenseBinding> bindings) {
+        repository.insertBindings(bindings);
+    }
+    
+    @Override @NonNull
+    public Stream<LicenseBinding> streamBindings(@NonNull Collection<String> keys) {
+        return repository.streamBindings(keys);
+    }
+    
+    @Override @NonNull
+    public Optional<License> use(@NonNull String key, @NonNull String product) {
+        return repository.use(key, product);
+    }
+    
+    @Override @NonNull
+    public Map<String, License> useAll(@NonNull Collection<String> keys) {
+        return repository.useAll(keys);
+    }
+    
+    @Override
+    public void addUses(@NonNull List<LicenseUse> uses) {
+        repository.addUses(uses);
+    }
+    
+    @Override @NonNull
+    public Stream<License> streamAll(int batchSize) {
+        return repository.streamAll(batchSize);
+    }
+    
+    @Override @NonNull
+    public Stream<License> streamQuery(@NonNull LicenseQueryDTO query, int limit, int batchSize) {
+        return repository.streamQuery(query, limit, batchSize);
+    }
+    
+    @Override @NonNull
+    public Stream<String> streamKeys(int batchSize) {
+        return repository.streamKeys(batchSize);
+    }
+}
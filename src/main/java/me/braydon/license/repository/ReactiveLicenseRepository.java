@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import lombok.NonNull;
+import me.braydon.license.model.License;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * The non-blocking counterpart of the {@link LicenseRepository},
+ * only used by the check pipeline of the reactive profile.
+ *
+ * @author Braydon
+ */
+@Repository
+public interface ReactiveLicenseRepository extends ReactiveMongoRepository<License, String>, ReactiveLicenseRepositoryCustom {
+    /**
+     * Get the fields a check needs of the license
+     * that has the given key and is for the given product.
+     *
+     * @param key     the key to get
+     * @param product the product the key is for
+     * @return the license, empty if not found
+     * @see LicenseRepository#CHECK_FIELDS for the fields
+     * @see License for license
+     */
+    @Query(value = "{ key: ?0, product: ?1 }", fields = LicenseRepository.CHECK_FIELDS)
+    Mono<License> getCheckLicense(@NonNull String key, @NonNull String product);
+}
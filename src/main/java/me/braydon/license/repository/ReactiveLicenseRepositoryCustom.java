@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import lombok.NonNull;
+import me.braydon.license.exception.LicenseHwidLimitExceededException;
+import me.braydon.license.exception.LicenseIpLimitExceededException;
+import me.braydon.license.exception.LicenseNotFoundException;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseBinding;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+
+/**
+ * Custom operations for the {@link ReactiveLicenseRepository}.
+ * <p>
+ * These behave exactly like their counterparts
+ * in the {@link LicenseRepositoryCustom}.
+ * </p>
+ *
+ * @author Braydon
+ */
+public interface ReactiveLicenseRepositoryCustom {
+    /**
+     * Find out which of the given IP and hardware id
+     * are already bound to the license with the given key.
+     *
+     * @param key      the key of the license
+     * @param hashedIp the hashed ip used
+     * @param hwid     the hardware id used
+     * @return the types of the bindings that exist
+     * @see LicenseRepositoryCustom#findBindings(String, String, String)
+     */
+    @NonNull
+    Mono<Set<LicenseBinding.Type>> findBindings(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid);
+    
+    /**
+     * Bind the given new IP and/or hardware id to
+     * the license with the given key, if its limits allow it.
+     * <p>
+     * Fails with a {@link LicenseIpLimitExceededException} or
+     * {@link LicenseHwidLimitExceededException} if a limit has been
+     * reached, or a {@link LicenseNotFoundException} if the license is gone.
+     * </p>
+     *
+     * @param key      the key of the license
+     * @param hashedIp the hashed ip used
+     * @param hwid     the hardware id used
+     * @param newIp    whether the IP is new to the license
+     * @param newHwid  whether the HWID is new to the license
+     * @return completes once bound
+     * @see LicenseRepositoryCustom#bind(String, String, String, boolean, boolean)
+     */
+    @NonNull
+    Mono<Void> bind(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid, boolean newIp, boolean newHwid);
+    
+    /**
+     * Record a use of the license with the
+     * given key that is for the given product.
+     *
+     * @param key     the key of the license
+     * @param product the product the license is for
+     * @return the updated license, empty if it's gone
+     * @see LicenseRepositoryCustom#use(String, String)
+     * @see License for license
+     */
+    @NonNull
+    Mono<License> use(@NonNull String key, @NonNull String product);
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import lombok.NonNull;
+import me.braydon.license.exception.LicenseHwidLimitExceededException;
+import me.braydon.license.exception.LicenseIpLimitExceededException;
+import me.braydon.license.exception.LicenseNotFoundException;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseBinding;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The implementation of the {@link ReactiveLicenseRepositoryCustom} operations.
+ *
+ * @author Braydon
+ * @see LicenseRepositoryImpl for the blocking implementation
+ */
+public class ReactiveLicenseRepositoryImpl implements ReactiveLicenseRepositoryCustom {
+    /**
+     * The {@link ReactiveMongoTemplate} to use.
+     */
+    @NonNull private final ReactiveMongoTemplate mongoTemplate;
+    
+    @Autowired
+    public ReactiveLicenseRepositoryImpl(@NonNull ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+    
+    @Override @NonNull
+    public Mono<Set<LicenseBinding.Type>> findBindings(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid) {
+        Document filter = new Document("license", key)
+                              .append("$or", List.of(
+                                  new Document("type", LicenseBinding.Type.IP.name()).append("value", hashedIp),
+                                  new Document("type", LicenseBinding.Type.HWID.name()).append("value", hwid)
+                              ));
+        return mongoTemplate.find(new BasicQuery(filter), LicenseBinding.class)
+                   .map(LicenseBinding::getType)
+                   .collect(() -> EnumSet.noneOf(LicenseBinding.Type.class), Set::add);
+    }
+    
+    @Override @NonNull
+    public Mono<Void> bind(@NonNull String key, @NonNull String hashedIp, @NonNull String hwid, boolean newIp, boolean newHwid) {
+        Mono<Boolean> boundIp = newIp ? reserve(key, LicenseBinding.Type.IP, hashedIp, "ipCount", "ipLimit") : Mono.just(false);
+        if (!newHwid) {
+            return boundIp.then();
+        }
+        return boundIp.flatMap(ipBound -> reserve(key, LicenseBinding.Type.HWID, hwid, "hwidCount", "hwidLimit")
+                                              .onErrorResume(ex -> ipBound // Undo the IP binding, the use isn't allowed
+                                                                       ? release(key, LicenseBinding.Type.IP, hashedIp, "ipCount").then(Mono.error(ex))
+                                                                       : Mono.error(ex)))
+                   .then();
+    }
+    
+    @Override @NonNull
+    public Mono<License> use(@NonNull String key, @NonNull String product) {
+        BasicQuery query = new BasicQuery(new Document("_id", key).append("product", product), LicenseRepositoryImpl.CHECK_FIELDS);
+        return mongoTemplate.findAndModify(query, LicenseRepositoryImpl.useUpdate(),
+            FindAndModifyOptions.options().returnNew(true), License.class
+        );
+    }
+    
+    /**
+     * Bind the given value to the license with the
+     * given key, and count it against its limit.
+     *
+     * @param key   the key of the license
+     * @param type  the type of the binding
+     * @param value the value of the binding
+     * @param count the name of the count field
+     * @param limit the name of the limit field
+     * @return true if the binding was added, false if it already existed
+     */
+    @NonNull
+    private Mono<Boolean> reserve(@NonNull String key, @NonNull LicenseBinding.Type type, @NonNull String value,
+                                  @NonNull String count, @NonNull String limit) {
+        return mongoTemplate.insert(new LicenseBinding(key, type, value))
+                   .thenReturn(true)
+                   .onErrorResume(DuplicateKeyException.class, ex -> Mono.just(false)) // Someone else bound it already
+                   .flatMap(inserted -> !inserted ? Mono.just(false) : mongoTemplate.updateFirst(
+                       LicenseRepositoryImpl.roomQuery(key, count, limit), new Update().inc(count, 1), License.class
+                   ).flatMap(result -> result.getMatchedCount() > 0L ? Mono.just(true) : overLimit(key, type, value)));
+    }
+    
+    /**
+     * Remove the given binding as its limit was
+     * reached, and fail with the reason why.
+     *
+     * @param key   the key of the license
+     * @param type  the type of the binding
+     * @param value the value of the binding
+     * @return the failure
+     */
+    @NonNull
+    private Mono<Boolean> overLimit(@NonNull String key, @NonNull LicenseBinding.Type type, @NonNull String value) {
+        return mongoTemplate.remove(LicenseRepositoryImpl.bindingQuery(key, type, value), LicenseBinding.class)
+                   .then(mongoTemplate.exists(new BasicQuery(new Document("_id", key)), License.class))
+                   .flatMap(exists -> Mono.error(!exists ? new LicenseNotFoundException() // The license was removed
+                                                     : type == LicenseBinding.Type.IP ? new LicenseIpLimitExceededException()
+                                                           : new LicenseHwidLimitExceededException()));
+    }
+    
+    /**
+     * Remove the given binding from the license with
+     * the given key, and stop counting it against its limit.
+     *
+     * @param key   the key of the license
+     * @param type  the type of the binding
+     * @param value the value of the binding
+     * @param count the name of the count field
+     * @return completes once released
+     */
+    @NonNull
+    private Mono<Void> release(@NonNull String key, @NonNull LicenseBinding.Type type, @NonNull String value, @NonNull String count) {
+        return mongoTemplate.remove(LicenseRepositoryImpl.bindingQuery(key, type, value), LicenseBinding.class)
+                   .filter(result -> result.getDeletedCount() > 0L)
+                   .flatMap(result -> mongoTemplate.updateFirst(new BasicQuery(new Document("_id", key)),
+                       new Update().inc(count, -1), License.class
+                   ))
+                   .then();
+    }
+}
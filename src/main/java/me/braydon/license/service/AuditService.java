@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import me.braydon.license.common.RingBuffer;
+import me.braydon.license.dto.AuditDayDTO;
+import me.braydon.license.exception.APIException;
+import me.braydon.license.model.AuditEvent;
+import me.braydon.license.model.AuditRollup;
+import me.braydon.license.repository.LicenseRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The service responsible for the audit
+ * log of every license check.
+ * <p>
+ * Checks only offer their outcome to a lock-free ring buffer,
+ * which is drained in the background. Hashing the key and IP,
+ * and writing the events, all happen off the request thread,
+ * so auditing never slows a check down. When the buffer is
+ * full, the outcome is dropped and counted instead.
+ * </p>
+ * <p>
+ * As events are written, they're also rolled up into a
+ * document per product and day, so reports never have to
+ * aggregate the events themselves.
+ * </p>
+ * <p>
+ * The audit log is kept in MongoDB, so auditing is
+ * disabled when licenses are stored embedded.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service
+@Slf4j(topic = "Audit")
+public final class AuditService implements MeterBinder {
+    /**
+     * The {@link LicenseRepository} to write events with,
+     * null if licenses are stored embedded.
+     */
+    private final LicenseRepository repository;
+    
+    /**
+     * The {@link HashingService} to hash keys and IPs with.
+     */
+    @NonNull private final HashingService hashingService;
+    
+    /**
+     * Should checks be audited?
+     */
+    @Getter private final boolean enabled;
+    
+    /**
+     * The maximum amount of events to write in a single bulk write.
+     */
+    private final int batchSize;
+    
+    /**
+     * The amount of days to keep events for.
+     */
+    private final long retention;
+    
+    /**
+     * The checks that haven't been written yet.
+     */
+    @NonNull private final RingBuffer<Check> buffer;
+    
+    /**
+     * Has the audit collection been created?
+     * <p>
+     * Until then, checks are only buffered, as writing
+     * would create it as a regular collection.
+     * </p>
+     */
+    private volatile boolean initialized;
+    
+    /**
+     * The amount of events that were written.
+     */
+    @NonNull private final AtomicLong written = new AtomicLong();
+    
+    /**
+     * The amount of events that were dropped, as
+     * the buffer was full or they failed to write.
+     */
+    @NonNull private final AtomicLong dropped = new AtomicLong();
+    
+    @Autowired
+    public AuditService(@NonNull ObjectProvider<LicenseRepository> repository, @NonNull HashingService hashingService,
+                        @Value("${audit.enabled}") boolean enabled, @Value("${audit.buffer-size}") int bufferSize,
+                        @Value("${audit.batch-size}") int batchSize, @Value("${audit.retention}") long retention) {
+        this.repository = repository.getIfAvailable();
+        this.hashingService = hashingService;
+        this.enabled = enabled && this.repository != null; // The audit log needs MongoDB
+        this.batchSize = Math.max(batchSize, 1);
+        this.retention = Math.max(retention, 1L);
+        buffer = new RingBuffer<>(this.enabled ? bufferSize : 1);
+        if (enabled && this.repository == null) {
+            log.warn("Auditing is enabled, but licenses aren't stored in MongoDB, so checks won't be audited");
+        }
+    }
+    
+    /**
+     * Create the audit collection, if needed.
+     */
+    public void onInitialize() {
+        if (enabled) {
+            repository.createAuditCollection(retention);
+        }
+        initialized = true;
+    }
+    
+    @PreDestroy
+    public void onShutdown() {
+        flush();
+    }
+    
+    /**
+     * Record a successful check.
+     *
+     * @param key     the raw key that was checked
+     * @param product the product of the license
+     * @param ip      the ip the check came from
+     * @param hwid    the hwid the check came from
+     * @param started the {@link System#nanoTime()} the check started at
+     */
+    public void recordSuccess(@NonNull String key, @NonNull String product, @NonNull String ip, @NonNull String hwid,
+                              long started) {
+        record(key, product, ip, hwid, HttpStatus.OK.value(), started);
+    }
+    
+    /**
+     * Record a check that failed with the given exception.
+     * <p>
+     * The product is only recorded if the exception
+     * means the license exists, like the metrics, so
+     * made up products can't create rollups.
+     * </p>
+     *
+     * @param ex      the exception the check failed with
+     * @param key     the raw key that was checked, null if unknown
+     * @param product the product that was requested, null if unknown
+     * @param ip      the ip the check came from
+     * @param hwid    the hwid the check came from, null if unknown
+     * @param started the {@link System#nanoTime()} the check started at
+     */
+    public void recordFailure(@NonNull APIException ex, String key, String product, @NonNull String ip, String hwid,
+                              long started) {
+        record(key, MetricsService.Outcome.of(ex).isLicenseFound() ? product : null, ip, hwid, ex.getStatus().value(), started);
+    }
+    
+    /**
+     * Write the recorded checks to the audit log,
+     * and add them to the rollups of their day.
+     * <p>
+     * Only the checks that were recorded before the
+     * flush started are written, so a flush always ends.
+     * Events that fail to write are dropped.
+     * </p>
+     */
+    @Scheduled(fixedDelayString = "${audit.flush-interval}", timeUnit = TimeUnit.SECONDS)
+    public synchronized void flush() {
+        if (!initialized) { // The audit collection doesn't exist yet
+            return;
+        }
+        long started = System.currentTimeMillis();
+        List<AuditEvent> events = new ArrayList<>(batchSize);
+        Map<String, AuditRollup> rollups = new HashMap<>();
+        long total = 0L;
+        int remaining = buffer.size(); // Only the checks recorded before this flush
+        while (remaining > 0) {
+            int drained = buffer.drain(check -> {
+                events.add(toEvent(check));
+                rollUp(rollups, check);
+            }, Math.min(batchSize, remaining));
+            if (drained == 0) { // Still being published
+                break;
+            }
+            remaining -= drained;
+            try {
+                repository.insertAuditEvents(events);
+                total += drained;
+            } catch (Exception ex) {
+                log.warn("Failed to write {} audit events, dropping them: {}", drained, ex.getMessage());
+                dropped.addAndGet(drained);
+            }
+            events.clear();
+        }
+        if (rollups.isEmpty()) { // Nothing was recorded
+            return;
+        }
+        try {
+            repository.addAuditRollups(rollups.values());
+        } catch (Exception ex) {
+            log.warn("Failed to update {} audit rollups: {}", rollups.size(), ex.getMessage());
+        }
+        written.addAndGet(total);
+        log.debug("Wrote {} audit events in {}ms", total, System.currentTimeMillis() - started);
+    }
+    
+    /**
+     * Get the checks per day between the given days.
+     *
+     * @param product the product to get the checks of, null for all
+     * @param from    the first day, inclusive
+     * @param to      the last day, inclusive
+     * @return the checks per day and product
+     */
+    @NonNull
+    public List<AuditDayDTO> getDays(String product, @NonNull LocalDate from, @NonNull LocalDate to) {
+        List<AuditDayDTO> days = new ArrayList<>();
+        if (repository == null) { // No audit log
+            return days;
+        }
+        for (AuditRollup rollup : repository.findAuditRollups(product, from, to)) {
+            days.add(new AuditDayDTO(
+                rollup.getProduct(),
+                LocalDate.ofInstant(rollup.getDay().toInstant(), ZoneOffset.UTC),
+                rollup.getChecks(),
+                rollup.getStatuses().getOrDefault(String.valueOf(HttpStatus.OK.value()), 0L),
+                rollup.getChecks() == 0L ? 0L : rollup.getLatency() / rollup.getChecks(),
+                rollup.getStatuses()
+            ));
+        }
+        return days;
+    }
+    
+    /**
+     * Bind the audit metrics to the given registry.
+     *
+     * @param registry the registry to bind to
+     */
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("license.audit.pending", buffer, RingBuffer::size)
+            .description("The amount of checks that haven't been written to the audit log yet")
+            .register(registry);
+        FunctionCounter.builder("license.audit.written", written, AtomicLong::get)
+            .description("The amount of events written to the audit log")
+            .register(registry);
+        FunctionCounter.builder("license.audit.dropped", dropped, AtomicLong::get)
+            .description("The amount of checks dropped from the audit log, as the buffer was full or the write failed")
+            .register(registry);
+    }
+    
+    /**
+     * Record the outcome of a check.
+     *
+     * @param key     the raw key that was checked, null if unknown
+     * @param product the product of the license, null if not found
+     * @param ip      the ip the check came from
+     * @param hwid    the hwid the check came from, null if unknown
+     * @param status  the HTTP status the check was answered with
+     * @param started the {@link System#nanoTime()} the check started at
+     */
+    private void record(String key, String product, @NonNull String ip, String hwid, int status, long started) {
+        if (!enabled) {
+            return;
+        }
+        long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+        if (!buffer.offer(new Check(System.currentTimeMillis(), key, product, ip, hwid, status, latency))) {
+            dropped.incrementAndGet(); // The buffer is full
+        }
+    }
+    
+    /**
+     * Create the event to write for the given check.
+     *
+     * @param check the check
+     * @return the event
+     */
+    @NonNull
+    private AuditEvent toEvent(@NonNull Check check) {
+        return new AuditEvent(
+            new Date(check.timestamp()),
+            check.product(),
+            check.key() == null ? null : hashingService.indexKey(check.key()),
+            hashingService.indexIp(check.ip()),
+            check.hwid(),
+            check.status(),
+            check.latency()
+        );
+    }
+    
+    /**
+     * Add the given check to the rollup of its product and day.
+     *
+     * @param rollups the rollups to add to, keyed by id
+     * @param check   the check
+     */
+    private static void rollUp(@NonNull Map<String, AuditRollup> rollups, @NonNull Check check) {
+        LocalDate day = LocalDate.ofInstant(Instant.ofEpochMilli(check.timestamp()), ZoneOffset.UTC);
+        String product = check.product() == null ? MetricsService.NO_PRODUCT : check.product();
+        rollups.computeIfAbsent(product + "/" + day, id -> AuditRollup.of(product, day)).add(check.status(), check.latency());
+    }
+    
+    /**
+     * A check that hasn't been written yet.
+     *
+     * @param timestamp the unix time of the check
+     * @param key       the raw key that was checked, null if unknown
+     * @param product   the product of the license, null if not found
+     * @param ip        the ip the check came from
+     * @param hwid      the hwid the check came from, null if unknown
+     * @param status    the HTTP status the check was answered with
+     * @param latency   the amount of microseconds the check took
+     */
+    private record Check(long timestamp, String key, String product, @NonNull String ip, String hwid, int status,
+                         long latency) { }
+}
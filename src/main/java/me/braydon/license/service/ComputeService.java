@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import me.braydon.license.exception.APIException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The service responsible for running
+ * CPU bound work, such as BCrypt and RSA.
+ * <p>
+ * This work runs on a bounded pool of platform threads,
+ * so a burst of checks can only ever keep as many threads
+ * busy hashing as the pool allows. Request threads (which
+ * may be virtual) simply wait for the result, and are free
+ * to handle I/O in the meantime. If the queue of the pool
+ * is full, the work is rejected instead of piling up.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service
+@Slf4j(topic = "Compute")
+public final class ComputeService implements MeterBinder {
+    /**
+     * The pool running the work.
+     */
+    @NonNull private final ThreadPoolExecutor executor;
+    
+    /**
+     * The amount of work that was rejected due to a full queue.
+     */
+    @NonNull private final AtomicLong rejected = new AtomicLong();
+    
+    public ComputeService(@Value("${compute.threads}") int threads, @Value("${compute.queue-capacity}") int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadId = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> new ComputeThread(runnable, "Compute Thread #" + threadId.incrementAndGet())
+        );
+        log.info("Running CPU bound work on {} threads", poolSize);
+    }
+    
+    @PreDestroy
+    public void onShutdown() {
+        executor.shutdownNow();
+    }
+    
+    /**
+     * Run the given work on the pool and
+     * wait for the result.
+     * <p>
+     * If this is already called from the pool,
+     * the work is run on the calling thread.
+     * </p>
+     *
+     * @param work the work to run
+     * @return the result of the work
+     * @param <T> the result type
+     * @throws APIException if the pool is saturated
+     */
+    public <T> T run(@NonNull Supplier<T> work) throws APIException {
+        if (Thread.currentThread() instanceof ComputeThread) { // Already on the pool
+            return work.get();
+        }
+        Future<T> future;
+        try {
+            future = executor.submit(work::get);
+        } catch (RejectedExecutionException ex) { // The queue is full
+            rejected.incrementAndGet();
+            throw new APIException(HttpStatus.SERVICE_UNAVAILABLE, "Server is busy, please try again");
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new APIException(HttpStatus.SERVICE_UNAVAILABLE, "Server is shutting down");
+        } catch (ExecutionException ex) {
+            // Rethrow the original exception to the caller
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+    
+    /**
+     * Run the given work on the pool without
+     * waiting for the result.
+     * <p>
+     * This is for callers that must never block,
+     * such as the reactive check pipeline.
+     * </p>
+     *
+     * @param work the work to run
+     * @return the future result of the work, failed
+     *         with an {@link APIException} if the pool is saturated
+     * @param <T> the result type
+     */
+    @NonNull
+    public <T> CompletableFuture<T> submit(@NonNull Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, executor);
+        } catch (RejectedExecutionException ex) { // The queue is full
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(new APIException(HttpStatus.SERVICE_UNAVAILABLE, "Server is busy, please try again"));
+        }
+    }
+    
+    /**
+     * Bind the pool metrics to the given registry.
+     * <p>
+     * This includes the active thread count and the queue
+     * depth, along with the amount of rejected work.
+     * </p>
+     *
+     * @param registry the registry to bind to
+     */
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        new ExecutorServiceMetrics(executor, "compute", Tags.empty()).bindTo(registry);
+        FunctionCounter.builder("compute.rejected", rejected, AtomicLong::get)
+            .description("The amount of work rejected because the compute pool was saturated")
+            .register(registry);
+    }
+    
+    /**
+     * A thread of the compute pool.
+     */
+    private static final class ComputeThread extends Thread {
+        ComputeThread(@NonNull Runnable runnable, @NonNull String name) {
+            super(runnable, name);
+            setDaemon(true);
+        }
+    }
+}
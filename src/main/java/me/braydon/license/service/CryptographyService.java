@@ -5,33 +5,105 @@
  */
 package me.braydon.license.service;
 
-import lombok.Getter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gson.JsonParseException;
 import lombok.NonNull;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import me.braydon.license.LicenseServer;
 import me.braydon.license.common.CryptographyUtils;
+import me.braydon.license.common.RSADecryptor;
+import me.braydon.license.dto.*;
+import me.braydon.license.exception.APIException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Braydon
  */
 @Service
 @Slf4j(topic = "Cryptography")
-@Getter
 public final class CryptographyService {
     /**
-     * Our {@link KeyPair}.
+     * Our key pair and the decryptor bound to it,
+     * null until {@link #loadKeys()} is called.
      */
-    @NonNull private final KeyPair keyPair;
+    private volatile Keys keys;
     
+    /**
+     * The {@link ComputeService} to run RSA on.
+     */
+    @NonNull private final ComputeService computeService;
+    
+    /**
+     * The maximum amount of idle ciphers to pool.
+     */
+    private final int cipherPoolSize;
+    
+    /**
+     * The amount of milliseconds an envelope is accepted for,
+     * either side of the timestamp it was sent at.
+     */
+    private final long nonceWindow;
+    
+    /**
+     * The maximum amount of nonces to remember.
+     */
+    private final long maxNonces;
+    
+    /**
+     * The nonces of recently opened envelopes.
+     * <p>
+     * This is used to reject envelopes that have already been
+     * used. Envelopes are accepted for the nonce window either
+     * side of their timestamp, so a nonce is remembered for
+     * twice the window, until its envelope is rejected by its
+     * timestamp. Nonces are never forgotten before then, as that
+     * would let a flood of unique nonces push out a captured one
+     * so it can be replayed, so once {@link #maxNonces} are
+     * remembered, envelopes are refused instead.
+     * </p>
+     */
+    @NonNull private final Cache<String, Boolean> usedNonces;
+    
+    public CryptographyService(@NonNull ComputeService computeService, @Value("${crypto.cipher-pool-size}") int cipherPoolSize,
+                               @Value("${crypto.nonce-window}") long nonceWindow, @Value("${crypto.max-nonces}") long maxNonces) {
+        this.computeService = computeService;
+        this.cipherPoolSize = cipherPoolSize;
+        this.nonceWindow = TimeUnit.MINUTES.toMillis(nonceWindow);
+        this.maxNonces = maxNonces;
+        usedNonces = CacheBuilder.newBuilder()
+                         .expireAfterWrite(nonceWindow * 2L, TimeUnit.MINUTES)
+                         .build();
+    }
+    
+    /**
+     * Load our key pair from disk, generating
+     * a new one if it doesn't exist yet.
+     * <p>
+     * Generating a key pair is slow, so this is run
+     * by the {@link StartupService} rather than on boot.
+     * </p>
+     */
     @SneakyThrows
-    public CryptographyService() {
+    public synchronized void loadKeys() {
+        if (keys != null) { // Already loaded
+            return;
+        }
+        KeyPair keyPair;
         File publicKeyFile = new File("public.key"); // The private key
         File privateKeyFile = new File("private.key"); // The private key
         if (!publicKeyFile.exists() || !privateKeyFile.exists()) { // Missing private key, generate new key pair.
@@ -40,11 +112,203 @@ public final class CryptographyService {
             writeKey(keyPair.getPrivate().getEncoded(), privateKeyFile); // Write our private key
             log.info("New key pair has been generated");
             log.info(Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
-            return;
+        } else {
+            // Load our private key from the file
+            keyPair = new KeyPair(CryptographyUtils.readPublicKey(publicKeyFile), CryptographyUtils.readPrivateKey(privateKeyFile));
+            log.info("Loaded private key from file " + privateKeyFile.getPath());
+        }
+        keys = new Keys(keyPair, new RSADecryptor(keyPair.getPrivate(), cipherPoolSize));
+    }
+    
+    /**
+     * Get our key pair.
+     *
+     * @return the key pair
+     * @throws APIException if the keys haven't been loaded yet
+     */
+    @NonNull
+    public KeyPair getKeyPair() throws APIException {
+        return keys().keyPair();
+    }
+    
+    /**
+     * Decrypt the given input with our private key.
+     *
+     * @param input the Base64 encoded encrypted input
+     * @return the decrypted result
+     * @throws IllegalArgumentException if the input isn't valid Base64
+     */
+    @NonNull
+    public String decrypt(@NonNull String input) {
+        RSADecryptor decryptor = keys().decryptor();
+        return computeService.run(() -> decryptor.decrypt(input));
+    }
+    
+    /**
+     * Sign the given input with our private key.
+     *
+     * @param input the input to sign
+     * @return the SHA256withRSA signature
+     * @throws APIException if the compute pool is saturated
+     */
+    public byte[] sign(byte[] input) throws APIException {
+        KeyPair keyPair = keys().keyPair();
+        return computeService.run(() -> CryptographyUtils.sign(input, keyPair.getPrivate()));
+    }
+    
+    /**
+     * Open the given session encrypted envelope.
+     * <p>
+     * The session key is decrypted with our private key,
+     * and is then used to decrypt the payload. The product
+     * is authenticated with the payload, so an envelope can't
+     * be replayed for another product. Envelopes sent outside
+     * the nonce window are rejected, as their nonce may have
+     * been forgotten.
+     * </p>
+     *
+     * @param sessionKey the RSA encrypted session key
+     * @param payload    the session encrypted payload
+     * @param product    the product the envelope is for
+     * @return the decrypted payload
+     * @throws IllegalArgumentException if the envelope couldn't be decrypted
+     * @throws APIException if the envelope has already been used, or has expired
+     * @see LicenseCheckPayloadDTO for payload
+     */
+    @NonNull
+    public LicenseCheckPayloadDTO openEnvelope(@NonNull String sessionKey, @NonNull String payload,
+                                               @NonNull String product) throws APIException {
+        return openEnvelope(sessionKey, payload, product, LicenseCheckPayloadDTO.class);
+    }
+    
+    /**
+     * Open the given session encrypted envelope.
+     *
+     * @param sessionKey  the RSA encrypted session key
+     * @param payload     the session encrypted payload
+     * @param aad         the additional data authenticated with the payload
+     * @param payloadType the type of the payload
+     * @return the decrypted payload
+     * @param <T> the payload type
+     * @throws IllegalArgumentException if the envelope couldn't be decrypted
+     * @throws APIException if the envelope has already been used, or has expired
+     * @see EnvelopePayload for payload
+     */
+    @NonNull
+    public <T extends EnvelopePayload> T openEnvelope(@NonNull String sessionKey, @NonNull String payload,
+                                                      @NonNull String aad, @NonNull Class<T> payloadType) throws APIException {
+        RSADecryptor decryptor = keys().decryptor();
+        byte[] decrypted = computeService.run(() -> {
+            byte[] sessionKeyBytes = decryptor.decryptBytes(sessionKey); // Decrypt the session key
+            try {
+                return CryptographyUtils.decryptSessionPayload(sessionKeyBytes, Base64.getDecoder().decode(payload),
+                    aad.getBytes(StandardCharsets.UTF_8)
+                ); // Decrypt the payload
+            } finally {
+                Arrays.fill(sessionKeyBytes, (byte) 0);
+            }
+        });
+        T envelopePayload;
+        try {
+            envelopePayload = LicenseServer.GSON.fromJson(new String(decrypted, StandardCharsets.UTF_8), payloadType);
+        } catch (JsonParseException ex) {
+            throw new IllegalArgumentException("Malformed payload", ex);
+        }
+        if (envelopePayload == null || !envelopePayload.isValid()) {
+            throw new APIException(HttpStatus.BAD_REQUEST, "Invalid request body");
+        }
+        // Ensure the envelope was sent recently, the clocks may be off either way
+        if (Math.abs(System.currentTimeMillis() - envelopePayload.getTimestamp()) > nonceWindow) {
+            throw new APIException(HttpStatus.BAD_REQUEST, "Request has expired");
+        }
+        // Refuse the envelope if its nonce can't be remembered, rather than forgetting one still in the window
+        if (usedNonces.size() >= maxNonces) {
+            usedNonces.cleanUp(); // Drop the expired nonces first
+            if (usedNonces.size() >= maxNonces) {
+                throw new APIException(HttpStatus.SERVICE_UNAVAILABLE, "Server is busy, please try again");
+            }
+        }
+        // Ensure the envelope hasn't been used before
+        if (usedNonces.asMap().putIfAbsent(envelopePayload.getNonce(), Boolean.TRUE) != null) {
+            throw new APIException(HttpStatus.BAD_REQUEST, "Request has already been used");
         }
-        // Load our private key from the file
-        keyPair = new KeyPair(CryptographyUtils.readPublicKey(publicKeyFile), CryptographyUtils.readPrivateKey(privateKeyFile));
-        log.info("Loaded private key from file " + privateKeyFile.getPath());
+        return envelopePayload;
+    }
+    
+    /**
+     * Decrypt the key and hwid from the given check body.
+     *
+     * @param body the body of the request
+     * @return the decrypted key and hwid
+     * @throws APIException if the body couldn't be decrypted
+     */
+    @NonNull
+    public LicenseCheckPayloadDTO decrypt(@NonNull LicenseCheckBodyDTO body) throws APIException {
+        try {
+            if (body.isEnvelope()) { // Open the session encrypted envelope
+                return openEnvelope(
+                    body.getSessionKey(),
+                    body.getPayload(),
+                    body.getProduct()
+                );
+            }
+            return new LicenseCheckPayloadDTO(
+                decrypt(body.getKey()), // Decrypt our license key
+                decrypt(body.getHwid()), // Decrypt our hwid
+                null,
+                null
+            );
+        } catch (IllegalArgumentException ex) {
+            throw new APIException(HttpStatus.BAD_REQUEST, "Signature Error");
+        }
+    }
+    
+    /**
+     * Decrypt the hwid and licenses from the given batch check body.
+     *
+     * @param body the body of the request
+     * @return the decrypted hwid and licenses
+     * @throws APIException if the body couldn't be decrypted
+     */
+    @NonNull
+    public LicenseBatchCheckPayloadDTO decrypt(@NonNull LicenseBatchCheckBodyDTO body) throws APIException {
+        try {
+            if (body.isEnvelope()) { // Open the session encrypted envelope
+                return openEnvelope(
+                    body.getSessionKey(),
+                    body.getPayload(),
+                    LicenseBatchCheckBodyDTO.ENVELOPE_AAD,
+                    LicenseBatchCheckPayloadDTO.class
+                );
+            }
+            List<LicenseBatchEntryDTO> licenses = new ArrayList<>(body.getLicenses().size());
+            for (LicenseBatchEntryDTO entry : body.getLicenses()) {
+                licenses.add(new LicenseBatchEntryDTO(decrypt(entry.getKey()), entry.getProduct())); // Decrypt the license key
+            }
+            return new LicenseBatchCheckPayloadDTO(
+                decrypt(body.getHwid()), // Decrypt our hwid
+                null,
+                null,
+                licenses
+            );
+        } catch (IllegalArgumentException ex) {
+            throw new APIException(HttpStatus.BAD_REQUEST, "Signature Error");
+        }
+    }
+    
+    /**
+     * Get our loaded keys.
+     *
+     * @return the keys
+     * @throws APIException if the keys haven't been loaded yet
+     */
+    @NonNull
+    private Keys keys() throws APIException {
+        Keys keys = this.keys;
+        if (keys == null) {
+            throw new APIException(HttpStatus.SERVICE_UNAVAILABLE, "Server is starting, please try again");
+        }
+        return keys;
     }
     
     /**
@@ -60,4 +324,12 @@ public final class CryptographyService {
             ex.printStackTrace();
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * Our key pair and the decryptor bound to it.
+     *
+     * @param keyPair   the key pair
+     * @param decryptor the decryptor bound to the private key
+     */
+    private record Keys(@NonNull KeyPair keyPair, @NonNull RSADecryptor decryptor) { }
+}
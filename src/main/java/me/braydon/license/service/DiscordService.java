@@ -7,8 +7,13 @@ package me.braydon.license.service;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.SneakyThrows;
@@ -16,12 +21,14 @@ import lombok.extern.slf4j.Slf4j;
 import me.braydon.license.common.MiscUtils;
 import me.braydon.license.common.TimeUtils;
 import me.braydon.license.model.License;
-import me.braydon.license.repository.LicenseRepository;
+import me.braydon.license.repository.LicenseStore;
+import me.braydon.license.service.MetricsService.Stage;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.OnlineStatus;
 import net.dv8tion.jda.api.entities.Activity;
+import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
@@ -35,41 +42,61 @@ import net.dv8tion.jda.api.interactions.commands.build.Commands;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
 import net.dv8tion.jda.api.requests.ErrorResponse;
 import net.dv8tion.jda.api.requests.GatewayIntent;
-import org.mindrot.jbcrypt.BCrypt;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.awt.*;
-import java.util.HashSet;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.List;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * @author Braydon
  */
 @Service
 @Slf4j(topic = "Discord")
-public final class DiscordService {
+public final class DiscordService implements MeterBinder {
     private static final String CLEAR_IPS_BUTTON_ID = "clearIps";
     private static final String CLEAR_HWIDS_BUTTON_ID = "clearHwids";
+    private static final int MAX_DRAIN = 100; // The maximum amount of logs to dispatch at once
     
     /**
-     * The {@link LicenseRepository} to use.
+     * The {@link LicenseStore} to use.
      */
-    @Nonnull private final LicenseRepository licenseRepository;
+    @Nonnull private final LicenseStore licenseStore;
     
     /**
-     * The version of this Springboot application.
+     * The {@link LicenseService} to lookup licenses with.
+     * <p>
+     * This is provided lazily, as the
+     * license service depends on us.
+     * </p>
      */
-    @NonNull private final String applicationVersion = "n/a";
+    @NonNull private final ObjectProvider<LicenseService> licenseService;
+    
+    /**
+     * The {@link LicenseCacheService} to read licenses through.
+     */
+    @NonNull private final LicenseCacheService licenseCache;
+    
+    /**
+     * The {@link MetricsService} to time log dispatches with.
+     */
+    @NonNull private final MetricsService metricsService;
     
     /**
-     * The salt to use for hashing license keys.
+     * The version of this Springboot application.
      */
-    @Value("${salts.licenses}")
-    @NonNull private String licensesSalt;
+    @NonNull private final String applicationVersion = "n/a";
     
     /**
      * The name of this Springboot application.
@@ -130,6 +157,36 @@ public final class DiscordService {
      */
     private JDA jda;
     
+    /**
+     * The queue of logs waiting to be sent.
+     */
+    @NonNull private final BlockingQueue<LogEvent> logQueue;
+    
+    /**
+     * The total amount of logs dropped due to a full queue.
+     */
+    @NonNull private final AtomicLong droppedLogs = new AtomicLong();
+    
+    /**
+     * The amount of dropped logs that haven't
+     * been summarised in the logs channel yet.
+     */
+    @NonNull private final AtomicLong unreportedDrops = new AtomicLong();
+    
+    /**
+     * The executor to run the bot login on.
+     */
+    @NonNull private final AsyncTaskExecutor taskExecutor;
+    
+    /**
+     * The thread dispatching logs, null if not using Discord.
+     * <p>
+     * It runs for the life of the server, so it has its own
+     * daemon thread instead of holding a task executor thread.
+     * </p>
+     */
+    private Thread dispatcher;
+    
     /**
      * Cached licenses for messages.
      * <p>
@@ -144,8 +201,16 @@ public final class DiscordService {
                                                             .build();
     
     @Autowired
-    public DiscordService(@NonNull LicenseRepository licenseRepository/*, @NonNull BuildProperties buildProperties*/) {
-        this.licenseRepository = licenseRepository;
+    public DiscordService(@NonNull LicenseStore licenseStore, @NonNull ObjectProvider<LicenseService> licenseService,
+                          @NonNull LicenseCacheService licenseCache, @NonNull MetricsService metricsService,
+                          @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) @NonNull AsyncTaskExecutor taskExecutor,
+                          @Value("${discord.queue.capacity}") int queueCapacity/*, @NonNull BuildProperties buildProperties*/) {
+        this.licenseStore = licenseStore;
+        this.licenseService = licenseService;
+        this.licenseCache = licenseCache;
+        this.metricsService = metricsService;
+        this.taskExecutor = taskExecutor;
+        logQueue = new ArrayBlockingQueue<>(queueCapacity);
         //        this.applicationVersion = buildProperties.getVersion();
     }
     
@@ -157,45 +222,67 @@ public final class DiscordService {
             return;
         }
         // Initialize the bot
-        new Thread(() -> {
-            long before = System.currentTimeMillis();
-            log.info("Logging in..."); // Log that we're logging in
-            jda = JDABuilder.createDefault(token)
-                      .enableIntents(
-                          GatewayIntent.GUILD_MEMBERS
-                      ).setStatus(OnlineStatus.DO_NOT_DISTURB)
-                      .setActivity(Activity.watching("your licenses"))
-                      .addEventListeners(new EventHandler())
-                      .build();
-            try {
-                jda.awaitReady(); // Await JDA to be ready
-                
-                // Log that we're logged in
-                log.info("Logged into {} in {}ms",
-                    jda.getSelfUser().getEffectiveName(), System.currentTimeMillis() - before
-                );
-                
-                // Registering slash commands
-                jda.updateCommands().addCommands(
-                    Commands.slash("license", "Manage one of your licenses")
-                        .addOption(OptionType.STRING, "key", "The license key", true)
-                        .addOption(OptionType.STRING, "product", "The product the license is for", true)
-                ).queue();
-            } catch (InterruptedException ex) {
-                ex.printStackTrace();
-            }
-        }, "Discord Bot Thread").start();
+        taskExecutor.execute(this::login);
+        
+        // Start dispatching logs
+        dispatcher = new Thread(this::dispatchLogs, "discord-log-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+    
+    @PreDestroy
+    public void onShutdown() {
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+    }
+    
+    /**
+     * Log into the bot and register our commands.
+     */
+    private void login() {
+        long before = System.currentTimeMillis();
+        log.info("Logging in..."); // Log that we're logging in
+        jda = JDABuilder.createDefault(token)
+                  .enableIntents(
+                      GatewayIntent.GUILD_MEMBERS
+                  ).setStatus(OnlineStatus.DO_NOT_DISTURB)
+                  .setActivity(Activity.watching("your licenses"))
+                  .addEventListeners(new EventHandler())
+                  .build();
+        try {
+            jda.awaitReady(); // Await JDA to be ready
+            
+            // Log that we're logged in
+            log.info("Logged into {} in {}ms",
+                jda.getSelfUser().getEffectiveName(), System.currentTimeMillis() - before
+            );
+            
+            // Registering slash commands
+            jda.updateCommands().addCommands(
+                Commands.slash("license", "Manage one of your licenses")
+                    .addOption(OptionType.STRING, "key", "The license key", true)
+                    .addOption(OptionType.STRING, "product", "The product the license is for", true)
+            ).queue();
+        } catch (InterruptedException ex) {
+            ex.printStackTrace();
+        }
     }
     
     /**
-     * Send a log to the logs channel
+     * Queue a log to the logs channel
      * with the given embed.
+     * <p>
+     * This never blocks, the embed is built and
+     * sent by the log dispatcher. If the queue is
+     * full, the log is dropped and counted.
+     * </p>
      *
-     * @param embed the embed to send
+     * @param embed the supplier of the embed to send
      * @see TextChannel for channel
      * @see EmbedBuilder for embed
      */
-    public void sendLog(@NonNull EmbedBuilder embed) {
+    public void sendLog(@NonNull Supplier<EmbedBuilder> embed) {
         // JDA must be ready to send logs
         if (!isReady()) {
             return;
@@ -204,24 +291,24 @@ public final class DiscordService {
         if (logsChannel <= 0L) {
             return;
         }
-        TextChannel textChannel = jda.getTextChannelById(logsChannel); // Get the logs channel
-        if (textChannel == null) { // We must have a logs channel
-            throw new IllegalArgumentException("Log channel %s wasn't found".formatted(logsChannel));
-        }
-        // Send the log
-        textChannel.sendMessageEmbeds(buildEmbed(embed)).queue();
+        enqueue(new LogEvent(-1L, embed));
     }
     
     /**
-     * Send an embed to the owner
+     * Queue an embed to the owner
      * of the given license.
+     * <p>
+     * This never blocks, the embed is built and
+     * sent by the log dispatcher. If the queue is
+     * full, the log is dropped and counted.
+     * </p>
      *
      * @param license the license
-     * @param embed   the embed to send
+     * @param embed   the supplier of the embed to send
      * @see License for license
      * @see EmbedBuilder for embed
      */
-    public void sendOwnerLog(@NonNull License license, @NonNull EmbedBuilder embed) {
+    public void sendOwnerLog(@NonNull License license, @NonNull Supplier<EmbedBuilder> embed) {
         // JDA must be ready to send logs
         if (!isReady()) {
             return;
@@ -230,25 +317,177 @@ public final class DiscordService {
         if (license.getOwnerSnowflake() <= 0L) {
             return;
         }
-        // Lookup the owner of the license
-        jda.retrieveUserById(license.getOwnerSnowflake()).queue(owner -> {
+        enqueue(new LogEvent(license.getOwnerSnowflake(), embed));
+    }
+    
+    /**
+     * Get the amount of logs waiting
+     * to be sent by the dispatcher.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return logQueue.size();
+    }
+    
+    /**
+     * Get the total amount of logs that were
+     * dropped because the queue was full.
+     *
+     * @return the dropped log count
+     */
+    public long getDroppedLogs() {
+        return droppedLogs.get();
+    }
+    
+    /**
+     * Bind the log queue metrics to the given registry.
+     *
+     * @param registry the registry to bind to
+     */
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("discord.logs.queue.depth", logQueue, BlockingQueue::size)
+            .description("The amount of logs waiting to be sent")
+            .register(registry);
+        Gauge.builder("discord.logs.queue.remaining", logQueue, BlockingQueue::remainingCapacity)
+            .description("The amount of logs that can be queued before logs are dropped")
+            .register(registry);
+        FunctionCounter.builder("discord.logs.dropped", droppedLogs, AtomicLong::get)
+            .description("The amount of logs dropped because the queue was full")
+            .register(registry);
+    }
+    
+    /**
+     * Add the given log event to the queue,
+     * dropping it if the queue is full.
+     *
+     * @param event the log event
+     */
+    private void enqueue(@NonNull LogEvent event) {
+        if (!logQueue.offer(event)) { // Queue is full, drop the log
+            droppedLogs.incrementAndGet();
+            unreportedDrops.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Dispatch queued logs until interrupted.
+     * <p>
+     * Logs are sent synchronously, so while a message
+     * is being sent (or rate limited), new logs pile up
+     * in the queue and are coalesced into the next
+     * multi-embed message.
+     * </p>
+     */
+    private void dispatchLogs() {
+        List<LogEvent> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(logQueue.take()); // Wait for a log
+                logQueue.drainTo(batch, MAX_DRAIN - 1); // Take any other waiting logs
+                
+                // Group the embeds by destination
+                Map<Long, List<MessageEmbed>> embeds = new LinkedHashMap<>();
+                for (LogEvent event : batch) {
+                    embeds.computeIfAbsent(event.owner(), owner -> new ArrayList<>()).add(buildEmbed(event.embed().get()));
+                }
+                batch.clear();
+                
+                // Summarise any logs that had to be dropped
+                long dropped = unreportedDrops.getAndSet(0L);
+                if (dropped > 0L && logsChannel > 0L) {
+                    MessageEmbed summary = buildEmbed(new EmbedBuilder()
+                                                          .setColor(Color.ORANGE)
+                                                          .setTitle("Logs Dropped")
+                                                          .setDescription("**%s** logs were dropped as the log queue was full".formatted(dropped))
+                    );
+                    embeds.computeIfAbsent(-1L, owner -> new ArrayList<>()).add(summary);
+                }
+                // Send the logs
+                for (Map.Entry<Long, List<MessageEmbed>> entry : embeds.entrySet()) {
+                    for (List<MessageEmbed> message : chunkEmbeds(entry.getValue())) {
+                        metricsService.time(Stage.DISCORD_DISPATCH, () -> {
+                            if (entry.getKey() == -1L) {
+                                sendLogMessage(message);
+                            } else {
+                                sendOwnerMessage(entry.getKey(), message);
+                            }
+                        });
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ex) {
+                batch.clear();
+                ex.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * Split the given embeds into messages that
+     * fit within Discord's embed limits.
+     *
+     * @param embeds the embeds to split
+     * @return the messages
+     */
+    @NonNull
+    private static List<List<MessageEmbed>> chunkEmbeds(@NonNull List<MessageEmbed> embeds) {
+        List<List<MessageEmbed>> messages = new ArrayList<>();
+        List<MessageEmbed> message = new ArrayList<>();
+        int length = 0;
+        for (MessageEmbed embed : embeds) {
+            if (message.size() >= Message.MAX_EMBED_COUNT || length + embed.getLength() > MessageEmbed.EMBED_MAX_LENGTH_BOT) {
+                messages.add(message);
+                message = new ArrayList<>();
+                length = 0;
+            }
+            message.add(embed);
+            length += embed.getLength();
+        }
+        if (!message.isEmpty()) {
+            messages.add(message);
+        }
+        return messages;
+    }
+    
+    /**
+     * Send the given embeds to the logs channel.
+     *
+     * @param embeds the embeds to send
+     */
+    private void sendLogMessage(@NonNull List<MessageEmbed> embeds) {
+        TextChannel textChannel = jda.getTextChannelById(logsChannel); // Get the logs channel
+        if (textChannel == null) { // We must have a logs channel
+            throw new IllegalArgumentException("Log channel %s wasn't found".formatted(logsChannel));
+        }
+        // Send the log
+        textChannel.sendMessageEmbeds(embeds).complete();
+    }
+    
+    /**
+     * Send the given embeds to the license
+     * owner with the given snowflake.
+     *
+     * @param ownerSnowflake the snowflake of the owner
+     * @param embeds         the embeds to send
+     */
+    private void sendOwnerMessage(long ownerSnowflake, @NonNull List<MessageEmbed> embeds) {
+        try {
+            // Lookup the owner of the license
+            User owner = jda.retrieveUserById(ownerSnowflake).complete();
             if (owner == null) { // Couldn't locate the owner of the license
                 return;
             }
-            owner.openPrivateChannel().queue(channel -> {
-                channel.sendMessageEmbeds(buildEmbed(embed)).queue(null, ex -> {
-                    // Ignore the ex if the owner has priv msgs turned off, we don't care
-                    if (((ErrorResponseException) ex).getErrorResponse() != ErrorResponse.CANNOT_SEND_TO_USER) {
-                        ex.printStackTrace();
-                    }
-                });
-            });
-        }, ex -> {
-            // Ignore the ex if the owner isn't found, we don't care
-            if (((ErrorResponseException) ex).getErrorResponse() != ErrorResponse.UNKNOWN_USER) {
+            owner.openPrivateChannel().complete().sendMessageEmbeds(embeds).complete();
+        } catch (ErrorResponseException ex) {
+            // Ignore the ex if the owner isn't found or has priv msgs turned off, we don't care
+            if (ex.getErrorResponse() != ErrorResponse.UNKNOWN_USER
+                    && ex.getErrorResponse() != ErrorResponse.CANNOT_SEND_TO_USER) {
                 ex.printStackTrace();
             }
-        });
+        }
     }
     
     /**
@@ -273,6 +512,14 @@ public final class DiscordService {
         )).build();
     }
     
+    /**
+     * A log waiting to be sent.
+     *
+     * @param owner the snowflake of the license owner to send to, -1 for the logs channel
+     * @param embed the supplier of the embed to send
+     */
+    private record LogEvent(long owner, @NonNull Supplier<EmbedBuilder> embed) { }
+    
     /**
      * The event handler for the bot.
      */
@@ -293,7 +540,7 @@ public final class DiscordService {
                 
                 // License lookup
                 try {
-                    Optional<License> optionalLicense = licenseRepository.getLicense(BCrypt.hashpw(key, licensesSalt), product);
+                    Optional<License> optionalLicense = licenseService.getObject().lookup(key, product);
                     if (optionalLicense.isEmpty() // License not found or owned by someone else
                             || (!optionalLicense.get().isOwner(user.getIdLong()))) {
                         event.getHook().sendMessageEmbeds(buildEmbed(new EmbedBuilder()
@@ -303,7 +550,8 @@ public final class DiscordService {
                         )).queue(); // Send the error message
                         return;
                     }
-                    License license = optionalLicense.get(); // The found license
+                    // Load the full license, the cached snapshot only has what checks need
+                    License license = licenseStore.findById(optionalLicense.get().getKey()).orElseThrow();
                     String obfuscateKey = MiscUtils.obfuscateKey(key); // Obfuscate the key
                     long expires = license.isPermanent() ? -1L : license.getExpires().getTime() / 1000L;
                     long lastUsed = license.getLastUsed() == null ? -1L : license.getLastUsed().getTime() / 1000L;
@@ -324,11 +572,11 @@ public final class DiscordService {
                                                                          true
                                                                      )
                                                                      .addField("IPs",
-                                                                         license.getIps().size() + "/" + license.getIpLimit(),
+                                                                         license.getIpCount() + "/" + license.getIpLimit(),
                                                                          true
                                                                      )
                                                                      .addField("HWIDs",
-                                                                         license.getHwids().size() + "/" + license.getHwidLimit(),
+                                                                         license.getHwidCount() + "/" + license.getHwidLimit(),
                                                                          true
                                                                      )
                                                                      .addField("Created",
@@ -376,15 +624,8 @@ public final class DiscordService {
                     return;
                 }
                 try {
-                    // Clear IPs
-                    if (clearIps) {
-                        license.setIps(new HashSet<>());
-                    }
-                    // Clear HWIDs
-                    if (clearHwids) {
-                        license.setHwids(new HashSet<>());
-                    }
-                    licenseRepository.save(license); // Save the license
+                    licenseStore.clearBindings(license.getKey(), clearIps, clearHwids); // Clear the IPs or HWIDs
+                    licenseCache.invalidate(license.getKey(), license.getProduct()); // Drop the stale snapshot
                     event.getHook().sendMessageEmbeds(buildEmbed(new EmbedBuilder()
                                                                      .setColor(Color.GREEN)
                                                                      .setTitle("Cleared " + (clearIps ? "IP" : "HWID") + "s")
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import me.braydon.license.model.License;
+import org.mindrot.jbcrypt.BCrypt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The service responsible for hashing
+ * {@link License} keys and IP addresses.
+ * <p>
+ * Licenses are looked up by an HMAC-SHA256 index of their
+ * key, which is fast to compute. A slow BCrypt verifier can
+ * optionally be stored as well, which is only checked the
+ * first time a key is seen. Verified keys and IP hashes are
+ * cached in memory, as BCrypt is slow by design.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service
+@Slf4j(topic = "Hashing")
+public final class HashingService implements MeterBinder {
+    private static final String INDEX_ALGORITHM = "HmacSHA256"; // The algorithm for the key index
+    
+    /**
+     * The {@link ComputeService} to run BCrypt on.
+     */
+    @NonNull private final ComputeService computeService;
+    
+    /**
+     * The cache of verified license keys.
+     * <p>
+     * The key is the raw license key and the product,
+     * the value is the index of the key. License keys are
+     * only cached once they have been verified to exist,
+     * so garbage keys can't push valid ones out of the cache.
+     * </p>
+     */
+    @NonNull private final Cache<KeyCacheKey, String> verifiedKeys;
+    
+    /**
+     * The cache of IP hashes.
+     * <p>
+     * The key is the raw IP, the value is the hashed IP.
+     * </p>
+     */
+    @NonNull private final Cache<String, String> ipHashes;
+    
+    /**
+     * The secret key for the license key index.
+     */
+    private SecretKeySpec indexSecret;
+    
+    /**
+     * The salt that was used for hashing license
+     * keys before the HMAC index was introduced.
+     */
+    @Value("${salts.licenses}")
+    private String licensesSalt;
+    
+    /**
+     * The salt to use for hashing IP addresses.
+     */
+    private String ipsSalt;
+    
+    public HashingService(@NonNull ComputeService computeService, @Value("${caches.hashes.max-size}") long maxSize,
+                          @Value("${caches.hashes.expire-after-access}") long expireAfterAccess) {
+        this.computeService = computeService;
+        verifiedKeys = CacheBuilder.newBuilder()
+                           .maximumSize(maxSize)
+                           .expireAfterAccess(expireAfterAccess, TimeUnit.MINUTES)
+                           .recordStats()
+                           .build();
+        ipHashes = CacheBuilder.newBuilder()
+                       .maximumSize(maxSize)
+                       .expireAfterAccess(expireAfterAccess, TimeUnit.MINUTES)
+                       .recordStats()
+                       .build();
+    }
+    
+    /**
+     * Set the secret to use for the license key index.
+     * <p>
+     * If the secret has changed, all
+     * verified keys are dropped.
+     * </p>
+     *
+     * @param secret the secret
+     */
+    @Value("${licenses.index-secret}")
+    public synchronized void setIndexSecret(@NonNull String secret) {
+        SecretKeySpec indexSecret = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), INDEX_ALGORITHM);
+        if (!indexSecret.equals(this.indexSecret)) {
+            verifiedKeys.invalidateAll();
+            this.indexSecret = indexSecret;
+        }
+    }
+    
+    /**
+     * Set the salt to use for hashing IP addresses.
+     * <p>
+     * If the salt has changed, all cached
+     * IP hashes are dropped.
+     * </p>
+     *
+     * @param ipsSalt the salt
+     */
+    @Value("${salts.ips}")
+    public synchronized void setIpsSalt(@NonNull String ipsSalt) {
+        if (!ipsSalt.equals(this.ipsSalt)) {
+            ipHashes.invalidateAll();
+            this.ipsSalt = ipsSalt;
+        }
+    }
+    
+    /**
+     * Get the index of the given license key.
+     * <p>
+     * This is the hex encoded HMAC-SHA256 of
+     * the key, and is used as the license id.
+     * </p>
+     *
+     * @param key the key to index
+     * @return the key index
+     */
+    @NonNull
+    public String indexKey(@NonNull String key) {
+        return hmac(key);
+    }
+    
+    /**
+     * Get the index of the given IP address.
+     * <p>
+     * This is the hex encoded HMAC-SHA256 of the IP. Unlike
+     * {@link #hashIp(String)} it's fast, so every check can be
+     * audited with it, but it doesn't match the IP bindings.
+     * </p>
+     *
+     * @param ip the ip to index
+     * @return the ip index
+     */
+    @NonNull
+    public String indexIp(@NonNull String ip) {
+        return hmac("ip:" + ip); // Prefixed, so an IP never has the index of a key
+    }
+    
+    /**
+     * Hash the given license key the way
+     * it was stored before the key index.
+     *
+     * @param key the key to hash
+     * @return the legacy hashed key
+     */
+    @NonNull
+    public String legacyHashKey(@NonNull String key) {
+        return computeService.run(() -> BCrypt.hashpw(key, licensesSalt));
+    }
+    
+    /**
+     * Hash the given license key into a slow verifier,
+     * using a random salt unique to the key.
+     *
+     * @param key the key to hash
+     * @return the verifier
+     */
+    @NonNull
+    public String hashVerifier(@NonNull String key) {
+        return computeService.run(() -> hashVerifierDirect(key));
+    }
+    
+    /**
+     * Hash the given license key into a verifier
+     * on the calling thread.
+     * <p>
+     * This is for bulk work that already runs on its own
+     * pool, so it doesn't crowd checks out of the compute pool.
+     * </p>
+     *
+     * @param key the key to hash
+     * @return the verifier
+     */
+    @NonNull
+    public String hashVerifierDirect(@NonNull String key) {
+        return BCrypt.hashpw(key, BCrypt.gensalt());
+    }
+    
+    /**
+     * Check if the given license key matches
+     * the verifier of the given license.
+     * <p>
+     * Licenses without a verifier always match. Keys that
+     * have been verified before skip the slow check.
+     * </p>
+     *
+     * @param key     the raw key
+     * @param license the license to verify against
+     * @return true if the key matches, otherwise false
+     */
+    public boolean verify(@NonNull String key, @NonNull License license) {
+        if (isVerified(key, license)) { // Nothing slow to check
+            return true;
+        }
+        return computeService.run(() -> BCrypt.checkpw(key, license.getVerifier()));
+    }
+    
+    /**
+     * Check if the given license key is known to match
+     * the given license, without running the slow check.
+     *
+     * @param key     the raw key
+     * @param license the license to verify against
+     * @return true if the key matches, false if it still has to be verified
+     */
+    public boolean isVerified(@NonNull String key, @NonNull License license) {
+        return license.getVerifier() == null
+                   || license.getKey().equals(verifiedKeys.getIfPresent(new KeyCacheKey(key, license.getProduct())));
+    }
+    
+    /**
+     * Mark the given license key as verified.
+     *
+     * @param key     the raw key
+     * @param product the product the key is for
+     * @param index   the index of the key
+     */
+    public void markVerified(@NonNull String key, @NonNull String product, @NonNull String index) {
+        verifiedKeys.put(new KeyCacheKey(key, product), index);
+    }
+    
+    /**
+     * Hash the given IP address.
+     *
+     * @param ip the ip to hash
+     * @return the hashed ip
+     */
+    @NonNull
+    public String hashIp(@NonNull String ip) {
+        String hashedIp = getCachedIpHash(ip);
+        if (hashedIp == null) { // Not cached, hash the IP
+            hashedIp = computeService.run(() -> BCrypt.hashpw(ip, ipsSalt));
+            ipHashes.put(ip, hashedIp);
+        }
+        return hashedIp;
+    }
+    
+    /**
+     * Get the cached hash of the given IP address.
+     *
+     * @param ip the ip to get the hash of
+     * @return the hashed ip, null if it isn't cached
+     */
+    public String getCachedIpHash(@NonNull String ip) {
+        return ipHashes.getIfPresent(ip);
+    }
+    
+    /**
+     * Get the statistics of the verified key cache.
+     *
+     * @return the cache stats
+     */
+    @NonNull
+    public CacheStats getKeyCacheStats() {
+        return verifiedKeys.stats();
+    }
+    
+    /**
+     * Get the statistics of the IP hash cache.
+     *
+     * @return the cache stats
+     */
+    @NonNull
+    public CacheStats getIpCacheStats() {
+        return ipHashes.stats();
+    }
+    
+    /**
+     * Bind the cache metrics to the given registry.
+     *
+     * @param registry the registry to bind to
+     */
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, verifiedKeys, "verifiedKeys");
+        GuavaCacheMetrics.monitor(registry, ipHashes, "ipHashes");
+    }
+    
+    /**
+     * Periodically log the hit and miss
+     * counters of the hash caches.
+     */
+    @Scheduled(fixedRateString = "${caches.hashes.stats-interval}", timeUnit = TimeUnit.MINUTES)
+    public void logStats() {
+        CacheStats keyStats = getKeyCacheStats();
+        CacheStats ipStats = getIpCacheStats();
+        log.info("Verified keys: {} hits, {} misses ({} cached) | IP hashes: {} hits, {} misses ({} cached)",
+            keyStats.hitCount(), keyStats.missCount(), verifiedKeys.size(),
+            ipStats.hitCount(), ipStats.missCount(), ipHashes.size()
+        );
+    }
+    
+    /**
+     * Get the hex encoded HMAC-SHA256
+     * of the given input.
+     *
+     * @param input the input
+     * @return the HMAC
+     */
+    @NonNull @SneakyThrows
+    private String hmac(@NonNull String input) {
+        Mac mac = Mac.getInstance(INDEX_ALGORITHM);
+        mac.init(indexSecret);
+        return HexFormat.of().formatHex(mac.doFinal(input.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * The key for the verified key cache.
+     *
+     * @param key     the raw license key
+     * @param product the product the key is for
+     */
+    private record KeyCacheKey(@NonNull String key, @NonNull String product) { }
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import me.braydon.license.model.License;
+import me.braydon.license.repository.LicenseStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A read-through cache of {@link License} snapshots.
+ * <p>
+ * License metadata (product, limits, expiry, plan) rarely
+ * changes, so checks read licenses from here instead of
+ * querying Mongo every time. Any code that changes a license
+ * must either update or invalidate its snapshot.
+ * </p>
+ * <p>
+ * Snapshots only have the fields a check needs,
+ * anything that needs the rest must load the full license.
+ * </p>
+ * <p>
+ * Unknown keys never reach Mongo either. A Bloom filter of
+ * all license keys rules out keys that definitely don't exist,
+ * and the rare false positives are remembered in a short-lived
+ * negative cache. The filter is rebuilt periodically, so keys of
+ * removed licenses are eventually dropped from it.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service
+@Slf4j(topic = "License Cache")
+public final class LicenseCacheService implements MeterBinder {
+    private static final int KEY_BATCH_SIZE = 1000; // The amount of keys to fetch at a time when building the filter
+    
+    /**
+     * The {@link LicenseStore} to load licenses from.
+     */
+    @NonNull private final LicenseStore store;
+    
+    /**
+     * The cached license snapshots.
+     */
+    @NonNull private final Cache<CacheKey, License> licenses;
+    
+    /**
+     * The keys and products that recently weren't found.
+     */
+    @NonNull private final Cache<CacheKey, Boolean> misses;
+    
+    /**
+     * The keys and products that recently
+     * weren't found by their legacy hash either.
+     * <p>
+     * The legacy hash is a slow BCrypt of the raw key, so
+     * unknown keys are only hashed once until forgotten.
+     * </p>
+     */
+    @NonNull private final Cache<CacheKey, Boolean> legacyMisses;
+    
+    /**
+     * The minimum amount of keys to size the filter for.
+     */
+    private final long filterMinSize;
+    
+    /**
+     * The false positive rate of the filter.
+     */
+    private final double filterFalsePositiveRate;
+    
+    /**
+     * The filter of all license keys, null until built.
+     */
+    private volatile BloomFilter<CharSequence> filter;
+    
+    /**
+     * The filter that is being built, null if not rebuilding.
+     * <p>
+     * Keys registered during a rebuild are put into both
+     * filters, so they can't be missed by the new filter.
+     * This is read before the filter when registering.
+     * </p>
+     */
+    private volatile BloomFilter<CharSequence> building;
+    
+    /**
+     * The amount of lookups the filter ruled out.
+     */
+    @NonNull private final AtomicLong filtered = new AtomicLong();
+    
+    @Autowired
+    public LicenseCacheService(@NonNull LicenseStore store,
+                               @Value("${caches.licenses.max-size}") long maxSize,
+                               @Value("${caches.licenses.expire-after-write}") long expireAfterWrite,
+                               @Value("${caches.licenses.misses.max-size}") long missesMaxSize,
+                               @Value("${caches.licenses.misses.expire-after-write}") long missesExpireAfterWrite,
+                               @Value("${caches.licenses.filter.min-size}") long filterMinSize,
+                               @Value("${caches.licenses.filter.false-positive-rate}") double filterFalsePositiveRate) {
+        this.store = store;
+        licenses = CacheBuilder.newBuilder()
+                       .maximumSize(maxSize)
+                       .expireAfterWrite(expireAfterWrite, TimeUnit.SECONDS)
+                       .recordStats()
+                       .build();
+        misses = CacheBuilder.newBuilder()
+                     .maximumSize(missesMaxSize)
+                     .expireAfterWrite(missesExpireAfterWrite, TimeUnit.SECONDS)
+                     .recordStats()
+                     .build();
+        legacyMisses = CacheBuilder.newBuilder()
+                           .maximumSize(missesMaxSize)
+                           .expireAfterWrite(missesExpireAfterWrite, TimeUnit.SECONDS)
+                           .build();
+        this.filterMinSize = filterMinSize;
+        this.filterFalsePositiveRate = filterFalsePositiveRate;
+    }
+    
+    /**
+     * Build the key filter for the first time.
+     * <p>
+     * Until this is run by the {@link StartupService},
+     * no lookups are ruled out by the filter.
+     * </p>
+     */
+    public void onInitialize() {
+        rebuildFilter();
+    }
+    
+    /**
+     * Get the license that has the given
+     * key and is for the given product.
+     * <p>
+     * If the license isn't cached, it's loaded from
+     * the store and cached if it was found.
+     * </p>
+     *
+     * @param key     the hashed key of the license
+     * @param product the product the license is for
+     * @return the optional license
+     */
+    @NonNull
+    public Optional<License> getLicense(@NonNull String key, @NonNull String product) {
+        CacheKey cacheKey = new CacheKey(key, product);
+        License license = licenses.getIfPresent(cacheKey);
+        if (license != null) { // Cache hit
+            return Optional.of(license);
+        }
+        if (isKnownMiss(cacheKey)) { // Definitely doesn't exist
+            return Optional.empty();
+        }
+        Optional<License> optionalLicense = store.getCheckLicense(key, product); // Load the license
+        if (optionalLicense.isPresent()) {
+            licenses.put(cacheKey, optionalLicense.get());
+        } else {
+            misses.put(cacheKey, Boolean.TRUE);
+        }
+        return optionalLicense;
+    }
+    
+    /**
+     * Get the cached snapshot of the license that
+     * has the given key and is for the given product.
+     * <p>
+     * Unlike {@link #getLicense(String, String)}, this never
+     * loads the license, so callers that can't block can load
+     * it themselves and {@link #update(License)} the cache.
+     * </p>
+     *
+     * @param key     the hashed key of the license
+     * @param product the product the license is for
+     * @return the cached license, null if it isn't cached
+     */
+    public License getCached(@NonNull String key, @NonNull String product) {
+        return licenses.getIfPresent(new CacheKey(key, product));
+    }
+    
+    /**
+     * Check if the license with the given key
+     * and product is known not to exist.
+     *
+     * @param key     the hashed key of the license
+     * @param product the product the license is for
+     * @return true if the license doesn't exist, false if it might
+     */
+    public boolean isKnownMiss(@NonNull String key, @NonNull String product) {
+        return isKnownMiss(new CacheKey(key, product));
+    }
+    
+    /**
+     * Remember that the license with the given
+     * key and product wasn't found.
+     *
+     * @param key     the hashed key of the license
+     * @param product the product the license is for
+     */
+    public void recordMiss(@NonNull String key, @NonNull String product) {
+        misses.put(new CacheKey(key, product), Boolean.TRUE);
+    }
+    
+    /**
+     * Check if the license with the given key and product
+     * was recently not found by its legacy hash.
+     *
+     * @param key     the hashed key of the license
+     * @param product the product the license is for
+     * @return true if the legacy lookup recently missed, otherwise false
+     */
+    public boolean isLegacyMiss(@NonNull String key, @NonNull String product) {
+        return legacyMisses.getIfPresent(new CacheKey(key, product)) != null;
+    }
+    
+    /**
+     * Remember that the license with the given key
+     * and product wasn't found by its legacy hash.
+     *
+     * @param key     the hashed key of the license
+     * @param product the product the license is for
+     */
+    public void recordLegacyMiss(@NonNull String key, @NonNull String product) {
+        legacyMisses.put(new CacheKey(key, product), Boolean.TRUE);
+    }
+    
+    /**
+     * Forget the keys that weren't found by their legacy hash.
+     */
+    public void invalidateLegacyMisses() {
+        legacyMisses.invalidateAll();
+    }
+    
+    /**
+     * Get the licenses with the given keys and products.
+     * <p>
+     * Any licenses that aren't cached are loaded
+     * from the store with a single query.
+     * </p>
+     *
+     * @param cacheKeys the keys and products of the licenses
+     * @return the found licenses
+     */
+    @NonNull
+    public Map<CacheKey, License> getLicenses(@NonNull Collection<CacheKey> cacheKeys) {
+        Map<CacheKey, License> found = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (CacheKey cacheKey : cacheKeys) {
+            License license = licenses.getIfPresent(cacheKey);
+            if (license != null) { // Cache hit
+                found.put(cacheKey, license);
+            } else if (!isKnownMiss(cacheKey)) {
+                missing.add(cacheKey.key());
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+        // Load the missing licenses
+        for (License license : store.getCheckLicenses(missing)) {
+            CacheKey cacheKey = new CacheKey(license.getKey(), license.getProduct());
+            licenses.put(cacheKey, license);
+            if (cacheKeys.contains(cacheKey)) { // The license is for the requested product
+                found.put(cacheKey, license);
+            }
+        }
+        for (CacheKey cacheKey : cacheKeys) {
+            if (!found.containsKey(cacheKey) && missing.contains(cacheKey.key())) { // Remember the miss
+                misses.put(cacheKey, Boolean.TRUE);
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Check if a license with the given key might exist.
+     *
+     * @param key the hashed key of the license
+     * @return false if the license definitely doesn't exist, otherwise true
+     */
+    public boolean mightExist(@NonNull String key) {
+        BloomFilter<CharSequence> filter = this.filter;
+        if (filter == null || filter.mightContain(key)) {
+            return true;
+        }
+        filtered.incrementAndGet();
+        return false;
+    }
+    
+    /**
+     * Register a newly stored license, so
+     * lookups of its key aren't ruled out.
+     *
+     * @param license the stored license
+     */
+    public void register(@NonNull License license) {
+        // Read the filter being built first, as a rebuild publishes it as the filter before clearing
+        // it. Reading the filter first could see the old one, then miss the new one once it's cleared.
+        BloomFilter<CharSequence> building = this.building;
+        if (building != null) { // Also put it in the filter being built
+            building.put(license.getKey());
+        }
+        BloomFilter<CharSequence> filter = this.filter;
+        if (filter != null) {
+            filter.put(license.getKey());
+        }
+        CacheKey cacheKey = new CacheKey(license.getKey(), license.getProduct());
+        misses.invalidate(cacheKey);
+        legacyMisses.invalidate(cacheKey);
+        licenses.invalidate(cacheKey); // Drop any stale snapshot
+    }
+    
+    /**
+     * Update the snapshot of the given license.
+     *
+     * @param license the updated license
+     */
+    public void update(@NonNull License license) {
+        licenses.put(new CacheKey(license.getKey(), license.getProduct()), license);
+    }
+    
+    /**
+     * Invalidate the snapshot of the given license.
+     *
+     * @param key     the hashed key of the license
+     * @param product the product the license is for
+     */
+    public void invalidate(@NonNull String key, @NonNull String product) {
+        licenses.invalidate(new CacheKey(key, product));
+    }
+    
+    /**
+     * Invalidate all license snapshots.
+     */
+    public void invalidateAll() {
+        licenses.invalidateAll();
+        misses.invalidateAll();
+        legacyMisses.invalidateAll();
+    }
+    
+    /**
+     * Rebuild the filter from the keys of all licenses.
+     * <p>
+     * The filter is sized for twice the amount of licenses,
+     * so it stays accurate while new licenses are added.
+     * </p>
+     */
+    @Scheduled(initialDelayString = "${caches.licenses.filter.rebuild-interval}",
+        fixedDelayString = "${caches.licenses.filter.rebuild-interval}", timeUnit = TimeUnit.MINUTES)
+    public synchronized void rebuildFilter() {
+        long started = System.currentTimeMillis();
+        long expected = Math.max(store.count() * 2L, filterMinSize);
+        BloomFilter<CharSequence> building = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8),
+            expected, filterFalsePositiveRate
+        );
+        this.building = building;
+        try (Stream<String> keys = store.streamKeys(KEY_BATCH_SIZE)) {
+            keys.forEach(building::put);
+            filter = building;
+        } finally {
+            this.building = null;
+        }
+        log.info("Built the license key filter with ~{} keys in {}ms",
+            building.approximateElementCount(), System.currentTimeMillis() - started
+        );
+    }
+    
+    /**
+     * Get the statistics of the license cache.
+     *
+     * @return the cache stats
+     */
+    @NonNull
+    public CacheStats getStats() {
+        return licenses.stats();
+    }
+    
+    /**
+     * Bind the cache metrics to the given registry.
+     *
+     * @param registry the registry to bind to
+     */
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, licenses, "licenses");
+        GuavaCacheMetrics.monitor(registry, misses, "licenseMisses");
+        FunctionCounter.builder("license.filter.rejected", filtered, AtomicLong::get)
+            .description("The amount of lookups ruled out by the license key filter")
+            .register(registry);
+        Gauge.builder("license.filter.keys", this, service -> {
+                BloomFilter<CharSequence> filter = service.filter;
+                return filter == null ? 0D : filter.approximateElementCount();
+            })
+            .description("The approximate amount of keys in the license key filter")
+            .register(registry);
+    }
+    
+    /**
+     * Periodically log the hit ratio
+     * and evictions of the cache.
+     */
+    @Scheduled(fixedRateString = "${caches.licenses.stats-interval}", timeUnit = TimeUnit.MINUTES)
+    public void logStats() {
+        CacheStats stats = getStats();
+        log.info("Licenses: {}% hit ratio ({} hits, {} misses), {} evictions ({} cached) | {} lookups filtered, {} known misses",
+            "%.2f".formatted(stats.hitRate() * 100D), stats.hitCount(), stats.missCount(),
+            stats.evictionCount(), licenses.size(), filtered.get(), misses.stats().hitCount()
+        );
+    }
+    
+    /**
+     * Check if the license with the given
+     * key and product is known not to exist.
+     *
+     * @param cacheKey the key and product of the license
+     * @return true if the license doesn't exist, false if it might
+     */
+    private boolean isKnownMiss(@NonNull CacheKey cacheKey) {
+        return !mightExist(cacheKey.key()) || misses.getIfPresent(cacheKey) != null;
+    }
+    
+    /**
+     * The key for the license cache.
+     *
+     * @param key     the hashed key of the license
+     * @param product the product the license is for
+     */
+    public record CacheKey(@NonNull String key, @NonNull String product) { }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import me.braydon.license.dto.LicensePageDTO;
+import me.braydon.license.dto.LicenseQueryDTO;
+import me.braydon.license.dto.LicenseSummaryDTO;
+import me.braydon.license.model.License;
+import me.braydon.license.repository.LicenseStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * The service responsible for listing
+ * {@link License}s for admins as NDJSON.
+ * <p>
+ * Licenses are paged by their key rather than by an offset,
+ * so every page costs the same, no matter how deep it is.
+ * A page is written as it's read from the cursor, so only
+ * a single cursor batch is ever held in memory.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service
+@Slf4j(topic = "License Query")
+public final class LicenseQueryService {
+    /**
+     * The {@link LicenseStore} to use.
+     */
+    @NonNull private final LicenseStore store;
+    
+    /**
+     * The mapper to write lines with.
+     */
+    @NonNull private final ObjectMapper objectMapper;
+    
+    /**
+     * The amount of licenses to list when no limit is given.
+     */
+    private final int pageSize;
+    
+    /**
+     * The maximum amount of licenses to list in a page.
+     */
+    private final int maxPageSize;
+    
+    /**
+     * The amount of licenses to read (and flush) at a time.
+     */
+    private final int batchSize;
+    
+    @Autowired
+    public LicenseQueryService(@NonNull LicenseStore store, @NonNull ObjectMapper objectMapper,
+                               @Value("${admin.query.page-size}") int pageSize,
+                               @Value("${admin.query.max-page-size}") int maxPageSize,
+                               @Value("${admin.transfer.chunk-size}") int batchSize) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+        this.maxPageSize = Math.max(maxPageSize, 1);
+        this.pageSize = Math.min(Math.max(pageSize, 1), this.maxPageSize);
+        this.batchSize = Math.max(batchSize, 1);
+    }
+    
+    /**
+     * Write a page of the licenses matching
+     * the given query as NDJSON to the given output.
+     * <p>
+     * Each license is written as a line, followed by
+     * a final line with the cursor of the next page.
+     * </p>
+     *
+     * @param query  the query to match
+     * @param output the output to write licenses to
+     * @return the end of the page
+     * @throws IOException if writing the output fails
+     * @see LicenseSummaryDTO for the line format
+     * @see LicensePageDTO for the final line
+     */
+    @NonNull
+    public LicensePageDTO queryLicenses(@NonNull LicenseQueryDTO query, @NonNull OutputStream output) throws IOException {
+        int limit = query.getLimit() == null ? pageSize : Math.min(query.getLimit(), maxPageSize);
+        long started = System.currentTimeMillis();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        long count = 0L;
+        String last = null; // The key of the last license written
+        boolean more = false; // Is there a next page?
+        
+        // Read one more license than the limit, to know if there's a next page
+        try (Stream<License> licenses = store.streamQuery(query, limit + 1, batchSize)) {
+            Iterator<License> iterator = licenses.iterator();
+            while (iterator.hasNext()) {
+                License license = iterator.next();
+                if (count == limit) { // There's a next page
+                    more = true;
+                    break;
+                }
+                writer.write(objectMapper.writeValueAsString(toDTO(license)));
+                writer.write('\n');
+                last = license.getKey();
+                if (++count % batchSize == 0L) { // Flush every batch
+                    writer.flush();
+                }
+            }
+            LicensePageDTO page = new LicensePageDTO(count, more ? last : null);
+            writer.write(objectMapper.writeValueAsString(page));
+            writer.write('\n');
+            writer.flush();
+            log.info("Listed {} licenses in {}ms ({})", count, System.currentTimeMillis() - started, query);
+            return page;
+        }
+    }
+    
+    /**
+     * Create a listed license from the given license.
+     *
+     * @param license the license
+     * @return the listed license
+     */
+    @NonNull
+    private static LicenseSummaryDTO toDTO(@NonNull License license) {
+        return new LicenseSummaryDTO(
+            license.getKey(),
+            license.getProduct(),
+            license.getDescription(),
+            license.getOwnerSnowflake(),
+            license.getOwnerName(),
+            license.getPlan(),
+            license.getLatestVersion(),
+            license.getUses(),
+            license.getIpCount(),
+            license.getHwidCount(),
+            license.getIpLimit(),
+            license.getHwidLimit(),
+            license.getExpires(),
+            license.getLastUsed(),
+            license.getCreated()
+        );
+    }
+}
@@ -5,24 +5,28 @@
  */
 package me.braydon.license.service;
 
-import jakarta.annotation.PostConstruct;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import me.braydon.license.common.MiscUtils;
 import me.braydon.license.common.RandomUtils;
+import me.braydon.license.dto.LicenseBatchEntryDTO;
 import me.braydon.license.exception.*;
 import me.braydon.license.model.License;
-import me.braydon.license.repository.LicenseRepository;
+import me.braydon.license.model.LicenseBinding;
+import me.braydon.license.repository.LicenseStore;
+import me.braydon.license.service.LicenseCacheService.CacheKey;
+import me.braydon.license.service.MetricsService.Stage;
 import net.dv8tion.jda.api.EmbedBuilder;
-import org.mindrot.jbcrypt.BCrypt;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import java.awt.*;
-import java.util.Date;
-import java.util.HashSet;
-import java.util.Optional;
+import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The service for managing {@link License}'s.
@@ -33,9 +37,9 @@ import java.util.Optional;
 @Slf4j(topic = "Licenses")
 public final class LicenseService {
     /**
-     * The {@link LicenseRepository} to use.
+     * The {@link LicenseStore} to use.
      */
-    @NonNull private final LicenseRepository repository;
+    @NonNull private final LicenseStore store;
     
     /**
      * The {@link DiscordService} to use for logging.
@@ -43,31 +47,74 @@ public final class LicenseService {
     @NonNull private final DiscordService discordService;
     
     /**
-     * The salt to use for hashing license keys.
+     * The {@link HashingService} to use for hashing keys and IPs.
      */
-    @Value("${salts.licenses}")
-    @NonNull private String licensesSalt;
+    @NonNull private final HashingService hashingService;
     
     /**
-     * The salt to use for hashing IP addresses.
+     * The {@link LicenseCacheService} to read licenses through.
      */
-    @Value("${salts.ips}")
-    @NonNull private String ipsSalt;
+    @NonNull private final LicenseCacheService licenseCache;
+    
+    /**
+     * The {@link MetricsService} to use.
+     */
+    @NonNull private final MetricsService metricsService;
+    
+    /**
+     * The {@link RateLimitService} to limit checks of a key with.
+     */
+    @NonNull private final RateLimitService rateLimitService;
+    
+    /**
+     * The {@link UsageService} to record uses in the background with.
+     */
+    @NonNull private final UsageService usageService;
+    
+    /**
+     * Should a slow verifier be stored with licenses?
+     */
+    @Value("${licenses.verifier}")
+    private boolean verifierEnabled;
+    
+    /**
+     * Are there still licenses stored with the legacy
+     * BCrypt hashed key that haven't been migrated?
+     */
+    @NonNull private final AtomicBoolean legacyKeys = new AtomicBoolean(true);
     
     @Autowired
-    public LicenseService(@NonNull LicenseRepository repository, @NonNull DiscordService discordService) {
-        this.repository = repository;
+    public LicenseService(@NonNull LicenseStore store, @NonNull DiscordService discordService,
+                          @NonNull HashingService hashingService, @NonNull LicenseCacheService licenseCache,
+                          @NonNull MetricsService metricsService, @NonNull RateLimitService rateLimitService,
+                          @NonNull UsageService usageService) {
+        this.store = store;
         this.discordService = discordService;
+        this.hashingService = hashingService;
+        this.licenseCache = licenseCache;
+        this.metricsService = metricsService;
+        this.rateLimitService = rateLimitService;
+        this.usageService = usageService;
     }
     
     /**
      * Create a default license key
      * when no other keys exist.
+     * <p>
+     * This is run by the {@link StartupService}.
+     * </p>
      * TODO: Remove this in the future and replace with creation API route
      */
-    @PostConstruct
     public void onInitialize() {
-        if (repository.count() == 0L) { // No license keys found, create default
+        long migrated = store.migrateBindings();
+        if (migrated > 0L) {
+            log.info("Moved the IPs and HWIDs of {} licenses to the binding collection", migrated);
+        }
+        legacyKeys.set(store.hasLegacyKeys());
+        if (legacyKeys.get()) {
+            log.info("Licenses with legacy keys will be migrated to the key index when they're next used");
+        }
+        if (store.count() == 0L) { // No license keys found, create default
             String licenseKey = RandomUtils.generateLicenseKey(); // The license key
             create(
                 licenseKey,
@@ -101,23 +148,44 @@ public final class LicenseService {
                           String ownerName, int ipLimit, int hwidLimit, Date expires) {
         // Create the new license
         License license = new License();
-        license.setKey(BCrypt.hashpw(key, licensesSalt)); // Hash the key
+        license.setKey(hashingService.indexKey(key)); // Index the key
+        if (verifierEnabled) { // Store a slow verifier of the key
+            license.setVerifier(hashingService.hashVerifier(key));
+        }
         license.setProduct(product); // Use the given product
         license.setDescription(description); // Use the given description, if any
         license.setOwnerSnowflake(ownerSnowflake);
         license.setOwnerName(ownerName);
         license.setPlan("Basic");
         license.setLatestVersion("1.0");
-        license.setIps(new HashSet<>());
-        license.setHwids(new HashSet<>());
         license.setIpLimit(ipLimit); // Use the given IP limit
         license.setHwidLimit(hwidLimit); // Use the given HWID limit
         license.setExpires(expires);
         license.setCreated(new Date());
-        repository.insert(license); // Insert the newly created license
+        store.insert(license); // Insert the newly created license
+        licenseCache.register(license); // Make the key known to lookups
         return license;
     }
     
+    /**
+     * Check again if any licenses are stored with
+     * a legacy key, such as after an import.
+     */
+    public void refreshLegacyKeys() {
+        legacyKeys.set(store.hasLegacyKeys());
+        licenseCache.invalidateLegacyMisses(); // Keys that missed before may have been imported
+    }
+    
+    /**
+     * Check if any licenses might still
+     * be stored with a legacy key.
+     *
+     * @return true if there might be legacy keys, otherwise false
+     */
+    boolean hasLegacyKeys() {
+        return legacyKeys.get();
+    }
+    
     /**
      * Check the given license.
      *
@@ -132,129 +200,523 @@ public final class LicenseService {
     @NonNull
     public License check(@NonNull String key, @NonNull String product, @NonNull String ip,
                          @NonNull String hwid) throws APIException {
-        Optional<License> optionalLicense = repository.getLicense(BCrypt.hashpw(key, licensesSalt), product); // Get the license
+        String index = indexKey(key); // Index the key
+        rateLimitService.checkKey(index, licenseCache.getCached(index, product)); // Limit checks of the same key before anything slow runs
+        Optional<License> optionalLicense = lookup(key, product, index); // Get the license
         if (optionalLicense.isEmpty()) { // License key not found
-            log.error("License key {} for product {} not found", key, product); // Log the error
+            log.error("License key {} for product {} not found", MiscUtils.obfuscateKey(key), product); // Log the error
             throw new LicenseNotFoundException();
         }
         License license = optionalLicense.get(); // The license found
-        String hashedIp = BCrypt.hashpw(ip, ipsSalt); // Hash the IP
+        String hashedIp = metricsService.time(Stage.IP_HASH, () -> hashingService.hashIp(ip)); // Hash the IP
         String obfuscateKey = MiscUtils.obfuscateKey(key); // Obfuscate the key
-        boolean newIp = !license.getIps().contains(hashedIp); // Is the IP new?
-        boolean newHwid = !license.getHwids().contains(hwid); // Is the HWID new?
+        Set<LicenseBinding.Type> bindings = metricsService.time(Stage.LOOKUP,
+            () -> store.findBindings(license.getKey(), hashedIp, hwid)
+        );
+        boolean newIp = !bindings.contains(LicenseBinding.Type.IP); // Is the IP new?
+        boolean newHwid = !bindings.contains(LicenseBinding.Type.HWID); // Is the HWID new?
+        
+        logUse(license, obfuscateKey, ip, hwid, newIp, newHwid); // Log the license being used, if enabled
+        checkExpired(license, obfuscateKey); // The license has expired
+        try {
+            License used = metricsService.time(Stage.RECORD_USE, () -> recordUse(license, hashedIp, hwid, newIp, newHwid)); // Use the license
+            onUsed(license, obfuscateKey, ip, hwid, newIp, newHwid);
+            return used;
+        } catch (APIException ex) {
+            logLimitExceeded(license, obfuscateKey, ex);
+            throw ex; // Rethrow to handle where this method was invoked
+        }
+    }
+    
+    /**
+     * Check the given licenses, which are
+     * all being used from the same machine.
+     * <p>
+     * Licenses that aren't cached are looked up with a
+     * single query, as are their bindings, and all uses are
+     * recorded with a single update. Each license is checked
+     * the same way as {@link #check(String, String, String, String)},
+     * and fails on its own without affecting the others.
+     * </p>
+     *
+     * @param entries the licenses to check
+     * @param ip      the ip using the licenses
+     * @param hwid    the hwid using the licenses
+     * @return the result of each check, in the same order
+     * @throws APIException if there was an error checking all the licenses
+     * @see License for license
+     */
+    @NonNull
+    public List<BatchResult> checkBatch(@NonNull List<LicenseBatchEntryDTO> entries, @NonNull String ip,
+                                        @NonNull String hwid) throws APIException {
+        int size = entries.size();
+        License[] licenses = new License[size]; // The licenses that are being used
+        APIException[] errors = new APIException[size]; // The errors of the failed checks
+        List<CacheKey> cacheKeys = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            LicenseBatchEntryDTO entry = entries.get(i);
+            String index = indexKey(entry.getKey()); // Index the key
+            cacheKeys.add(new CacheKey(index, entry.getProduct()));
+            try {
+                rateLimitService.checkKey(index, licenseCache.getCached(index, entry.getProduct())); // Limit checks of the same key before anything slow runs
+            } catch (APIException ex) {
+                errors[i] = ex;
+            }
+        }
+        Map<CacheKey, License> found = metricsService.time(Stage.LOOKUP, () -> licenseCache.getLicenses(cacheKeys)); // Get the licenses
+        String hashedIp = metricsService.time(Stage.IP_HASH, () -> hashingService.hashIp(ip)); // Hash the IP
         
-        // Log the license being used, if enabled
-        if (discordService.isLogUses()) {
-            // god i hate sending discord embeds, it's so big and ugly :(
-            
-            // Constructing tags
-            StringBuilder tags = new StringBuilder();
-            if (newIp) { // New IP
-                tags.append("New IP");
+        // Find the licenses that exist
+        for (int i = 0; i < size; i++) {
+            if (errors[i] != null) { // Already failed
+                continue;
             }
-            if (newHwid) { // New HWID
-                if (tags.length() > 0) {
-                    tags.append(" & ");
+            LicenseBatchEntryDTO entry = entries.get(i);
+            CacheKey cacheKey = cacheKeys.get(i);
+            License license = found.get(cacheKey);
+            if (license == null && legacyKeys.get()) { // Try the legacy hash
+                license = migrateLegacy(entry.getKey(), entry.getProduct(), cacheKey.key()).orElse(null);
+            }
+            if (license == null || !verify(entry.getKey(), license)) { // License key not found
+                log.error("License key {} for product {} not found", MiscUtils.obfuscateKey(entry.getKey()), entry.getProduct()); // Log the error
+                errors[i] = new LicenseNotFoundException();
+                continue;
+            }
+            hashingService.markVerified(entry.getKey(), entry.getProduct(), cacheKey.key()); // The key exists, cache it
+            licenses[i] = license;
+        }
+        Set<String> keys = new HashSet<>();
+        for (License license : licenses) {
+            if (license != null) {
+                keys.add(license.getKey());
+            }
+        }
+        if (keys.isEmpty()) { // None of the licenses exist
+            return toResults(entries, licenses, errors);
+        }
+        Map<String, Set<LicenseBinding.Type>> bindings = metricsService.time(Stage.LOOKUP,
+            () -> store.findBindings(keys, hashedIp, hwid)
+        );
+        
+        // Check and bind each license before it's used
+        boolean[] newIps = new boolean[size];
+        boolean[] newHwids = new boolean[size];
+        boolean[] deferred = new boolean[size]; // The uses that are recorded in the background
+        Set<String> toUse = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            License license = licenses[i];
+            if (license == null) { // Already failed
+                continue;
+            }
+            Set<LicenseBinding.Type> bound = bindings.getOrDefault(license.getKey(), Set.of());
+            newIps[i] = !bound.contains(LicenseBinding.Type.IP);
+            newHwids[i] = !bound.contains(LicenseBinding.Type.HWID);
+            String obfuscateKey = MiscUtils.obfuscateKey(entries.get(i).getKey()); // Obfuscate the key
+            logUse(license, obfuscateKey, ip, hwid, newIps[i], newHwids[i]);
+            try {
+                checkExpired(license, obfuscateKey); // The license has expired
+                if (newIps[i] || newHwids[i]) { // Bind the new IP and/or HWID
+                    int index = i;
+                    metricsService.time(Stage.RECORD_USE,
+                        () -> store.bind(license.getKey(), hashedIp, hwid, newIps[index], newHwids[index])
+                    );
                 }
-                tags.append("HWID");
+            } catch (APIException ex) {
+                logLimitExceeded(license, obfuscateKey, ex);
+                licenses[i] = null;
+                errors[i] = ex;
+                continue;
+            }
+            deferred[i] = deferUse(license, newIps[i], newHwids[i]);
+            if (!deferred[i]) {
+                toUse.add(license.getKey());
             }
-            long expires = license.isPermanent() ? -1L : license.getExpires().getTime() / 1000L;
-            int ipCount = license.getIps().size();
-            int hwidCount = license.getHwids().size();
-            discordService.sendLog(new EmbedBuilder()
-                                       .setColor(Color.BLUE)
-                                       .setTitle("License Used" + (!tags.isEmpty() ? " (" + tags + ")" : ""))
-                                       .addField("License", "`" + obfuscateKey + "`", true)
-                                       .addField("Product", license.getProduct(), true)
-                                       .addField("Description", license.getDescription(), true)
-                                       .addField("Owner ID",
-                                           license.getOwnerSnowflake() <= 0L ? "N/A" : String.valueOf(license.getOwnerSnowflake()),
-                                           true
-                                       )
-                                       .addField("Owner Name",
-                                           license.getOwnerName() == null ? "N/A" : license.getOwnerName(),
-                                           true
-                                       )
-                                       .addField("Expiration",
-                                           expires == -1L ? "Never" : "<t:" + expires + ":R>",
-                                           true
-                                       )
-                                       .addField("IP", ip, true)
-                                       .addField("HWID", "```" + hwid + "```", false)
-                                       .addField("IPs",
-                                           (newIp ? ipCount + 1 : ipCount) + "/" + license.getIpLimit(),
-                                           true
-                                       )
-                                       .addField("HWIDs",
-                                           (newHwid ? hwidCount + 1 : hwidCount) + "/" + license.getHwidLimit(),
-                                           true
-                                       )
-            );
         }
-        // The license has expired
-        if (license.hasExpired()) {
-            // Log the expired license
-            if (discordService.isLogExpired()) {
-                discordService.sendLog(new EmbedBuilder()
-                                           .setColor(Color.RED)
-                                           .setTitle("License Expired")
-                                           .setDescription("License `%s` is expired".formatted(obfuscateKey))
-                );
+        // Use the licenses
+        Map<String, License> used = toUse.isEmpty() ? Map.of()
+                                        : metricsService.time(Stage.RECORD_USE, () -> store.useAll(toUse));
+        for (int i = 0; i < size; i++) {
+            License license = licenses[i];
+            if (license == null) { // Already failed
+                continue;
+            }
+            LicenseBatchEntryDTO entry = entries.get(i);
+            try {
+                if (!deferred[i]) {
+                    licenses[i] = recordedUse(license, used.get(license.getKey()));
+                }
+                onUsed(license, MiscUtils.obfuscateKey(entry.getKey()), ip, hwid, newIps[i], newHwids[i]);
+            } catch (APIException ex) {
+                licenses[i] = null;
+                errors[i] = ex;
             }
-            throw new LicenseExpiredException();
         }
-        try {
-            license.use(hashedIp, hwid); // Use the license
-            repository.save(license); // Save the used license
-            
-            // Sending new IP log to the license owner
-            if (newIp && discordService.isLogNewIpsToOwner()) {
-                discordService.sendOwnerLog(license, new EmbedBuilder()
-                                                         .setColor(0xF2781B)
-                                                         .setTitle("New IP")
-                                                         .setDescription("One of your licenses has been used on a new IP:")
-                                                         .addField("License", "`" + obfuscateKey + "`", true)
-                                                         .addField("Product", license.getProduct(), true)
-                                                         .addField("IP", "```" + ip + "```", false)
-                );
+        return toResults(entries, licenses, errors);
+    }
+    
+    /**
+     * Build the results of a batch check.
+     *
+     * @param entries  the licenses that were checked
+     * @param licenses the checked licenses, null where the check failed
+     * @param errors   the errors of the failed checks
+     * @return the results
+     */
+    @NonNull
+    private static List<BatchResult> toResults(@NonNull List<LicenseBatchEntryDTO> entries, @NonNull License[] licenses,
+                                               @NonNull APIException[] errors) {
+        int size = entries.size();
+        List<BatchResult> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(new BatchResult(entries.get(i).getProduct(), licenses[i], errors[i]));
+        }
+        return results;
+    }
+    
+    /**
+     * Lookup the license with the given
+     * raw key for the given product.
+     * <p>
+     * Licenses are looked up by the index of the key, and
+     * their verifier is checked if they have one. If the
+     * license isn't found and there are still legacy keys,
+     * it's looked up by the legacy hash and migrated.
+     * </p>
+     *
+     * @param key     the raw key
+     * @param product the product the license is for
+     * @return the optional license
+     * @see License for license
+     */
+    @NonNull
+    public Optional<License> lookup(@NonNull String key, @NonNull String product) {
+        return lookup(key, product, indexKey(key));
+    }
+    
+    /**
+     * Lookup the license with the given raw
+     * key and key index for the given product.
+     *
+     * @param key     the raw key
+     * @param product the product the license is for
+     * @param index   the index of the key
+     * @return the optional license
+     * @see #lookup(String, String) for lookups
+     */
+    @NonNull
+    private Optional<License> lookup(@NonNull String key, @NonNull String product, @NonNull String index) {
+        Optional<License> optionalLicense = metricsService.time(Stage.LOOKUP, () -> {
+            Optional<License> found = licenseCache.getLicense(index, product);
+            if (found.isEmpty() && legacyKeys.get()) { // Try the legacy hash
+                found = migrateLegacy(key, product, index);
             }
-            // Sending new HWID log to the license owner
-            if (newHwid && discordService.isLogNewHwidsToOwner()) {
-                discordService.sendOwnerLog(license, new EmbedBuilder()
-                                                         .setColor(0xF2781B)
-                                                         .setTitle("New HWID")
-                                                         .setDescription("One of your licenses has been used on a new HWID:")
-                                                         .addField("License", "`" + obfuscateKey + "`", true)
-                                                         .addField("Product", license.getProduct(), true)
-                                                         .addField("HWID", "```" + hwid + "```", false)
-                );
+            return found;
+        });
+        if (optionalLicense.isEmpty() || !verify(key, optionalLicense.get())) {
+            return Optional.empty();
+        }
+        hashingService.markVerified(key, product, index); // The key exists, cache it
+        return optionalLicense;
+    }
+    
+    /**
+     * Get the index of the given raw key.
+     *
+     * @param key the raw key
+     * @return the key index
+     */
+    @NonNull
+    private String indexKey(@NonNull String key) {
+        return metricsService.time(Stage.KEY_HASH, () -> hashingService.indexKey(key));
+    }
+    
+    /**
+     * Migrate the license stored with the legacy
+     * hash of the given key to the key index.
+     * <p>
+     * As the id of a document can't be changed, the
+     * license is re-inserted under its index and the
+     * legacy document is removed.
+     * </p>
+     * <p>
+     * A filter of legacy hashes couldn't be checked without
+     * the BCrypt hash either, so keys that recently weren't
+     * found by it are remembered and never hashed again.
+     * </p>
+     *
+     * @param key     the raw key
+     * @param product the product the license is for
+     * @param index   the index of the key
+     * @return the migrated license, empty if there was no legacy license
+     */
+    @NonNull
+    Optional<License> migrateLegacy(@NonNull String key, @NonNull String product, @NonNull String index) {
+        if (licenseCache.isLegacyMiss(index, product)) { // Already hashed recently, and not found
+            return Optional.empty();
+        }
+        String legacyKey = hashingService.legacyHashKey(key);
+        Optional<License> optionalLicense = licenseCache.mightExist(legacyKey) ? store.getLicense(legacyKey, product)
+                                                : Optional.empty();
+        if (optionalLicense.isEmpty()) { // No legacy license
+            licenseCache.recordLegacyMiss(index, product);
+            return Optional.empty();
+        }
+        License license = optionalLicense.get();
+        license.setKey(index);
+        if (verifierEnabled) { // Store a slow verifier of the key
+            license.setVerifier(hashingService.hashVerifier(key));
+        }
+        try {
+            store.insert(license); // Insert the license under its index
+        } catch (DuplicateKeyException ex) { // Someone else migrated the license already
+            return licenseCache.getLicense(index, product);
+        }
+        store.moveBindings(legacyKey, index); // Keep the IPs and HWIDs of the license
+        store.deleteById(legacyKey); // Remove the legacy license
+        licenseCache.register(license);
+        licenseCache.update(license);
+        legacyKeys.set(store.hasLegacyKeys());
+        log.info("Migrated license key {} for product {} to the key index", MiscUtils.obfuscateKey(key), product);
+        return Optional.of(license);
+    }
+    
+    /**
+     * Check if the given raw key matches the given license.
+     *
+     * @param key     the raw key
+     * @param license the license to verify against
+     * @return true if the key matches, otherwise false
+     */
+    private boolean verify(@NonNull String key, @NonNull License license) {
+        return metricsService.time(Stage.KEY_HASH, () -> hashingService.verify(key, license));
+    }
+    
+    /**
+     * Log the given license being used, if enabled.
+     *
+     * @param license      the license being used
+     * @param obfuscateKey the obfuscated key of the license
+     * @param ip           the ip using the license
+     * @param hwid         the hwid using the license
+     * @param newIp        whether the IP is new
+     * @param newHwid      whether the HWID is new
+     */
+    void logUse(@NonNull License license, @NonNull String obfuscateKey, @NonNull String ip, @NonNull String hwid,
+                boolean newIp, boolean newHwid) {
+        if (!discordService.isLogUses()) {
+            return;
+        }
+        // god i hate sending discord embeds, it's so big and ugly :(
+        
+        // Constructing tags
+        StringBuilder tags = new StringBuilder();
+        if (newIp) { // New IP
+            tags.append("New IP");
+        }
+        if (newHwid) { // New HWID
+            if (tags.length() > 0) {
+                tags.append(" & ");
             }
-            
-            // Logging the license use
-            log.info("License key '{}' for product '{}' was used by {} (HWID: {})", key, product, ip, hwid);
+            tags.append("HWID");
+        }
+        long expires = license.isPermanent() ? -1L : license.getExpires().getTime() / 1000L;
+        int ipCount = license.getIpCount();
+        int hwidCount = license.getHwidCount();
+        discordService.sendLog(() -> new EmbedBuilder()
+                                         .setColor(Color.BLUE)
+                                         .setTitle("License Used" + (!tags.isEmpty() ? " (" + tags + ")" : ""))
+                                         .addField("License", "`" + obfuscateKey + "`", true)
+                                         .addField("Product", license.getProduct(), true)
+                                         .addField("Description", license.getDescription(), true)
+                                         .addField("Owner ID",
+                                             license.getOwnerSnowflake() <= 0L ? "N/A" : String.valueOf(license.getOwnerSnowflake()),
+                                             true
+                                         )
+                                         .addField("Owner Name",
+                                             license.getOwnerName() == null ? "N/A" : license.getOwnerName(),
+                                             true
+                                         )
+                                         .addField("Expiration",
+                                             expires == -1L ? "Never" : "<t:" + expires + ":R>",
+                                             true
+                                         )
+                                         .addField("IP", ip, true)
+                                         .addField("HWID", "```" + hwid + "```", false)
+                                         .addField("IPs",
+                                             (newIp ? ipCount + 1 : ipCount) + "/" + license.getIpLimit(),
+                                             true
+                                         )
+                                         .addField("HWIDs",
+                                             (newHwid ? hwidCount + 1 : hwidCount) + "/" + license.getHwidLimit(),
+                                             true
+                                         )
+        );
+    }
+    
+    /**
+     * Ensure the given license hasn't expired.
+     *
+     * @param license      the license to check
+     * @param obfuscateKey the obfuscated key of the license
+     * @throws LicenseExpiredException if the license has expired
+     */
+    void checkExpired(@NonNull License license, @NonNull String obfuscateKey) throws APIException {
+        if (!license.hasExpired()) {
+            return;
+        }
+        // Log the expired license
+        if (discordService.isLogExpired()) {
+            discordService.sendLog(() -> new EmbedBuilder()
+                                             .setColor(Color.RED)
+                                             .setTitle("License Expired")
+                                             .setDescription("License `%s` is expired".formatted(obfuscateKey))
+            );
+        }
+        throw new LicenseExpiredException();
+    }
+    
+    /**
+     * Invoked when the given license was used.
+     *
+     * @param license      the license that was used
+     * @param obfuscateKey the obfuscated key of the license
+     * @param ip           the ip that used the license
+     * @param hwid         the hwid that used the license
+     * @param newIp        whether the IP is new
+     * @param newHwid      whether the HWID is new
+     */
+    void onUsed(@NonNull License license, @NonNull String obfuscateKey, @NonNull String ip, @NonNull String hwid,
+                boolean newIp, boolean newHwid) {
+        // Sending new IP log to the license owner
+        if (newIp && discordService.isLogNewIpsToOwner()) {
+            discordService.sendOwnerLog(license, () -> new EmbedBuilder()
+                                                           .setColor(0xF2781B)
+                                                           .setTitle("New IP")
+                                                           .setDescription("One of your licenses has been used on a new IP:")
+                                                           .addField("License", "`" + obfuscateKey + "`", true)
+                                                           .addField("Product", license.getProduct(), true)
+                                                           .addField("IP", "```" + ip + "```", false)
+            );
+        }
+        // Sending new HWID log to the license owner
+        if (newHwid && discordService.isLogNewHwidsToOwner()) {
+            discordService.sendOwnerLog(license, () -> new EmbedBuilder()
+                                                           .setColor(0xF2781B)
+                                                           .setTitle("New HWID")
+                                                           .setDescription("One of your licenses has been used on a new HWID:")
+                                                           .addField("License", "`" + obfuscateKey + "`", true)
+                                                           .addField("Product", license.getProduct(), true)
+                                                           .addField("HWID", "```" + hwid + "```", false)
+            );
+        }
+        
+        // Logging the license use
+        log.info("License key '{}' for product '{}' was used by {} (HWID: {})", obfuscateKey, license.getProduct(), ip, hwid);
+    }
+    
+    /**
+     * Log the given license reaching one of
+     * its limits, if that's why it failed.
+     *
+     * @param license      the license that failed
+     * @param obfuscateKey the obfuscated key of the license
+     * @param ex           the exception the license failed with
+     */
+    void logLimitExceeded(@NonNull License license, @NonNull String obfuscateKey, @NonNull APIException ex) {
+        // Log that the license has reached it's IP limit
+        if (ex instanceof LicenseIpLimitExceededException && discordService.isLogIpLimitExceeded()) {
+            discordService.sendLog(() -> new EmbedBuilder()
+                                             .setColor(Color.RED)
+                                             .setTitle("License IP Limit Reached")
+                                             .setDescription("License `%s` has reached it's IP limit: **%s**".formatted(
+                                                 obfuscateKey,
+                                                 license.getIpLimit()
+                                             ))
+            );
+        } else if (ex instanceof LicenseHwidLimitExceededException && discordService.isLogHwidLimitExceeded()) {
+            discordService.sendLog(() -> new EmbedBuilder()
+                                             .setColor(Color.RED)
+                                             .setTitle("License HWID Limit Reached")
+                                             .setDescription("License `%s` has reached it's HWID limit: **%s**".formatted(
+                                                 obfuscateKey,
+                                                 license.getHwidLimit()
+                                             ))
+            );
+        }
+    }
+    
+    /**
+     * Record a use of the given license.
+     * <p>
+     * Any new IP or HWID is bound to the license first,
+     * which fails if its limit has been reached. The use
+     * is then recorded with a single atomic update. Uses
+     * that don't bind anything may be recorded in the
+     * background instead, see {@link UsageService}.
+     * </p>
+     *
+     * @param license  the license to use
+     * @param hashedIp the hashed ip used
+     * @param hwid     the hardware id used
+     * @param newIp    whether the IP is new to the license
+     * @param newHwid  whether the HWID is new to the license
+     * @return the updated license
+     * @throws APIException if a limit was reached, or the license is gone
+     */
+    @NonNull
+    private License recordUse(@NonNull License license, @NonNull String hashedIp, @NonNull String hwid,
+                              boolean newIp, boolean newHwid) throws APIException {
+        if (deferUse(license, newIp, newHwid)) { // Recorded in the background
             return license;
-        } catch (APIException ex) {
-            // Log that the license has reached it's IP limit
-            if (ex instanceof LicenseIpLimitExceededException && discordService.isLogIpLimitExceeded()) {
-                discordService.sendLog(new EmbedBuilder()
-                                           .setColor(Color.RED)
-                                           .setTitle("License IP Limit Reached")
-                                           .setDescription("License `%s` has reached it's IP limit: **%s**".formatted(
-                                               obfuscateKey,
-                                               license.getIpLimit()
-                                           ))
-                );
-            } else if (ex instanceof LicenseHwidLimitExceededException && discordService.isLogHwidLimitExceeded()) {
-                discordService.sendLog(new EmbedBuilder()
-                                           .setColor(Color.RED)
-                                           .setTitle("License HWID Limit Reached")
-                                           .setDescription("License `%s` has reached it's HWID limit: **%s**".formatted(
-                                               obfuscateKey,
-                                               license.getHwidLimit()
-                                           ))
-                );
-            }
-            throw ex; // Rethrow to handle where this method was invoked
         }
+        if (newIp || newHwid) { // Bind the new IP and/or HWID
+            store.bind(license.getKey(), hashedIp, hwid, newIp, newHwid);
+        }
+        return recordedUse(license, store.use(license.getKey(), license.getProduct()).orElse(null));
+    }
+    
+    /**
+     * Record a use of the given license in the background,
+     * if it doesn't bind anything new and write-behind is enabled.
+     *
+     * @param license the license to use
+     * @param newIp   whether the IP is new to the license
+     * @param newHwid whether the HWID is new to the license
+     * @return true if the use was recorded, false if it has to be written now
+     */
+    boolean deferUse(@NonNull License license, boolean newIp, boolean newHwid) {
+        if (newIp || newHwid || !usageService.isWriteBehind()) { // Must be written now
+            return false;
+        }
+        usageService.record(license.getKey());
+        return true;
+    }
+    
+    /**
+     * Handle the result of recording
+     * a use of the given license.
+     *
+     * @param license the license that was used
+     * @param current the license after the use, null if it's gone
+     * @return the updated license
+     * @throws APIException if the license is gone
+     */
+    @NonNull
+    private License recordedUse(@NonNull License license, License current) throws APIException {
+        if (current == null) { // The license was removed
+            licenseCache.invalidate(license.getKey(), license.getProduct());
+            throw new LicenseNotFoundException();
+        }
+        licenseCache.update(current); // Write through to the cache
+        return current;
     }
+    
+    /**
+     * The result of checking a license in a batch.
+     *
+     * @param product the product of the license
+     * @param license the checked license, null if the check failed
+     * @param error   the error of the check, null if the check succeeded
+     */
+    public record BatchResult(@NonNull String product, License license, APIException error) { }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import me.braydon.license.LicenseServer;
+import me.braydon.license.common.CryptographyUtils;
+import me.braydon.license.dto.LicenseTokenDTO;
+import me.braydon.license.model.License;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The service responsible for issuing signed
+ * offline tokens for checked {@link License}'s.
+ * <p>
+ * A token is the Base64 (URL safe) encoded JSON claims,
+ * followed by a dot and the Base64 (URL safe) encoded
+ * SHA256withRSA signature of the encoded claims.
+ * </p>
+ * <p>
+ * Signing is costly, so a token is reused for the same
+ * license and hwid until a quarter of its lifetime is left,
+ * or the license it was issued for changes.
+ * </p>
+ *
+ * @author Braydon
+ * @see LicenseTokenDTO for claims
+ */
+@Service
+public final class LicenseTokenService {
+    /**
+     * The {@link CryptographyService} to sign tokens with.
+     */
+    @NonNull private final CryptographyService cryptographyService;
+    
+    /**
+     * The amount of minutes tokens are valid for, 0 if disabled.
+     */
+    private final long tokenTtl;
+    
+    /**
+     * The issued tokens, by the license id and hwid they were issued for.
+     */
+    @NonNull private final Cache<String, IssuedToken> tokens;
+    
+    @Autowired
+    public LicenseTokenService(@NonNull CryptographyService cryptographyService,
+                               @Value("${licenses.token-ttl}") long tokenTtl,
+                               @Value("${licenses.token-cache-size}") long tokenCacheSize) {
+        this.cryptographyService = cryptographyService;
+        this.tokenTtl = tokenTtl;
+        tokens = CacheBuilder.newBuilder()
+                     .maximumSize(tokenCacheSize)
+                     .expireAfterWrite(Math.max(tokenTtl, 1L), TimeUnit.MINUTES)
+                     .build();
+    }
+    
+    /**
+     * Issue a token for the given license.
+     * <p>
+     * The token is never valid for longer
+     * than the license itself.
+     * </p>
+     *
+     * @param license the checked license
+     * @param key     the raw key of the license
+     * @param hwid    the hwid the license was checked from
+     * @return the token, null if tokens are disabled
+     */
+    public String issue(@NonNull License license, @NonNull String key, @NonNull String hwid) {
+        if (tokenTtl <= 0L) { // Tokens are disabled
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        long ttl = TimeUnit.MINUTES.toMillis(tokenTtl);
+        String cacheKey = license.getKey() + ":" + hwid;
+        IssuedToken cached = tokens.getIfPresent(cacheKey);
+        if (cached != null && cached.claims().getValidUntil() - now > ttl / 4L && cached.isFor(license)) { // Still fresh
+            return cached.token();
+        }
+        long validUntil = now + ttl;
+        if (!license.isPermanent()) {
+            validUntil = Math.min(validUntil, license.getExpires().getTime());
+        }
+        LicenseTokenDTO claims = new LicenseTokenDTO(
+            license.getKey(),
+            hashKey(key),
+            license.getProduct(),
+            hwid,
+            license.getDescription(),
+            license.getOwnerSnowflake(),
+            license.getOwnerName(),
+            license.getPlan(),
+            license.getLatestVersion(),
+            license.isPermanent() ? null : license.getExpires().getTime(),
+            now,
+            validUntil
+        );
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String encodedClaims = encoder.encodeToString(LicenseServer.GSON.toJson(claims).getBytes(StandardCharsets.UTF_8));
+        byte[] signature = cryptographyService.sign(encodedClaims.getBytes(StandardCharsets.US_ASCII)); // Sign the claims
+        String token = encodedClaims + "." + encoder.encodeToString(signature);
+        tokens.put(cacheKey, new IssuedToken(claims, token));
+        return token;
+    }
+    
+    /**
+     * Hash the given raw license key.
+     *
+     * @param key the key to hash
+     * @return the Base64 encoded SHA-256 hash
+     */
+    @NonNull @SneakyThrows
+    private static String hashKey(@NonNull String key) {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+    
+    /**
+     * A token that was issued.
+     *
+     * @param claims the claims of the token
+     * @param token  the signed token
+     */
+    private record IssuedToken(@NonNull LicenseTokenDTO claims, @NonNull String token) {
+        /**
+         * Check if the claims of this token
+         * still match the given license.
+         *
+         * @param license the license to check
+         * @return whether the claims match
+         */
+        private boolean isFor(@NonNull License license) {
+            Long expires = license.isPermanent() ? null : license.getExpires().getTime();
+            return claims.getProduct().equals(license.getProduct())
+                       && Objects.equals(claims.getDescription(), license.getDescription())
+                       && claims.getOwnerSnowflake() == license.getOwnerSnowflake()
+                       && Objects.equals(claims.getOwnerName(), license.getOwnerName())
+                       && claims.getPlan().equals(license.getPlan())
+                       && claims.getLatestVersion().equals(license.getLatestVersion())
+                       && Objects.equals(claims.getExpires(), expires);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import me.braydon.license.dto.LicenseTransferDTO;
+import me.braydon.license.dto.LicenseTransferProgressDTO;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseBinding;
+import me.braydon.license.repository.LicenseStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The service responsible for bulk importing
+ * and exporting {@link License}s as NDJSON.
+ * <p>
+ * Both directions stream a chunk at a time, so only a
+ * single chunk of licenses is ever held in memory. Imported
+ * keys are hashed in parallel on a dedicated fork-join pool,
+ * as BCrypt verifiers are slow by design, and each chunk is
+ * then inserted with a single unordered bulk write.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service
+@Slf4j(topic = "License Transfer")
+public final class LicenseTransferService {
+    /**
+     * The {@link LicenseStore} to use.
+     */
+    @NonNull private final LicenseStore store;
+    
+    /**
+     * The {@link LicenseService} to use.
+     */
+    @NonNull private final LicenseService licenseService;
+    
+    /**
+     * The {@link LicenseCacheService} to register imported licenses with.
+     */
+    @NonNull private final LicenseCacheService licenseCache;
+    
+    /**
+     * The {@link HashingService} to hash keys with.
+     */
+    @NonNull private final HashingService hashingService;
+    
+    /**
+     * The mapper to read and write lines with.
+     */
+    @NonNull private final ObjectMapper objectMapper;
+    
+    /**
+     * The pool to hash imported keys on.
+     */
+    @NonNull private final ForkJoinPool hashingPool;
+    
+    /**
+     * The amount of licenses to process at a time.
+     */
+    private final int chunkSize;
+    
+    /**
+     * Should a slow BCrypt verifier be stored for imported keys?
+     */
+    @Value("${licenses.verifier}")
+    private boolean verifierEnabled;
+    
+    @Autowired
+    public LicenseTransferService(@NonNull LicenseStore store, @NonNull LicenseService licenseService,
+                                  @NonNull LicenseCacheService licenseCache, @NonNull HashingService hashingService,
+                                  @NonNull ObjectMapper objectMapper,
+                                  @Value("${admin.transfer.chunk-size}") int chunkSize,
+                                  @Value("${admin.transfer.parallelism}") int parallelism) {
+        this.store = store;
+        this.licenseService = licenseService;
+        this.licenseCache = licenseCache;
+        this.hashingService = hashingService;
+        this.objectMapper = objectMapper;
+        this.chunkSize = Math.max(chunkSize, 1);
+        hashingPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+    
+    @PreDestroy
+    public void onShutdown() {
+        hashingPool.shutdownNow();
+    }
+    
+    /**
+     * Import the licenses from the given NDJSON input.
+     * <p>
+     * Invalid lines and licenses that already
+     * exist are skipped, and the progress is
+     * reported after every chunk.
+     * </p>
+     *
+     * @param input    the input to read licenses from
+     * @param progress the consumer to report progress to
+     * @return the final progress
+     * @throws IOException if reading the input fails
+     * @see LicenseTransferDTO for the line format
+     */
+    @NonNull
+    public LicenseTransferProgressDTO importLicenses(@NonNull InputStream input,
+                                                     @NonNull Consumer<LicenseTransferProgressDTO> progress) throws IOException {
+        LicenseTransferProgressDTO result = new LicenseTransferProgressDTO();
+        long started = System.currentTimeMillis();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            List<LicenseTransferDTO> chunk = new ArrayList<>(chunkSize);
+            long lineNumber = 0L;
+            int lines = 0; // The amount of lines in the current chunk
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) { // Skip empty lines
+                    continue;
+                }
+                lines++;
+                try {
+                    LicenseTransferDTO dto = objectMapper.readValue(line, LicenseTransferDTO.class);
+                    if (!dto.isValid()) {
+                        result.invalid(lineNumber, "Missing key or id, product, or limits");
+                    } else {
+                        chunk.add(dto);
+                    }
+                } catch (JsonProcessingException ex) {
+                    result.invalid(lineNumber, ex.getOriginalMessage());
+                }
+                if (lines >= chunkSize) { // Chunk is full, import it
+                    importChunk(chunk, lines, result);
+                    progress.accept(result);
+                    chunk.clear();
+                    lines = 0;
+                }
+            }
+            if (lines > 0) { // Import the remaining licenses
+                importChunk(chunk, lines, result);
+            }
+        }
+        licenseService.refreshLegacyKeys(); // Imported licenses may have legacy keys
+        result.done();
+        log.info("Imported {} licenses in {}ms ({} duplicates, {} invalid)",
+            result.getImported(), System.currentTimeMillis() - started, result.getDuplicates(), result.getInvalid()
+        );
+        return result;
+    }
+    
+    /**
+     * Export all licenses as NDJSON to the given output.
+     * <p>
+     * Licenses are read from a cursor, and the output is
+     * flushed after every chunk. Raw keys aren't stored, so
+     * licenses are exported by their id, which can be
+     * imported again as-is.
+     * </p>
+     *
+     * @param output the output to write licenses to
+     * @return the amount of licenses exported
+     * @throws IOException if writing the output fails
+     * @see LicenseTransferDTO for the line format
+     */
+    public long exportLicenses(@NonNull OutputStream output) throws IOException {
+        long exported = 0L;
+        long started = System.currentTimeMillis();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        try (Stream<License> licenses = store.streamAll(chunkSize)) {
+            List<License> chunk = new ArrayList<>(chunkSize);
+            Iterator<License> iterator = licenses.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() >= chunkSize) { // Chunk is full, export it
+                    exported += exportChunk(chunk, writer);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) { // Export the remaining licenses
+                exported += exportChunk(chunk, writer);
+            }
+        }
+        log.info("Exported {} licenses in {}ms", exported, System.currentTimeMillis() - started);
+        return exported;
+    }
+    
+    /**
+     * Hash and insert the given chunk of licenses.
+     *
+     * @param chunk  the valid licenses in the chunk
+     * @param lines  the amount of lines in the chunk
+     * @param result the progress to update
+     */
+    @SneakyThrows
+    private void importChunk(@NonNull List<LicenseTransferDTO> chunk, int lines, @NonNull LicenseTransferProgressDTO result) {
+        List<License> licenses = hashingPool.submit(() -> chunk.parallelStream().map(this::toLicense).toList()).get();
+        Set<License> inserted = Collections.newSetFromMap(new IdentityHashMap<>());
+        inserted.addAll(store.insertAll(licenses));
+        
+        // Bind the IPs and HWIDs of the licenses that were inserted
+        List<LicenseBinding> bindings = new ArrayList<>();
+        for (int i = 0; i < licenses.size(); i++) {
+            License license = licenses.get(i);
+            if (!inserted.contains(license)) { // Already existed, leave its bindings alone
+                continue;
+            }
+            LicenseTransferDTO dto = chunk.get(i);
+            for (String ip : nonNull(dto.getIps())) {
+                bindings.add(new LicenseBinding(license.getKey(), LicenseBinding.Type.IP, ip));
+            }
+            for (String hwid : nonNull(dto.getHwids())) {
+                bindings.add(new LicenseBinding(license.getKey(), LicenseBinding.Type.HWID, hwid));
+            }
+        }
+        store.insertBindings(bindings);
+        inserted.forEach(licenseCache::register); // Make the keys known to lookups
+        result.chunk(lines, inserted.size(), licenses.size() - inserted.size());
+        log.info("Imported chunk of {} licenses ({} processed so far)", inserted.size(), result.getProcessed());
+    }
+    
+    /**
+     * Write the given chunk of licenses, along
+     * with their bindings, to the given writer.
+     *
+     * @param chunk  the licenses to write
+     * @param writer the writer to write to
+     * @return the amount of licenses written
+     * @throws IOException if writing fails
+     */
+    private int exportChunk(@NonNull List<License> chunk, @NonNull Writer writer) throws IOException {
+        Map<String, Set<String>> ips = new HashMap<>();
+        Map<String, Set<String>> hwids = new HashMap<>();
+        List<String> keys = chunk.stream().map(License::getKey).toList();
+        try (Stream<LicenseBinding> bindings = store.streamBindings(keys)) {
+            bindings.forEach(binding -> (binding.getType() == LicenseBinding.Type.IP ? ips : hwids)
+                                            .computeIfAbsent(binding.getLicense(), key -> new HashSet<>())
+                                            .add(binding.getValue()));
+        }
+        for (License license : chunk) {
+            writer.write(objectMapper.writeValueAsString(toDTO(license,
+                ips.getOrDefault(license.getKey(), Set.of()), hwids.getOrDefault(license.getKey(), Set.of())
+            )));
+            writer.write('\n');
+        }
+        writer.flush();
+        return chunk.size();
+    }
+    
+    /**
+     * Create a license from the given imported license,
+     * indexing the raw key if it has one.
+     *
+     * @param dto the imported license
+     * @return the license
+     */
+    @NonNull
+    private License toLicense(@NonNull LicenseTransferDTO dto) {
+        License license = new License();
+        if (dto.getKey() != null) { // Index the raw key
+            license.setKey(hashingService.indexKey(dto.getKey()));
+            if (verifierEnabled) { // Store a slow verifier of the key
+                license.setVerifier(hashingService.hashVerifierDirect(dto.getKey()));
+            }
+        } else { // Already indexed
+            license.setKey(dto.getId());
+            license.setVerifier(dto.getVerifier());
+        }
+        license.setProduct(dto.getProduct());
+        license.setDescription(dto.getDescription());
+        license.setOwnerSnowflake(dto.getOwnerSnowflake() == null ? -1L : dto.getOwnerSnowflake());
+        license.setOwnerName(dto.getOwnerName());
+        license.setPlan(dto.getPlan() == null ? "Basic" : dto.getPlan());
+        license.setLatestVersion(dto.getLatestVersion() == null ? "1.0" : dto.getLatestVersion());
+        license.setUses(dto.getUses());
+        license.setIpCount(nonNull(dto.getIps()).size());
+        license.setHwidCount(nonNull(dto.getHwids()).size());
+        license.setIpLimit(dto.getIpLimit());
+        license.setHwidLimit(dto.getHwidLimit());
+        license.setExpires(dto.getExpires());
+        license.setLastUsed(dto.getLastUsed());
+        license.setCreated(dto.getCreated() == null ? new Date() : dto.getCreated());
+        return license;
+    }
+    
+    /**
+     * Create an exported license from the given license.
+     *
+     * @param license the license
+     * @param ips     the hashed IPs bound to the license
+     * @param hwids   the hardware ids bound to the license
+     * @return the exported license
+     */
+    @NonNull
+    private static LicenseTransferDTO toDTO(@NonNull License license, @NonNull Set<String> ips, @NonNull Set<String> hwids) {
+        return new LicenseTransferDTO(
+            null,
+            license.getKey(),
+            license.getVerifier(),
+            license.getProduct(),
+            license.getDescription(),
+            license.getOwnerSnowflake(),
+            license.getOwnerName(),
+            license.getPlan(),
+            license.getLatestVersion(),
+            license.getUses(),
+            ips,
+            hwids,
+            license.getIpLimit(),
+            license.getHwidLimit(),
+            license.getExpires(),
+            license.getLastUsed(),
+            license.getCreated()
+        );
+    }
+    
+    /**
+     * Get the given set, or an empty set if it's null.
+     *
+     * @param set the set
+     * @return the set
+     */
+    @NonNull
+    private static Set<String> nonNull(Set<String> set) {
+        return set == null ? Set.of() : set;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import me.braydon.license.exception.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The service responsible for recording
+ * metrics about license checks.
+ * <p>
+ * Every stage of a check is timed, and the outcome
+ * of every check is counted. Tags are kept low
+ * cardinality, keys and IPs are never used as tags,
+ * and products are only used once a license was found.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service
+public final class MetricsService {
+    private static final String STAGE_TIMER = "license.check.stage"; // The name of the stage timers
+    private static final String OUTCOME_COUNTER = "license.check.outcome"; // The name of the outcome counters
+    static final String NO_PRODUCT = "none"; // The product tag for checks that didn't find a license
+    
+    /**
+     * The registry to record metrics in.
+     */
+    @NonNull private final MeterRegistry registry;
+    
+    /**
+     * The timers for each stage of a check.
+     */
+    @NonNull private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    
+    /**
+     * The outcome counters, keyed by the outcome and product.
+     */
+    @NonNull private final Map<OutcomeKey, Counter> outcomeCounters = new ConcurrentHashMap<>();
+    
+    @Autowired
+    public MetricsService(@NonNull MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder(STAGE_TIMER)
+                                       .description("The time spent in each stage of a license check")
+                                       .tag("stage", stage.getTag())
+                                       .register(registry));
+        }
+    }
+    
+    /**
+     * Time the given stage of a check.
+     *
+     * @param stage    the stage to time
+     * @param supplier the stage to run
+     * @return the result of the stage
+     * @param <T> the result type
+     */
+    public <T> T time(@NonNull Stage stage, @NonNull Supplier<T> supplier) {
+        return stageTimers.get(stage).record(supplier);
+    }
+    
+    /**
+     * Time the given stage of a check.
+     *
+     * @param stage    the stage to time
+     * @param runnable the stage to run
+     */
+    public void time(@NonNull Stage stage, @NonNull Runnable runnable) {
+        stageTimers.get(stage).record(runnable);
+    }
+    
+    /**
+     * Record the time a stage of a check took.
+     * <p>
+     * This is for stages that don't run on
+     * a single thread, such as reactive ones.
+     * </p>
+     *
+     * @param stage the stage that was timed
+     * @param nanos the amount of nanoseconds the stage took
+     */
+    public void record(@NonNull Stage stage, long nanos) {
+        stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Count a successful check of a
+     * license for the given product.
+     *
+     * @param product the product of the license
+     */
+    public void countSuccess(@NonNull String product) {
+        countOutcome(Outcome.SUCCESS, product);
+    }
+    
+    /**
+     * Count a check that failed with the given exception.
+     * <p>
+     * The product is only used as a tag if
+     * the exception means the license exists.
+     * </p>
+     *
+     * @param ex      the exception the check failed with
+     * @param product the product that was requested
+     */
+    public void countFailure(@NonNull APIException ex, @NonNull String product) {
+        Outcome outcome = Outcome.of(ex);
+        countOutcome(outcome, outcome.isLicenseFound() ? product : NO_PRODUCT);
+    }
+    
+    /**
+     * Count the given outcome of a check.
+     *
+     * @param outcome the outcome
+     * @param product the product tag
+     */
+    private void countOutcome(@NonNull Outcome outcome, @NonNull String product) {
+        outcomeCounters.computeIfAbsent(new OutcomeKey(outcome, product), key -> Counter.builder(OUTCOME_COUNTER)
+                                                                                      .description("The outcomes of license checks")
+                                                                                      .tag("outcome", outcome.getTag())
+                                                                                      .tag("product", product)
+                                                                                      .register(registry)
+        ).increment();
+    }
+    
+    /**
+     * A timed stage of a license check.
+     */
+    @AllArgsConstructor @Getter
+    public enum Stage {
+        BODY_VALIDATION("body_validation"),
+        DECRYPT("decrypt"),
+        HWID_VALIDATION("hwid_validation"),
+        KEY_HASH("key_hash"),
+        IP_HASH("ip_hash"),
+        LOOKUP("lookup"),
+        RECORD_USE("record_use"),
+        TOKEN_SIGN("token_sign"),
+        DISCORD_DISPATCH("discord_dispatch");
+        
+        /**
+         * The value of the stage tag.
+         */
+        @NonNull private final String tag;
+    }
+    
+    /**
+     * The outcome of a license check.
+     */
+    @AllArgsConstructor @Getter
+    enum Outcome {
+        SUCCESS("success", true),
+        NOT_FOUND("not_found", false),
+        EXPIRED("expired", true),
+        IP_LIMIT_EXCEEDED("ip_limit_exceeded", true),
+        HWID_LIMIT_EXCEEDED("hwid_limit_exceeded", true),
+        INVALID_REQUEST("invalid_request", false),
+        RATE_LIMITED("rate_limited", false),
+        ERROR("error", false);
+        
+        /**
+         * The value of the outcome tag.
+         */
+        @NonNull private final String tag;
+        
+        /**
+         * Does this outcome mean the license exists?
+         */
+        private final boolean licenseFound;
+        
+        /**
+         * Get the outcome for the given exception.
+         *
+         * @param ex the exception
+         * @return the outcome
+         */
+        @NonNull
+        public static Outcome of(@NonNull APIException ex) {
+            if (ex instanceof LicenseNotFoundException) {
+                return NOT_FOUND;
+            } else if (ex instanceof LicenseExpiredException) {
+                return EXPIRED;
+            } else if (ex instanceof LicenseIpLimitExceededException) {
+                return IP_LIMIT_EXCEEDED;
+            } else if (ex instanceof LicenseHwidLimitExceededException) {
+                return HWID_LIMIT_EXCEEDED;
+            } else if (ex instanceof RateLimitExceededException) {
+                return RATE_LIMITED;
+            }
+            return ex.getStatus() == HttpStatus.BAD_REQUEST ? INVALID_REQUEST : ERROR;
+        }
+    }
+    
+    /**
+     * The key for the outcome counters.
+     *
+     * @param outcome the outcome
+     * @param product the product tag
+     */
+    private record OutcomeKey(@NonNull Outcome outcome, @NonNull String product) { }
+}
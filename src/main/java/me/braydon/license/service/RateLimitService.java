@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import me.braydon.license.exception.RateLimitExceededException;
+import me.braydon.license.model.License;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The service responsible for rate limiting
+ * license checks per IP and per license key.
+ * <p>
+ * Each IP and key has a token bucket, which is stored as the
+ * time the bucket will be full again (GCRA). Taking a token is
+ * a single compare-and-set, so buckets are lock-free. Buckets
+ * that haven't been used for a while are evicted, which is the
+ * same as them having refilled.
+ * </p>
+ * <p>
+ * A license that can be used on many machines gets a key
+ * bucket that is as many times larger and faster, so site
+ * licenses and restart storms aren't limited as one machine.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service
+public final class RateLimitService implements MeterBinder {
+    private static final String REJECTED_COUNTER = "license.check.rate.limited";
+    private static final String BUCKETS_GAUGE = "license.check.rate.buckets";
+    
+    /**
+     * The limiter for IPs, null if disabled.
+     */
+    private final Limiter ipLimiter;
+    
+    /**
+     * The limiter for license keys, null if disabled.
+     */
+    private final Limiter keyLimiter;
+    
+    public RateLimitService(@Value("${rate-limits.ip.rate}") double ipRate, @Value("${rate-limits.ip.burst}") int ipBurst,
+                            @Value("${rate-limits.key.rate}") double keyRate, @Value("${rate-limits.key.burst}") int keyBurst,
+                            @Value("${rate-limits.max-size}") long maxSize,
+                            @Value("${rate-limits.expire-after-access}") long expireAfterAccess) {
+        ipLimiter = ipRate > 0D ? new Limiter(ipRate, ipBurst, maxSize, expireAfterAccess) : null;
+        keyLimiter = keyRate > 0D ? new Limiter(keyRate, keyBurst, maxSize, expireAfterAccess) : null;
+    }
+    
+    /**
+     * Take a token for a check from the given IP.
+     *
+     * @param ip the real IP of the requester
+     * @throws RateLimitExceededException if the IP has no tokens left
+     */
+    public void checkIp(@NonNull String ip) throws RateLimitExceededException {
+        checkIp(ip, 1);
+    }
+    
+    /**
+     * Take a token for each of the given amount
+     * of checks from the given IP, at once.
+     * <p>
+     * No more than the burst is taken, so a
+     * batch larger than it can still pass.
+     * </p>
+     *
+     * @param ip     the real IP of the requester
+     * @param checks the amount of checks
+     * @throws RateLimitExceededException if the IP doesn't have enough tokens left
+     */
+    public void checkIp(@NonNull String ip, int checks) throws RateLimitExceededException {
+        if (ipLimiter != null && checks > 0) {
+            ipLimiter.acquire(ip, checks, 1);
+        }
+    }
+    
+    /**
+     * Take a token for a check of the given license key.
+     * <p>
+     * The bucket is scaled by the most IPs or HWIDs
+     * the license can be used from, if it's cached.
+     * Otherwise the key gets a single machine's bucket
+     * until its license is next cached.
+     * </p>
+     *
+     * @param index   the index of the license key
+     * @param license the cached license of the key, null if not cached
+     * @throws RateLimitExceededException if the key has no tokens left
+     */
+    public void checkKey(@NonNull String index, License license) throws RateLimitExceededException {
+        if (keyLimiter != null) {
+            keyLimiter.acquire(index, 1, license == null ? 1 : Math.max(Math.max(license.getIpLimit(), license.getHwidLimit()), 1));
+        }
+    }
+    
+    /**
+     * Bind the rejection counters and bucket
+     * gauges to the given registry.
+     *
+     * @param registry the registry to bind to
+     */
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        bind(registry, ipLimiter, "ip");
+        bind(registry, keyLimiter, "key");
+    }
+    
+    /**
+     * Bind the metrics of the given limiter.
+     *
+     * @param registry the registry to bind to
+     * @param limiter  the limiter, null if disabled
+     * @param limit    the value of the limit tag
+     */
+    private static void bind(@NonNull MeterRegistry registry, Limiter limiter, @NonNull String limit) {
+        if (limiter == null) {
+            return;
+        }
+        FunctionCounter.builder(REJECTED_COUNTER, limiter.rejected, AtomicLong::get)
+            .description("The amount of checks rejected by a rate limit")
+            .tag("limit", limit)
+            .register(registry);
+        Gauge.builder(BUCKETS_GAUGE, limiter.buckets, Cache::size)
+            .description("The amount of tracked rate limit buckets")
+            .tag("limit", limit)
+            .register(registry);
+    }
+    
+    /**
+     * A set of token buckets sharing the same rate and burst.
+     */
+    private static final class Limiter {
+        /**
+         * The buckets, the value is the time (in nanos)
+         * the bucket will be full again.
+         */
+        @NonNull private final Cache<String, AtomicLong> buckets;
+        
+        /**
+         * The amount of nanos it takes to refill a single token.
+         */
+        private final long interval;
+        
+        /**
+         * The amount of tokens a bucket holds.
+         */
+        private final int burst;
+        
+        /**
+         * The amount of rejected requests.
+         */
+        @NonNull private final AtomicLong rejected = new AtomicLong();
+        
+        private Limiter(double rate, int burst, long maxSize, long expireAfterAccess) {
+            interval = (long) (TimeUnit.SECONDS.toNanos(1L) / rate);
+            this.burst = Math.max(burst, 1);
+            buckets = CacheBuilder.newBuilder()
+                          .maximumSize(maxSize)
+                          .expireAfterAccess(expireAfterAccess, TimeUnit.SECONDS)
+                          .build();
+        }
+        
+        /**
+         * Take tokens from the bucket with the given id.
+         *
+         * @param id     the id of the bucket
+         * @param tokens the amount of tokens to take, at most the burst
+         * @param scale  how many times larger and faster the bucket is
+         * @throws RateLimitExceededException if the bucket doesn't have enough tokens left
+         */
+        @SneakyThrows
+        private void acquire(@NonNull String id, int tokens, int scale) throws RateLimitExceededException {
+            long scaledInterval = Math.max(interval / scale, 1L);
+            long cost = scaledInterval * Math.min(tokens, burst);
+            long tolerance = scaledInterval * ((long) burst * scale - 1L); // How far behind the bucket can be
+            AtomicLong bucket = buckets.get(id, () -> new AtomicLong(Long.MIN_VALUE));
+            while (true) {
+                long full = bucket.get();
+                long now = System.nanoTime(); // Read after the bucket, so a lost race never sees a stale time
+                long start = full == Long.MIN_VALUE || full - now < 0L ? now : full; // A full bucket starts from now
+                long wait = start + cost - scaledInterval - now - tolerance;
+                if (wait > 0L) { // Out of tokens
+                    rejected.incrementAndGet();
+                    throw new RateLimitExceededException(Math.max(TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999L), 1L));
+                }
+                if (bucket.compareAndSet(full, start + cost)) {
+                    return;
+                }
+            }
+        }
+    }
+}
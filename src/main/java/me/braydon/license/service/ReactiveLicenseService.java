@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.service;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import me.braydon.license.common.MiscUtils;
+import me.braydon.license.exception.APIException;
+import me.braydon.license.exception.LicenseNotFoundException;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseBinding;
+import me.braydon.license.repository.ReactiveLicenseRepository;
+import me.braydon.license.service.MetricsService.Stage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.function.Supplier;
+
+/**
+ * The non-blocking check pipeline of the reactive profile.
+ * <p>
+ * Checks behave exactly like {@link LicenseService#check(String, String, String, String)},
+ * but never block the event loop. Mongo is queried with the reactive driver, BCrypt
+ * runs on the {@link ComputeService} pool (and only when the result isn't cached),
+ * and Discord logs are queued without waiting for them to be sent.
+ * </p>
+ * <p>
+ * The rare migration of a legacy key still uses the
+ * blocking repository, so it's moved off the event loop.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service
+@Profile("reactive")
+@Slf4j(topic = "Licenses")
+public final class ReactiveLicenseService {
+    /**
+     * The {@link ReactiveLicenseRepository} to use.
+     */
+    @NonNull private final ReactiveLicenseRepository repository;
+    
+    /**
+     * The {@link LicenseService} to share logging and legacy migration with.
+     */
+    @NonNull private final LicenseService licenseService;
+    
+    /**
+     * The {@link HashingService} to use for hashing keys and IPs.
+     */
+    @NonNull private final HashingService hashingService;
+    
+    /**
+     * The {@link LicenseCacheService} to read licenses through.
+     */
+    @NonNull private final LicenseCacheService licenseCache;
+    
+    /**
+     * The {@link ComputeService} to run BCrypt on.
+     */
+    @NonNull private final ComputeService computeService;
+    
+    /**
+     * The {@link MetricsService} to use.
+     */
+    @NonNull private final MetricsService metricsService;
+    
+    /**
+     * The {@link RateLimitService} to limit checks of a key with.
+     */
+    @NonNull private final RateLimitService rateLimitService;
+    
+    @Autowired
+    public ReactiveLicenseService(@NonNull ReactiveLicenseRepository repository, @NonNull LicenseService licenseService,
+                                  @NonNull HashingService hashingService, @NonNull LicenseCacheService licenseCache,
+                                  @NonNull ComputeService computeService, @NonNull MetricsService metricsService,
+                                  @NonNull RateLimitService rateLimitService) {
+        this.repository = repository;
+        this.licenseService = licenseService;
+        this.hashingService = hashingService;
+        this.licenseCache = licenseCache;
+        this.computeService = computeService;
+        this.metricsService = metricsService;
+        this.rateLimitService = rateLimitService;
+    }
+    
+    /**
+     * Check the given license.
+     *
+     * @param key     the key to check
+     * @param product the product of the license
+     * @param ip      the ip using the license
+     * @param hwid    the hwid using the license
+     * @return the checked license, or an {@link APIException} if there was an error checking it
+     * @see License for license
+     */
+    @NonNull
+    public Mono<License> check(@NonNull String key, @NonNull String product, @NonNull String ip, @NonNull String hwid) {
+        return Mono.defer(() -> {
+            String index = metricsService.time(Stage.KEY_HASH, () -> hashingService.indexKey(key)); // Index the key
+            rateLimitService.checkKey(index, licenseCache.getCached(index, product)); // Limit checks of the same key before anything slow runs
+            return lookup(key, product, index);
+        }).switchIfEmpty(Mono.defer(() -> {
+            log.error("License key {} for product {} not found", MiscUtils.obfuscateKey(key), product); // Log the error
+            return Mono.error(new LicenseNotFoundException());
+        })).flatMap(license -> hashIp(ip).flatMap(hashedIp -> use(license, key, ip, hashedIp, hwid)));
+    }
+    
+    /**
+     * Lookup the license with the given raw
+     * key and key index for the given product.
+     *
+     * @param key     the raw key
+     * @param product the product the license is for
+     * @param index   the index of the key
+     * @return the license, empty if not found
+     */
+    @NonNull
+    private Mono<License> lookup(@NonNull String key, @NonNull String product, @NonNull String index) {
+        Mono<License> found = timed(Stage.LOOKUP, () -> {
+            License cached = licenseCache.getCached(index, product);
+            if (cached != null) { // Cache hit
+                return Mono.just(cached);
+            }
+            if (licenseCache.isKnownMiss(index, product)) { // Definitely doesn't exist
+                return Mono.empty();
+            }
+            return repository.getCheckLicense(index, product)
+                       .doOnNext(licenseCache::update)
+                       .switchIfEmpty(Mono.fromRunnable(() -> licenseCache.recordMiss(index, product)));
+        });
+        if (licenseService.hasLegacyKeys()) { // Try the legacy hash, off the event loop
+            found = found.switchIfEmpty(Mono.fromCallable(() -> licenseService.migrateLegacy(key, product, index).orElse(null))
+                                            .subscribeOn(Schedulers.boundedElastic()));
+        }
+        return found.filterWhen(license -> verify(key, license))
+                   .doOnNext(license -> hashingService.markVerified(key, product, index)); // The key exists, cache it
+    }
+    
+    /**
+     * Check if the given raw key matches the given license.
+     *
+     * @param key     the raw key
+     * @param license the license to verify against
+     * @return true if the key matches, otherwise false
+     */
+    @NonNull
+    private Mono<Boolean> verify(@NonNull String key, @NonNull License license) {
+        if (hashingService.isVerified(key, license)) { // Nothing slow to check
+            return Mono.just(true);
+        }
+        return timed(Stage.KEY_HASH, () -> compute(() -> hashingService.verify(key, license)));
+    }
+    
+    /**
+     * Hash the given IP address.
+     *
+     * @param ip the ip to hash
+     * @return the hashed ip
+     */
+    @NonNull
+    private Mono<String> hashIp(@NonNull String ip) {
+        String hashedIp = hashingService.getCachedIpHash(ip);
+        if (hashedIp != null) { // Already hashed
+            return Mono.just(hashedIp);
+        }
+        return timed(Stage.IP_HASH, () -> compute(() -> hashingService.hashIp(ip)));
+    }
+    
+    /**
+     * Use the given found license.
+     *
+     * @param license  the license to use
+     * @param key      the raw key of the license
+     * @param ip       the ip using the license
+     * @param hashedIp the hashed ip using the license
+     * @param hwid     the hwid using the license
+     * @return the used license
+     */
+    @NonNull
+    private Mono<License> use(@NonNull License license, @NonNull String key, @NonNull String ip, @NonNull String hashedIp,
+                              @NonNull String hwid) {
+        String obfuscateKey = MiscUtils.obfuscateKey(key); // Obfuscate the key
+        return timed(Stage.LOOKUP, () -> repository.findBindings(license.getKey(), hashedIp, hwid)).flatMap(bindings -> {
+            boolean newIp = !bindings.contains(LicenseBinding.Type.IP); // Is the IP new?
+            boolean newHwid = !bindings.contains(LicenseBinding.Type.HWID); // Is the HWID new?
+            
+            licenseService.logUse(license, obfuscateKey, ip, hwid, newIp, newHwid); // Log the license being used, if enabled
+            licenseService.checkExpired(license, obfuscateKey); // The license has expired
+            if (licenseService.deferUse(license, newIp, newHwid)) { // Recorded in the background
+                licenseService.onUsed(license, obfuscateKey, ip, hwid, false, false);
+                return Mono.just(license);
+            }
+            return timed(Stage.RECORD_USE, () -> {
+                Mono<Void> bound = newIp || newHwid ? repository.bind(license.getKey(), hashedIp, hwid, newIp, newHwid) : Mono.empty();
+                return bound.then(repository.use(license.getKey(), license.getProduct()));
+            }).switchIfEmpty(Mono.defer(() -> { // The license was removed
+                licenseCache.invalidate(license.getKey(), license.getProduct());
+                return Mono.error(new LicenseNotFoundException());
+            })).doOnNext(used -> {
+                licenseCache.update(used); // Write through to the cache
+                licenseService.onUsed(license, obfuscateKey, ip, hwid, newIp, newHwid);
+            }).doOnError(APIException.class, ex -> licenseService.logLimitExceeded(license, obfuscateKey, ex));
+        });
+    }
+    
+    /**
+     * Run the given CPU bound work on the compute pool.
+     *
+     * @param work the work to run
+     * @return the result of the work
+     * @param <T> the result type
+     */
+    @NonNull
+    private <T> Mono<T> compute(@NonNull Supplier<T> work) {
+        return Mono.fromFuture(() -> computeService.submit(work));
+    }
+    
+    /**
+     * Time the given stage of a check,
+     * from subscription until it terminates.
+     *
+     * @param stage the stage to time
+     * @param mono  the supplier of the stage
+     * @return the timed stage
+     * @param <T> the result type
+     */
+    @NonNull
+    private <T> Mono<T> timed(@NonNull Stage stage, @NonNull Supplier<Mono<T>> mono) {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            return mono.get().doOnTerminate(() -> metricsService.record(stage, System.nanoTime() - started));
+        });
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.service;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import me.braydon.license.exception.APIException;
+import me.braydon.license.repository.LicenseStore;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The service responsible for the slow work
+ * needed before licenses can be checked.
+ * <p>
+ * Preparing the store (creating the indexes, or replaying the
+ * embedded log), loading (or generating) our keys, building the
+ * key filter, migrating licenses and creating the audit log all
+ * wait on the disk or Mongo. When deferred,
+ * this runs in the background once the context is up, so the
+ * server starts right away, and is retried until Mongo can be
+ * reached.
+ * The readiness health group reports out of service until
+ * every step is done, so no traffic is routed here before.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service
+@Slf4j(topic = "Startup")
+public final class StartupService implements SmartInitializingSingleton, HealthIndicator {
+    /**
+     * The {@link AsyncTaskExecutor} to run deferred startup on.
+     */
+    @NonNull private final AsyncTaskExecutor taskExecutor;
+    
+    /**
+     * The steps to run, in order.
+     */
+    @NonNull private final List<Step> steps;
+    
+    /**
+     * Should startup run in the background?
+     */
+    private final boolean deferred;
+    
+    /**
+     * The amount of seconds to wait before retrying a failed step.
+     */
+    private final long retryDelay;
+    
+    /**
+     * The amount of steps that are done.
+     */
+    private volatile int completed;
+    
+    /**
+     * The error the last step failed with, null if none.
+     */
+    private volatile Throwable lastError;
+    
+    /**
+     * The amount of milliseconds after the JVM
+     * started that startup was done, -1 if not yet.
+     */
+    private volatile long readyAfter = -1L;
+    
+    @Autowired
+    public StartupService(@NonNull CryptographyService cryptographyService, @NonNull LicenseStore store,
+                          @NonNull LicenseCacheService licenseCache, @NonNull LicenseService licenseService,
+                          @NonNull AuditService auditService,
+                          @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) @NonNull AsyncTaskExecutor taskExecutor,
+                          @Value("${startup.deferred}") boolean deferred, @Value("${startup.retry-delay}") long retryDelay) {
+        this.taskExecutor = taskExecutor;
+        this.deferred = deferred;
+        this.retryDelay = retryDelay;
+        steps = List.of(
+            new Step("store", store::initialize),
+            new Step("keys", cryptographyService::loadKeys),
+            new Step("key filter", licenseCache::onInitialize),
+            new Step("licenses", licenseService::onInitialize),
+            new Step("audit log", auditService::onInitialize)
+        );
+    }
+    
+    /**
+     * Start running the steps once every
+     * singleton has been created.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!deferred) { // Block the boot until done, failing it on error
+            runSteps();
+            return;
+        }
+        taskExecutor.execute(() -> {
+            while (true) {
+                try {
+                    runSteps();
+                    return;
+                } catch (Exception ex) {
+                    lastError = ex;
+                    log.warn("Startup step '{}' failed, retrying in {}s: {}", steps.get(completed).name(), retryDelay,
+                        ex.getMessage()
+                    );
+                }
+                try {
+                    TimeUnit.SECONDS.sleep(retryDelay);
+                } catch (InterruptedException ex) { // Shutting down
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        });
+    }
+    
+    /**
+     * Check if startup is done.
+     *
+     * @return true if ready, otherwise false
+     */
+    public boolean isReady() {
+        return completed == steps.size();
+    }
+    
+    /**
+     * Ensure startup is done before a license is checked.
+     * <p>
+     * Until the licenses step is done, bindings and legacy
+     * keys aren't migrated yet, so checks would be wrongly
+     * rejected, or would reserve bindings the migration
+     * then miscounts.
+     * </p>
+     *
+     * @throws APIException if startup isn't done yet
+     */
+    public void ensureReady() throws APIException {
+        if (!isReady()) {
+            throw new APIException(HttpStatus.SERVICE_UNAVAILABLE, "Server is starting, please try again");
+        }
+    }
+    
+    /**
+     * Report whether startup is done.
+     *
+     * @return up if ready, otherwise out of service
+     */
+    @Override
+    public Health health() {
+        int completed = this.completed;
+        if (completed == steps.size()) { // Ready
+            return Health.up().withDetail("readyAfter", readyAfter + "ms").build();
+        }
+        Health.Builder health = Health.outOfService().withDetail("step", steps.get(completed).name());
+        Throwable lastError = this.lastError;
+        if (lastError != null) {
+            health.withDetail("error", String.valueOf(lastError.getMessage()));
+        }
+        return health.build();
+    }
+    
+    /**
+     * Run the steps that aren't done yet, in order.
+     */
+    private void runSteps() {
+        while (completed < steps.size()) {
+            Step step = steps.get(completed);
+            long before = System.currentTimeMillis();
+            step.action().run();
+            log.info("Loaded the {} in {}ms", step.name(), System.currentTimeMillis() - before);
+            completed++;
+        }
+        lastError = null;
+        readyAfter = ManagementFactory.getRuntimeMXBean().getUptime();
+        log.info("Ready to check licenses {}ms after the JVM started", readyAfter);
+    }
+    
+    /**
+     * A step of startup.
+     *
+     * @param name   the name of what the step loads
+     * @param action the action of the step
+     */
+    private record Step(@NonNull String name, @NonNull Runnable action) { }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseUse;
+import me.braydon.license.repository.LicenseStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The service responsible for recording
+ * the uses of {@link License}s in the background.
+ * <p>
+ * Most checks come from a machine that is already bound to
+ * the license, and only add a use. Those uses are counted
+ * in memory, and written periodically with a single bulk
+ * write, so a license used a thousand times between flushes
+ * costs a single update. Uses are also flushed on shutdown.
+ * </p>
+ * <p>
+ * The uses and last used date of a license can be behind
+ * by up to the flush interval, and uses recorded since the
+ * last flush are lost if the server is killed.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service
+@Slf4j(topic = "Usage")
+public final class UsageService implements MeterBinder {
+    /**
+     * The {@link LicenseStore} to write uses with.
+     */
+    @NonNull private final LicenseStore store;
+    
+    /**
+     * Should uses be written in the background?
+     */
+    @Getter private final boolean writeBehind;
+    
+    /**
+     * The maximum amount of licenses to update in a single bulk write.
+     */
+    private final int batchSize;
+    
+    /**
+     * The uses that haven't been written yet, keyed by license key.
+     */
+    @NonNull private final Map<String, Usage> pending = new ConcurrentHashMap<>();
+    
+    /**
+     * The usages that were removed from the pending uses by
+     * the last flush, as they had no new uses.
+     * <p>
+     * They're flushed once more, to write any use that was
+     * recorded to them while they were being removed. A use
+     * is only lost if its thread stalls for a whole flush
+     * interval between looking the usage up and adding to it.
+     * </p>
+     */
+    @NonNull private final Map<String, Usage> retired = new HashMap<>();
+    
+    /**
+     * The amount of uses that were written.
+     */
+    @NonNull private final AtomicLong flushed = new AtomicLong();
+    
+    @Autowired
+    public UsageService(@NonNull LicenseStore store, @Value("${usage.write-behind}") boolean writeBehind,
+                        @Value("${usage.batch-size}") int batchSize) {
+        this.store = store;
+        this.writeBehind = writeBehind;
+        this.batchSize = Math.max(batchSize, 1);
+    }
+    
+    @PreDestroy
+    public void onShutdown() {
+        flush();
+    }
+    
+    /**
+     * Record a use of the license with the given key.
+     *
+     * @param key the key of the license
+     */
+    public void record(@NonNull String key) {
+        pending.computeIfAbsent(key, k -> new Usage()).add(1L, System.currentTimeMillis());
+    }
+    
+    /**
+     * Write the recorded uses to their licenses.
+     * <p>
+     * If a write fails, its uses are recorded
+     * again, to be retried by the next flush.
+     * </p>
+     */
+    @Scheduled(fixedDelayString = "${usage.flush-interval}", timeUnit = TimeUnit.SECONDS)
+    public synchronized void flush() {
+        List<LicenseUse> uses = new ArrayList<>();
+        retired.forEach((key, usage) -> drain(key, usage, uses)); // Uses that raced with their removal
+        retired.clear();
+        for (Map.Entry<String, Usage> entry : pending.entrySet()) {
+            String key = entry.getKey();
+            Usage usage = entry.getValue();
+            if (!drain(key, usage, uses) && pending.remove(key, usage)) { // No new uses, stop tracking the license
+                retired.put(key, usage);
+            }
+        }
+        if (uses.isEmpty()) { // Nothing to write
+            return;
+        }
+        long started = System.currentTimeMillis();
+        long total = 0L;
+        for (int from = 0; from < uses.size(); from += batchSize) {
+            List<LicenseUse> batch = uses.subList(from, Math.min(from + batchSize, uses.size()));
+            try {
+                store.addUses(batch);
+                for (LicenseUse use : batch) {
+                    total += use.uses();
+                }
+            } catch (Exception ex) { // Try again next flush
+                log.warn("Failed to write the uses of {} licenses, retrying next flush: {}", batch.size(), ex.getMessage());
+                for (LicenseUse use : batch) {
+                    pending.computeIfAbsent(use.key(), k -> new Usage()).add(use.uses(), use.lastUsed().getTime());
+                }
+            }
+        }
+        flushed.addAndGet(total);
+        log.debug("Wrote {} uses of {} licenses in {}ms", total, uses.size(), System.currentTimeMillis() - started);
+    }
+    
+    /**
+     * Bind the usage metrics to the given registry.
+     *
+     * @param registry the registry to bind to
+     */
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("license.uses.pending", pending, Map::size)
+            .description("The amount of licenses with uses that haven't been written yet")
+            .register(registry);
+        FunctionCounter.builder("license.uses.flushed", flushed, AtomicLong::get)
+            .description("The amount of license uses written in the background")
+            .register(registry);
+    }
+    
+    /**
+     * Take the uses recorded to the given usage
+     * since it was last drained.
+     *
+     * @param key   the key of the license
+     * @param usage the usage to drain
+     * @param uses  the uses to add the drained uses to
+     * @return true if there were uses, otherwise false
+     */
+    private static boolean drain(@NonNull String key, @NonNull Usage usage, @NonNull List<LicenseUse> uses) {
+        long count = usage.uses.sumThenReset();
+        if (count == 0L) { // No new uses
+            return false;
+        }
+        uses.add(new LicenseUse(key, count, new Date(usage.lastUsed.get())));
+        return true;
+    }
+    
+    /**
+     * The uses of a license that haven't been written yet.
+     * <p>
+     * Both counters are striped, so checks of the same
+     * license don't contend with each other.
+     * </p>
+     */
+    private static final class Usage {
+        /**
+         * The amount of uses since the last flush.
+         */
+        @NonNull private final LongAdder uses = new LongAdder();
+        
+        /**
+         * The unix time of the last use.
+         */
+        @NonNull private final LongAccumulator lastUsed = new LongAccumulator(Math::max, 0L);
+        
+        /**
+         * Add the given amount of uses.
+         *
+         * @param count    the amount of uses
+         * @param lastUsed the unix time of the last use
+         */
+        void add(long count, long lastUsed) {
+            uses.add(count);
+            this.lastUsed.accumulate(lastUsed);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import lombok.NonNull;
+import me.braydon.license.model.License;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the {@link EmbeddedLicenseStore}
+ * against the {@link LicenseStore} contract.
+ *
+ * @author Braydon
+ */
+class EmbeddedLicenseStoreTest extends LicenseStoreContractTest {
+    @TempDir Path directory;
+    
+    @Override @NonNull
+    protected LicenseStore openStore() {
+        return new EmbeddedLicenseStore(logPath().toString(), 1000L);
+    }
+    
+    @Override
+    protected void closeStore(@NonNull LicenseStore store) throws Exception {
+        ((EmbeddedLicenseStore) store).onShutdown();
+    }
+    
+    @Test
+    void replaysAfterTruncatedLastRecord() throws Exception {
+        store.insert(license("key", 1, 1));
+        store.use("key", PRODUCT);
+        closeStore(store);
+        long whole = Files.size(logPath());
+        
+        // A record torn by a crash mid-write: its header claims more bytes than were written
+        try (FileOutputStream out = new FileOutputStream(logPath().toFile(), true)) {
+            out.write(new byte[] { 0, 0, 0, 64, 1, 2, 3, 4, 5 });
+        }
+        store = openStore();
+        store.initialize();
+        assertThat(Files.size(logPath())).isLessThanOrEqualTo(whole); // The torn tail is dropped, and the log compacted
+        License license = store.findById("key").orElseThrow();
+        assertThat(license.getUses()).isEqualTo(1);
+        
+        // New records follow the last whole one
+        store.use("key", PRODUCT);
+        closeStore(store);
+        store = openStore();
+        store.initialize();
+        assertThat(store.findById("key").orElseThrow().getUses()).isEqualTo(2);
+    }
+    
+    @Test
+    void replaysAfterCorruptLastRecord() throws Exception {
+        store.insert(license("first", 1, 1));
+        closeStore(store);
+        long whole = Files.size(logPath());
+        store = openStore();
+        store.initialize();
+        store.insert(license("second", 1, 1));
+        closeStore(store);
+        
+        // Flip a byte of the last record, so its checksum no longer matches
+        byte[] bytes = Files.readAllBytes(logPath());
+        bytes[bytes.length - 1] ^= 0x7F;
+        Files.write(logPath(), bytes);
+        store = openStore();
+        store.initialize();
+        assertThat(Files.size(logPath())).isEqualTo(whole);
+        assertThat(store.findById("first")).isPresent();
+        assertThat(store.findById("second")).isEmpty();
+    }
+    
+    /**
+     * Get the path of the license log.
+     *
+     * @return the path
+     */
+    @NonNull
+    private Path logPath() {
+        return directory.resolve("licenses.log");
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import com.mongodb.client.MongoClient;
+import lombok.NonNull;
+import me.braydon.license.dto.LicenseQueryDTO;
+import me.braydon.license.model.AuditRollup;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseBinding;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests that the hot license queries keep the
+ * shape the indexes declared on the models serve.
+ * <p>
+ * The queries are captured from the {@link LicenseRepositoryImpl}
+ * and compared with the filter and sort each index was built for,
+ * and the indexes the {@link IndexResolver} creates on startup are
+ * compared with their expected keys, so changing either side fails
+ * until the other is checked. Only MongoDB can tell which index a
+ * query really uses, so when one is reachable at the {@code mongo.uri}
+ * property (see {@link TestMongo}), the winning plans are checked with explain.
+ * </p>
+ *
+ * @author Braydon
+ */
+class LicenseIndexTest {
+    private final MongoMappingContext mappingContext = new MongoMappingContext();
+    private final IndexResolver resolver = IndexResolver.create(mappingContext);
+    private MongoTemplate mongoTemplate;
+    private LicenseRepositoryImpl repository;
+    
+    @BeforeEach
+    void setup() {
+        mongoTemplate = mock(MongoTemplate.class);
+        repository = new LicenseRepositoryImpl(mongoTemplate);
+    }
+    
+    @Test
+    void checkLookupMatchesId() {
+        Method method = Method.of("getCheckLicense", String.class, String.class);
+        Document filter = mapFilter(License.class, method.filter().replace("?0", "'key'").replace("?1", "'Example'"));
+        assertThat(filter).isEqualTo(Document.parse("{ _id: 'key', product: 'Example' }"));
+    }
+    
+    @Test
+    void batchLookupMatchesIds() {
+        Method method = Method.of("getCheckLicenses", Collection.class);
+        Document filter = mapFilter(License.class, method.filter().replace("?0", "['a', 'b']"));
+        assertThat(filter).isEqualTo(Document.parse("{ _id: { $in: ['a', 'b'] } }"));
+    }
+    
+    @Test
+    void useMatchesId() {
+        repository.use("key", "Example");
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(query.capture(), any(Update.class), any(FindAndModifyOptions.class), eq(License.class));
+        assertThat(query.getValue().getQueryObject()).isEqualTo(Document.parse("{ _id: 'key', product: 'Example' }"));
+    }
+    
+    @Test
+    void legacyKeyLookupScansIdRange() {
+        repository.hasLegacyKeys();
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).exists(query.capture(), eq(License.class));
+        assertThat(query.getValue().getQueryObject()).isEqualTo(Document.parse("{ _id: { $gte: '$2', $lt: '$3' } }"));
+    }
+    
+    @Test
+    void bindingLookupsMatchBindingIndex() {
+        assertThat(indexKeys(LicenseBinding.class, "license_type_value"))
+            .containsExactly(entry("license", 1), entry("type", 1), entry("value", 1));
+        repository.findBindings("key", "ip", "hwid");
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(LicenseBinding.class));
+        assertThat(query.getValue().getQueryObject()).isEqualTo(Document.parse(
+            "{ license: 'key', $or: [{ type: 'IP', value: 'ip' }, { type: 'HWID', value: 'hwid' }] }"
+        ));
+        assertThat(LicenseRepositoryImpl.bindingQuery("key", LicenseBinding.Type.IP, "ip").getQueryObject())
+            .isEqualTo(Document.parse("{ license: 'key', type: 'IP', value: 'ip' }"));
+    }
+    
+    @Test
+    void productListingMatchesProductIndex() {
+        assertThat(indexKeys(License.class, "product_key")).containsExactly(entry("product", 1), entry("_id", 1));
+        Query query = streamQuery(new LicenseQueryDTO("Example", null, null, null, null, null, null, "key", 100));
+        assertThat(query.getQueryObject()).isEqualTo(Document.parse("{ _id: { $gt: 'key' }, product: 'Example' }"));
+        assertThat(query.getSortObject()).isEqualTo(Document.parse("{ _id: 1 }"));
+    }
+    
+    @Test
+    void ownerListingMatchesOwnerIndex() {
+        assertThat(indexKeys(License.class, "owner_product")).containsExactly(entry("owner.snowflake", 1), entry("product", 1));
+        Query query = streamQuery(new LicenseQueryDTO(null, 1L, null, null, null, null, null, null, 100));
+        assertThat(query.getQueryObject()).isEqualTo(new Document("owner.snowflake", 1L));
+    }
+    
+    @Test
+    void expiryListingMatchesExpiryIndex() {
+        assertThat(indexKeys(License.class, "expires")).containsExactly(entry("expires", 1));
+        Instant now = Instant.now();
+        Query query = streamQuery(new LicenseQueryDTO(null, null, null, now, now.plusSeconds(60L), null, null, null, 100));
+        assertThat(query.getQueryObject()).isEqualTo(new Document("expires",
+            new Document("$gte", Date.from(now)).append("$lt", Date.from(now.plusSeconds(60L)))
+        ));
+    }
+    
+    @Test
+    void rollupsOfProductMatchRollupIndex() {
+        assertThat(indexKeys(AuditRollup.class, "product_day")).containsExactly(entry("product", 1), entry("day", 1));
+        repository.findAuditRollups("Example", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 7));
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(AuditRollup.class));
+        assertThat(query.getValue().getQueryObject()).isEqualTo(new Document("product", "Example").append("day",
+            new Document("$gte", Date.from(Instant.parse("2024-01-01T00:00:00Z")))
+                .append("$lt", Date.from(Instant.parse("2024-01-08T00:00:00Z")))
+        ));
+    }
+    
+    @Test
+    void explainedPlansUseIndexes() {
+        MongoClient client = TestMongo.connect();
+        assumeTrue(client != null, "MongoDB isn't reachable at " + TestMongo.URI);
+        try (client) {
+            MongoTemplate template = new MongoTemplate(client, "licenseIndexTest");
+            template.getDb().drop();
+            try {
+                new LicenseRepositoryImpl(template).createIndexes();
+                Map<Query, String> expected = new LinkedHashMap<>();
+                expected.put(streamQuery(new LicenseQueryDTO("Example", null, null, null, null, null, null, "key", 100)), "product_key");
+                expected.put(streamQuery(new LicenseQueryDTO(null, 1L, null, null, null, null, null, null, 100)), "owner_product");
+                Instant now = Instant.now();
+                expected.put(streamQuery(new LicenseQueryDTO(null, null, null, now, now.plusSeconds(60L), null, null, null, 100)), "expires");
+                expected.put(LicenseRepositoryImpl.bindingQuery("key", LicenseBinding.Type.IP, "ip"), "license_type_value");
+                for (Map.Entry<Query, String> entry : expected.entrySet()) {
+                    Class<?> type = entry.getValue().equals("license_type_value") ? LicenseBinding.class : License.class;
+                    Document plan = template.getCollection(template.getCollectionName(type))
+                                        .find(entry.getKey().getQueryObject())
+                                        .sort(entry.getKey().getSortObject())
+                                        .explain();
+                    assertThat(indexNames(plan.get("queryPlanner", Document.class).get("winningPlan"))).contains(entry.getValue());
+                }
+            } finally {
+                template.getDb().drop();
+            }
+        }
+    }
+    
+    /**
+     * Run the given admin query, and capture the query sent to MongoDB.
+     *
+     * @param query the admin query
+     * @return the captured query
+     */
+    @NonNull
+    private Query streamQuery(@NonNull LicenseQueryDTO query) {
+        MongoTemplate template = mock(MongoTemplate.class);
+        new LicenseRepositoryImpl(template).streamQuery(query, 100, 100);
+        ArgumentCaptor<Query> captured = ArgumentCaptor.forClass(Query.class);
+        verify(template).stream(captured.capture(), eq(License.class));
+        return captured.getValue();
+    }
+    
+    /**
+     * Map the given raw filter of a model to the stored field names.
+     *
+     * @param type   the model
+     * @param filter the raw filter
+     * @return the mapped filter
+     */
+    @NonNull
+    private Document mapFilter(@NonNull Class<?> type, @NonNull String filter) {
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        return new QueryMapper(converter).getMappedObject(Document.parse(filter), mappingContext.getPersistentEntity(type));
+    }
+    
+    /**
+     * Get the keys of the index with the given
+     * name the resolver creates for the given model.
+     *
+     * @param type the model
+     * @param name the name of the index
+     * @return the index keys
+     */
+    @NonNull
+    private Document indexKeys(@NonNull Class<?> type, @NonNull String name) {
+        for (IndexDefinition index : resolver.resolveIndexFor(type)) {
+            if (name.equals(index.getIndexOptions().getString("name"))) {
+                return index.getIndexKeys();
+            }
+        }
+        throw new AssertionError("No index " + name + " on " + type.getSimpleName());
+    }
+    
+    /**
+     * Get the names of the indexes scanned in the given plan.
+     *
+     * @param plan the plan, or a part of it
+     * @return the index names
+     */
+    @NonNull
+    private static Set<String> indexNames(Object plan) {
+        Set<String> names = new HashSet<>();
+        if (plan instanceof Document document) {
+            if (document.get("indexName") instanceof String name) {
+                names.add(name);
+            }
+            document.values().forEach(value -> names.addAll(indexNames(value)));
+        } else if (plan instanceof List<?> list) {
+            list.forEach(value -> names.addAll(indexNames(value)));
+        }
+        return names;
+    }
+    
+    /**
+     * A declared query of the {@link LicenseRepository}.
+     *
+     * @param filter the raw filter of the query
+     */
+    private record Method(@NonNull String filter) {
+        /**
+         * Get the declared query of the repository method with the given name.
+         *
+         * @param name       the name of the method
+         * @param parameters the parameter types of the method
+         * @return the query
+         */
+        @NonNull
+        private static Method of(@NonNull String name, @NonNull Class<?>... parameters) {
+            try {
+                return new Method(LicenseRepository.class.getMethod(name, parameters)
+                                      .getAnnotation(org.springframework.data.mongodb.repository.Query.class).value());
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalArgumentException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import lombok.NonNull;
+import me.braydon.license.exception.LicenseHwidLimitExceededException;
+import me.braydon.license.exception.LicenseIpLimitExceededException;
+import me.braydon.license.model.License;
+import me.braydon.license.model.LicenseBinding;
+import me.braydon.license.model.LicenseUse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The behavior every {@link LicenseStore} must have.
+ * <p>
+ * Each store has a subclass that opens it, so
+ * every store is held to the same contract.
+ * </p>
+ *
+ * @author Braydon
+ */
+abstract class LicenseStoreContractTest {
+    protected static final String PRODUCT = "Example";
+    
+    /**
+     * The store being tested.
+     */
+    protected LicenseStore store;
+    
+    /**
+     * Open the store, with the licenses
+     * written by the last store opened.
+     *
+     * @return the store
+     * @throws Exception if opening fails
+     */
+    @NonNull
+    protected abstract LicenseStore openStore() throws Exception;
+    
+    /**
+     * Close the given store.
+     *
+     * @param store the store to close
+     * @throws Exception if closing fails
+     */
+    protected abstract void closeStore(@NonNull LicenseStore store) throws Exception;
+    
+    @BeforeEach
+    void openInitialized() throws Exception {
+        store = openStore();
+        store.initialize();
+    }
+    
+    @AfterEach
+    void close() throws Exception {
+        if (store != null) {
+            closeStore(store);
+        }
+    }
+    
+    @Test
+    void insertsAndFindsLicenses() {
+        store.insert(license("key", 1, 1));
+        
+        assertThat(store.findById("key")).hasValueSatisfying(license -> {
+            assertThat(license.getProduct()).isEqualTo(PRODUCT);
+            assertThat(license.getPlan()).isEqualTo("Basic");
+        });
+        assertThat(store.getLicense("key", PRODUCT)).isPresent();
+        assertThat(store.getCheckLicense("key", PRODUCT)).isPresent();
+        assertThat(store.getLicense("key", "Other")).isEmpty();
+        assertThat(store.findById("missing")).isEmpty();
+        assertThat(store.count()).isEqualTo(1L);
+    }
+    
+    @Test
+    void rejectsDuplicateLicenses() {
+        store.insert(license("key", 1, 1));
+        
+        assertThatThrownBy(() -> store.insert(license("key", 1, 1))).isInstanceOf(DuplicateKeyException.class);
+        assertThat(store.insertAll(List.of(license("key", 1, 1), license("other", 1, 1))))
+            .extracting(License::getKey)
+            .containsExactly("other");
+        assertThat(store.count()).isEqualTo(2L);
+    }
+    
+    @Test
+    void bindsUpToTheLimit() {
+        store.insert(license("key", 2, 2));
+        store.bind("key", "ip1", "hwid1", true, true);
+        store.bind("key", "ip2", "hwid2", true, true);
+        
+        assertThatThrownBy(() -> store.bind("key", "ip3", "hwid1", true, false))
+            .isInstanceOf(LicenseIpLimitExceededException.class);
+        assertThatThrownBy(() -> store.bind("key", "ip1", "hwid3", false, true))
+            .isInstanceOf(LicenseHwidLimitExceededException.class);
+        assertThat(store.findBindings("key", "ip2", "hwid2"))
+            .containsExactlyInAnyOrder(LicenseBinding.Type.IP, LicenseBinding.Type.HWID);
+        assertThat(store.findBindings("key", "ip3", "hwid3")).isEmpty();
+        License license = store.findById("key").orElseThrow();
+        assertThat(license.getIpCount()).isEqualTo(2);
+        assertThat(license.getHwidCount()).isEqualTo(2);
+    }
+    
+    @Test
+    void undoesTheIpWhenTheHwidIsOverTheLimit() {
+        store.insert(license("key", 2, 1));
+        store.bind("key", "ip1", "hwid1", true, true);
+        
+        assertThatThrownBy(() -> store.bind("key", "ip2", "hwid2", true, true))
+            .isInstanceOf(LicenseHwidLimitExceededException.class);
+        assertThat(store.findBindings("key", "ip2", "hwid2")).isEmpty();
+        assertThat(store.findById("key").orElseThrow().getIpCount()).isEqualTo(1);
+    }
+    
+    @Test
+    void bindsDuplicatesOnce() {
+        store.insert(license("key", 1, 1));
+        store.bind("key", "ip", "hwid", true, true);
+        
+        // A check that raced the first one still thinks the IP and HWID are new
+        store.bind("key", "ip", "hwid", true, true);
+        License license = store.findById("key").orElseThrow();
+        assertThat(license.getIpCount()).isEqualTo(1);
+        assertThat(license.getHwidCount()).isEqualTo(1);
+        try (Stream<LicenseBinding> bindings = store.streamBindings(List.of("key"))) {
+            assertThat(bindings).hasSize(2);
+        }
+    }
+    
+    @Test
+    void bindsConcurrentlyUpToTheLimit() throws Exception {
+        int limit = 5;
+        store.insert(license("key", 64, limit));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> binds = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                String hwid = "hwid" + (i % 16); // Each HWID is bound by two checks at once
+                binds.add(executor.submit(() -> {
+                    try {
+                        store.bind("key", "ip", hwid, false, true);
+                        return true;
+                    } catch (LicenseHwidLimitExceededException ex) {
+                        return false;
+                    }
+                }));
+            }
+            for (Future<Boolean> bind : binds) {
+                bind.get(30L, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(store.findById("key").orElseThrow().getHwidCount()).isEqualTo(limit);
+        try (Stream<LicenseBinding> bindings = store.streamBindings(List.of("key"))) {
+            assertThat(bindings).hasSize(limit);
+        }
+    }
+    
+    @Test
+    void clearsBindings() {
+        store.insert(license("key", 2, 2));
+        store.bind("key", "ip1", "hwid1", true, true);
+        store.bind("key", "ip2", "hwid2", true, true);
+        store.clearBindings("key", true, false);
+        
+        License license = store.findById("key").orElseThrow();
+        assertThat(license.getIpCount()).isZero();
+        assertThat(license.getHwidCount()).isEqualTo(2);
+        assertThat(store.findBindings("key", "ip1", "hwid1")).containsExactly(LicenseBinding.Type.HWID);
+        
+        // The cleared IPs no longer count against the limit
+        store.bind("key", "ip3", "hwid1", true, false);
+        store.bind("key", "ip4", "hwid2", true, false);
+        assertThat(store.findById("key").orElseThrow().getIpCount()).isEqualTo(2);
+    }
+    
+    @Test
+    void addsUses() {
+        store.insert(license("key", 1, 1));
+        Date later = new Date(System.currentTimeMillis() + 60_000L);
+        store.addUses(List.of(new LicenseUse("key", 3L, later), new LicenseUse("missing", 1L, later)));
+        store.addUses(List.of(new LicenseUse("key", 2L, new Date(0L))));
+        
+        License license = store.findById("key").orElseThrow();
+        assertThat(license.getUses()).isEqualTo(5);
+        assertThat(license.getLastUsed()).isEqualTo(later); // Only moved forward
+        assertThat(store.findById("missing")).isEmpty();
+    }
+    
+    @Test
+    void streamsAllLicenses() {
+        List<License> licenses = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            licenses.add(license("key" + i, 1, 1));
+        }
+        store.insertAll(licenses);
+        store.deleteById("key0");
+        
+        try (Stream<License> all = store.streamAll(10)) {
+            assertThat(all).extracting(License::getKey)
+                .hasSize(24)
+                .doesNotContain("key0")
+                .contains("key1", "key24");
+        }
+    }
+    
+    @Test
+    void keepsLicensesWhenReopened() throws Exception {
+        store.insert(license("key", 1, 1));
+        store.bind("key", "ip", "hwid", true, true);
+        store.use("key", PRODUCT);
+        closeStore(store);
+        
+        store = openStore();
+        store.initialize();
+        License license = store.findById("key").orElseThrow();
+        assertThat(license.getUses()).isEqualTo(1);
+        assertThat(license.getHwidCount()).isEqualTo(1);
+        assertThat(store.findBindings("key", "ip", "hwid"))
+            .containsExactlyInAnyOrder(LicenseBinding.Type.IP, LicenseBinding.Type.HWID);
+    }
+    
+    /**
+     * Create a license with the given key and limits.
+     *
+     * @param key       the key of the license
+     * @param ipLimit   the IP limit of the license
+     * @param hwidLimit the HWID limit of the license
+     * @return the license
+     */
+    @NonNull
+    protected static License license(@NonNull String key, int ipLimit, int hwidLimit) {
+        License license = new License();
+        license.setKey(key);
+        license.setProduct(PRODUCT);
+        license.setPlan("Basic");
+        license.setLatestVersion("1.0");
+        license.setIpLimit(ipLimit);
+        license.setHwidLimit(hwidLimit);
+        license.setCreated(new Date());
+        return license;
+    }
+}
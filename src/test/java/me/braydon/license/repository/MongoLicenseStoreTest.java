@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import com.mongodb.client.MongoClient;
+import lombok.NonNull;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests the {@link MongoLicenseStore}
+ * against the {@link LicenseStore} contract.
+ * <p>
+ * This needs a MongoDB at the {@code mongo.uri} property (see
+ * {@link TestMongo}), and is skipped if there isn't one. The
+ * licenseStoreTest database is dropped after each test.
+ * </p>
+ *
+ * @author Braydon
+ */
+class MongoLicenseStoreTest extends LicenseStoreContractTest {
+    private static final String DATABASE = "licenseStoreTest";
+    
+    private static MongoClient client;
+    
+    @BeforeAll
+    static void connect() {
+        client = TestMongo.connect();
+        assumeTrue(client != null, "MongoDB isn't reachable at " + TestMongo.URI);
+        client.getDatabase(DATABASE).drop();
+    }
+    
+    @AfterAll
+    static void disconnect() {
+        if (client != null) {
+            client.getDatabase(DATABASE).drop();
+            client.close();
+        }
+    }
+    
+    @AfterEach
+    void drop() {
+        client.getDatabase(DATABASE).drop();
+    }
+    
+    @Override @NonNull
+    protected LicenseStore openStore() {
+        MongoTemplate mongoTemplate = new MongoTemplate(client, DATABASE);
+        return new MongoLicenseStore(new MongoRepositoryFactory(mongoTemplate).getRepository(LicenseRepository.class,
+            RepositoryComposition.RepositoryFragments.just(new LicenseRepositoryImpl(mongoTemplate))
+        ));
+    }
+    
+    @Override
+    protected void closeStore(@NonNull LicenseStore store) {
+        // The client is shared by the tests
+    }
+}
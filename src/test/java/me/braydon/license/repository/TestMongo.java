@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2023 Braydon (Rainnny). All rights reserved.
+ *
+ * For inquiries, please contact braydonrainnny@gmail.com
+ */
+package me.braydon.license.repository;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects tests to the MongoDB at the {@code mongo.uri}
+ * property, so tests that need one can be skipped without it.
+ *
+ * @author Braydon
+ */
+final class TestMongo {
+    static final String URI = System.getProperty("mongo.uri", "mongodb://127.0.0.1:27017");
+    
+    private TestMongo() {
+    }
+    
+    /**
+     * Connect to MongoDB.
+     *
+     * @return the client, null if MongoDB isn't reachable
+     */
+    static MongoClient connect() {
+        MongoClient client = MongoClients.create(MongoClientSettings.builder()
+                                                     .applyConnectionString(new ConnectionString(URI))
+                                                     .applyToClusterSettings(cluster -> cluster.serverSelectionTimeout(2L, TimeUnit.SECONDS))
+                                                     .build());
+        try {
+            client.getDatabase("admin").runCommand(new Document("ping", 1));
+            return client;
+        } catch (Exception ex) { // Not reachable
+            client.close();
+            return null;
+        }
+    }
+}